@@ -0,0 +1,110 @@
+package pl.marcingorski.thenewsapp;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link ArticleStore} replaces, merges and trims the articles of its feeds, on a
+ * database in memory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleStoreTest {
+
+    private static final String SCIENCE = "/search?section=science";
+    private static final String WORLD = "/search?section=science|world";
+
+    private ArticleDbHelper mDbHelper;
+    private ArticleStore mStore;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new ArticleDbHelper ( InstrumentationRegistry.getTargetContext (), null );
+        mStore = new ArticleStore ( mDbHelper );
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close ();
+    }
+
+    @Test
+    public void replaceArticles_dropsTheArticlesNoLongerInTheFeed() {
+        mStore.replaceArticles ( SCIENCE, Arrays.asList ( article ( "a" ), article ( "b" ) ) );
+        mStore.replaceArticles ( SCIENCE, Arrays.asList ( article ( "c" ), article ( "a" ) ) );
+
+        assertEquals ( Arrays.asList ( "c", "a" ), urls ( mStore.loadArticles ( SCIENCE ) ) );
+    }
+
+    @Test
+    public void upsertArticles_updatesTheStoredArticlesAndKeepsTheOthers() {
+        mStore.upsertArticles ( SCIENCE, Arrays.asList ( article ( "a" ), article ( "b" ) ) );
+        SystemClock.sleep ( 5 );
+        mStore.upsertArticles ( SCIENCE, Arrays.asList (
+                new Article ( "Updated", "Science", "Author", "a", 0 ), article ( "c" ) ) );
+
+        List <Article> stored = mStore.loadArticles ( SCIENCE );
+        // The last response first, in its order
+        assertEquals ( Arrays.asList ( "a", "c", "b" ), urls ( stored ) );
+        assertEquals ( "Updated", stored.get ( 0 ).getTitleOfArticle () );
+    }
+
+    @Test
+    public void upsertArticles_keepsTheArticlesReceivedLastUpToTheLimit() {
+        mStore.upsertArticles ( SCIENCE, articles ( "old", 300 ) );
+        SystemClock.sleep ( 5 );
+        List <Article> newer = articles ( "new", 300 );
+        mStore.upsertArticles ( SCIENCE, newer );
+
+        List <Article> stored = mStore.loadArticles ( SCIENCE );
+        assertEquals ( ArticleStore.MAX_ARTICLES_PER_FEED, stored.size () );
+        assertEquals ( urls ( newer ), urls ( stored.subList ( 0, newer.size () ) ) );
+        assertEquals ( "old199", stored.get ( stored.size () - 1 ).getmUrl () );
+    }
+
+    @Test
+    public void anArticleInTwoFeedsIsKeptInBoth() {
+        mStore.replaceArticles ( SCIENCE, Arrays.asList ( article ( "a" ), article ( "shared" ) ) );
+        mStore.replaceArticles ( WORLD, Arrays.asList ( article ( "shared" ), article ( "b" ) ) );
+        mStore.upsertArticles ( SCIENCE, Arrays.asList ( article ( "c" ) ) );
+
+        assertEquals ( Arrays.asList ( "c", "a", "shared" ), urls ( mStore.loadArticles ( SCIENCE ) ) );
+        assertEquals ( Arrays.asList ( "shared", "b" ), urls ( mStore.loadArticles ( WORLD ) ) );
+        assertEquals ( 4, mStore.loadAllArticles ().size () );
+
+        // Replacing one feed leaves the other one alone
+        mStore.replaceArticles ( WORLD, Arrays.asList ( article ( "b" ) ) );
+        assertTrue ( urls ( mStore.loadArticles ( SCIENCE ) ).contains ( "shared" ) );
+    }
+
+    private static Article article(String url) {
+        return new Article ( "Title " + url, "Science", "Author", url, 0 );
+    }
+
+    private static List <Article> articles(String prefix, int count) {
+        List <Article> articles = new ArrayList <> ();
+        for (int i = 0; i < count; i++) {
+            articles.add ( article ( prefix + i ) );
+        }
+        return articles;
+    }
+
+    private static List <String> urls(List <Article> articles) {
+        List <String> urls = new ArrayList <> ();
+        for (Article article : articles) {
+            urls.add ( article.getmUrl () );
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,63 @@
+package pl.marcingorski.thenewsapp;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the time from the creation of {@link MainActivity} to its first row on a warm
+ * start, when the rows come from the snapshot of the previous run.
+ * <p>
+ * The first launch needs a connection, or stored articles, to write the snapshot.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmarkTest {
+
+    private static final String LOG_TAG = StartupBenchmarkTest.class.getSimpleName ();
+
+    private static final long FIRST_ROW_BUDGET_MILLIS = 300;
+    private static final long FIRST_LOAD_TIMEOUT_MILLIS = 30000;
+    private static final long FIRST_ROW_TIMEOUT_MILLIS = 5000;
+
+    @Rule
+    public final ActivityTestRule <MainActivity> mActivityRule =
+            new ActivityTestRule <> ( MainActivity.class, false, false );
+
+    @Test
+    public void warmStart_showsTheSnapshotWithinBudget() {
+        File snapshot = new File ( InstrumentationRegistry.getTargetContext ().getFilesDir (),
+                FeedSettings.SNAPSHOT_FILE );
+
+        // Load the feed once, which writes the snapshot
+        mActivityRule.launchActivity ( null );
+        long deadline = SystemClock.elapsedRealtime () + FIRST_LOAD_TIMEOUT_MILLIS;
+        while (!snapshot.exists () && SystemClock.elapsedRealtime () < deadline) {
+            SystemClock.sleep ( 100 );
+        }
+        assertTrue ( "No snapshot was written, is there a connection?", snapshot.exists () );
+        mActivityRule.finishActivity ();
+
+        // Start again, now the first rows come from the snapshot
+        mActivityRule.launchActivity ( null );
+        deadline = SystemClock.elapsedRealtime () + FIRST_ROW_TIMEOUT_MILLIS;
+        while (StartupTrace.getActivityToFirstRowMillis () < 0 && SystemClock.elapsedRealtime () < deadline) {
+            SystemClock.sleep ( 10 );
+        }
+
+        long millis = StartupTrace.getActivityToFirstRowMillis ();
+        Log.i ( LOG_TAG, "First row " + millis + " ms after activity creation, "
+                + StartupTrace.getTimeToFirstRowMillis () + " ms after process start on the first launch" );
+        assertTrue ( "No row was drawn", millis >= 0 );
+        assertTrue ( "First row took " + millis + " ms", millis < FIRST_ROW_BUDGET_MILLIS );
+    }
+}
@@ -1,27 +1,79 @@
 package pl.marcingorski.thenewsapp;
 
+/**
+ * An article of the feed.
+ * <p>
+ * Articles are kept compact, because the store and the pager keep hundreds of them in
+ * memory. The section is one of the few dozen sections of the API, so its name and its id
+ * are kept as ids into a shared {@link StringDictionary}. Authors repeat across a feed too, so articles share
+ * one String of every author, up to {@link #MAX_AUTHORS} of them; an author after that gets
+ * a String of its own. Urls are unique and kept as they are; the url is read on every bind
+ * and diff, so it is never put together again.
+ */
 public class Article {
 
-    private String mUrl;
+    static final StringDictionary SECTIONS = new StringDictionary ();
+
+    /**
+     * More than the contributors of many feeds in a row, and a few hundred KB at most
+     */
+    static final int MAX_AUTHORS = 2048;
+    static final StringDictionary AUTHORS = new StringDictionary ( MAX_AUTHORS );
+
+    // @param url of the article
+    private final String url;
 
     // @param title of the article
-    private String titleOfArticle;
+    private final String titleOfArticle;
+
+    // @ param section name of the article, as id in SECTIONS
+    private final int sectionName;
 
-    // @ param section of the article
-    private String section;
+    // @ param section id of the article in the API, e.g. "lifeandstyle", as id in SECTIONS
+    private final int sectionId;
 
     // @ param author of the article
-    private String author;
+    private final String author;
 
-    // @ param publish date of the article
+    // @ param publish date of the article, in milliseconds since the epoch
+    private final long publishedMillis;
+
+    // @ param URL of the thumbnail image, or null if the article has none
+    private final String thumbnailUrl;
+
+    // @ param publish date formatted for display, made on first use
     private String datePublished;
 
-    public Article(String titleOfArticle, String section, String author, String datePublished, String url) {
+    public Article(String titleOfArticle, String section, String author, String url, long publishedMillis) {
+        this ( titleOfArticle, section, author, url, publishedMillis, null );
+    }
+
+    public Article(String titleOfArticle, String section, String author, String url, long publishedMillis,
+                   String thumbnailUrl) {
+        this ( titleOfArticle, section, null, author, url, publishedMillis, thumbnailUrl );
+    }
+
+    /**
+     * @param sectionId the id of the section in the API, or null if it is not known
+     */
+    public Article(String titleOfArticle, String section, String sectionId, String author, String url,
+                   long publishedMillis, String thumbnailUrl) {
+        this ( titleOfArticle, SECTIONS.idOf ( section ), SECTIONS.idOf ( sectionId ), AUTHORS.intern ( author ),
+                url, publishedMillis, thumbnailUrl );
+    }
+
+    /**
+     * Constructs an article whose section and author were already looked up, e.g. by the decoder.
+     */
+    Article(String titleOfArticle, int sectionName, int sectionId, String author, String url, long publishedMillis,
+            String thumbnailUrl) {
         this.titleOfArticle = titleOfArticle;
-        this.section = section;
+        this.sectionName = sectionName;
+        this.sectionId = sectionId;
         this.author = author;
-        this.datePublished = datePublished;
-        this.mUrl = url;
+        this.url = url;
+        this.publishedMillis = publishedMillis;
+        this.thumbnailUrl = thumbnailUrl;
     }
 
     public String getTitleOfArticle() {
@@ -29,18 +81,66 @@ public class Article {
     }
 
     public String getSection() {
-        return section;
+        return SECTIONS.get ( sectionName );
+    }
+
+    /**
+     * Returns the id of the section in the API, e.g. "lifeandstyle", which the chosen sections
+     * are matched against, or null if it is not known.
+     */
+    public String getSectionId() {
+        return SECTIONS.get ( sectionId );
     }
 
     public String getAuthor() {
         return author;
-        }
+    }
 
+    /**
+     * Returns the publish date formatted for display. It is only formatted when a row
+     * is bound, so articles that are never shown never pay for it.
+     */
     public String getDatePublished() {
+        if (datePublished == null) {
+            datePublished = PublicationDates.format ( publishedMillis );
+        }
         return datePublished;
     }
 
+    /**
+     * Returns the publish date in milliseconds since the epoch,
+     * or {@link PublicationDates#UNKNOWN} if it is not known.
+     */
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    /**
+     * Returns the URL of the thumbnail image, or null if the article has none.
+     */
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
     public String getmUrl() {
-        return mUrl;
+        return url;
+    }
+
+    /**
+     * Whether the other article has the same url.
+     */
+    public boolean hasSameUrl(Article other) {
+        return url.equals ( other.url );
+    }
+
+    /**
+     * Whether the other article shows the same in the list.
+     */
+    public boolean hasSameContents(Article other) {
+        return publishedMillis == other.publishedMillis
+                && sectionName == other.sectionName
+                && (author == null ? other.author == null : author.equals ( other.author ))
+                && titleOfArticle.equals ( other.titleOfArticle )
+                && (thumbnailUrl == null ? other.thumbnailUrl == null : thumbnailUrl.equals ( other.thumbnailUrl ));
     }
 }
@@ -1,52 +1,136 @@
 package pl.marcingorski.thenewsapp;
 
-import android.content.Context;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.List;
 
-public class ArticleAdapter extends ArrayAdapter <Article> {
+/**
+ * Adapter for the list of articles.
+ * <p>
+ * New lists are handed to {@link #submitList(List)}, which computes the difference to the
+ * current list on a background thread and then only notifies the rows that were inserted,
+ * removed, moved or changed. Articles are matched by their URL.
+ * <p>
+ * Thumbnails come from the {@link ThumbnailLoader}; the load of a row is cancelled
+ * when the row is recycled.
+ */
+public class ArticleAdapter extends ListAdapter <Article, ArticleAdapter.ViewHolder> {
+
+    /**
+     * Called when an article in the list is clicked.
+     */
+    public interface OnArticleClickListener {
+        void onArticleClick(Article article);
+    }
+
+    private static final DiffUtil.ItemCallback <Article> DIFF_CALLBACK = new DiffUtil.ItemCallback <Article> () {
+        @Override
+        public boolean areItemsTheSame(Article oldArticle, Article newArticle) {
+            return oldArticle.hasSameUrl ( newArticle );
+        }
+
+        @Override
+        public boolean areContentsTheSame(Article oldArticle, Article newArticle) {
+            return oldArticle.hasSameContents ( newArticle );
+        }
+    };
+
+    private static final PipelineMetrics.Histogram BIND_TIME =
+            PipelineMetrics.getDefault ().histogram ( PipelineMetrics.BIND );
+
+    private final OnArticleClickListener mListener;
+
+    private final ThumbnailLoader mThumbnailLoader;
 
     /**
      * Constructs a new {@link ArticleAdapter}.
      *
-     * @param context  of the app
-     * @param articles is the list of articles, which is the data source of the adapter
+     * @param listener        is called when an article is clicked
+     * @param thumbnailLoader loads the thumbnails of the rows
      */
-
-    public ArticleAdapter(Context context, List <Article> articles) {
-        super ( context, 0, articles );
+    ArticleAdapter(OnArticleClickListener listener, ThumbnailLoader thumbnailLoader) {
+        super ( DIFF_CALLBACK );
+        mListener = listener;
+        mThumbnailLoader = thumbnailLoader;
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from ( getContext () ).inflate (
-                    R.layout.news_list_item, parent, false );
-        }
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from ( parent.getContext () ).inflate (
+                R.layout.news_list_item, parent, false );
+        return new ViewHolder ( listItemView );
+    }
 
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
         //Find the article at the given position in the list of articles
-        Article currentArticle = getItem ( position );
-        // Find all text Views:
-        TextView titleOfArticle = listItemView.findViewById ( R.id.title_of_article );
-        titleOfArticle.setText ( currentArticle.getTitleOfArticle () );
+        long start = System.nanoTime ();
+        holder.bind ( getItem ( position ) );
+        BIND_TIME.recordSince ( start );
+    }
 
-        TextView section = listItemView.findViewById ( R.id.section );
-        section.setText ( currentArticle.getSection () );
+    /**
+     * Returns the article shown at the given position.
+     */
+    Article getArticle(int position) {
+        return getItem ( position );
+    }
 
-        TextView author = listItemView.findViewById ( R.id.author );
-        author.setText ( currentArticle.getAuthor () );
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        // Scrolled off screen, its thumbnail is no longer needed
+        mThumbnailLoader.cancel ( holder.mThumbnail );
+    }
 
-        TextView datePublished = listItemView.findViewById ( R.id.date_of_publish );
-        datePublished.setText ( currentArticle.getDatePublished () );
+    /**
+     * Holds the views of one row, so they are only looked up when the row is created.
+     */
+    final class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
 
-        // Return the list item view that is now showing the appropriate data
-        return listItemView;
-    }
+        private final TextView mTitleOfArticle;
+        private final TextView mSection;
+        private final TextView mAuthor;
+        private final TextView mDatePublished;
+        private final ImageView mThumbnail;
+
+        ViewHolder(View itemView) {
+            super ( itemView );
+            mTitleOfArticle = itemView.findViewById ( R.id.title_of_article );
+            mSection = itemView.findViewById ( R.id.section );
+            mAuthor = itemView.findViewById ( R.id.author );
+            mDatePublished = itemView.findViewById ( R.id.date_of_publish );
+            mThumbnail = itemView.findViewById ( R.id.thumbnail );
+            itemView.setOnClickListener ( this );
+        }
 
+        void bind(Article article) {
+            mTitleOfArticle.setText ( article.getTitleOfArticle () );
+            mSection.setText ( article.getSection () );
+            mAuthor.setText ( article.getAuthor () );
+            mDatePublished.setText ( article.getDatePublished () );
+            String thumbnailUrl = article.getThumbnailUrl ();
+            if (thumbnailUrl == null) {
+                mThumbnailLoader.cancel ( mThumbnail );
+                mThumbnail.setVisibility ( View.GONE );
+            } else {
+                mThumbnail.setVisibility ( View.VISIBLE );
+                mThumbnailLoader.load ( thumbnailUrl, mThumbnail );
+            }
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition ();
+            if (position != RecyclerView.NO_POSITION) {
+                mListener.onArticleClick ( getItem ( position ) );
+            }
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Database helper for the offline article store. Manages database creation and version management.
+ */
+public class ArticleDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Name of the database file
+     */
+    private static final String DATABASE_NAME = "articles.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 6;
+
+    static final String TABLE_NAME = "articles";
+
+    /**
+     * Guardian webUrl of the article, unique for every article. An article is stored once
+     * for every feed it is in, so the primary key is the feed and the URL.
+     */
+    static final String COLUMN_URL = "url";
+    static final String COLUMN_TITLE = "title";
+    static final String COLUMN_SECTION = "section";
+
+    /**
+     * Id of the section in the API, which the chosen sections are matched against.
+     */
+    static final String COLUMN_SECTION_ID = "section_id";
+    static final String COLUMN_AUTHOR = "author";
+    static final String COLUMN_PUBLISHED_MILLIS = "published_millis";
+    static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+
+    /**
+     * Normalized request URI of the feed that returned the article.
+     */
+    static final String COLUMN_FEED = "feed";
+
+    /**
+     * When the article was last received in the feed, and its position in that response.
+     */
+    static final String COLUMN_FETCHED_AT = "fetched_at";
+    static final String COLUMN_POSITION = "position";
+
+    public ArticleDbHelper(Context context) {
+        this ( context, DATABASE_NAME );
+    }
+
+    /**
+     * @param name the database file, or null for a database in memory, e.g. in tests
+     */
+    ArticleDbHelper(Context context, String name) {
+        super ( context, name, null, DATABASE_VERSION );
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL ( "CREATE TABLE " + TABLE_NAME + " ("
+                + COLUMN_URL + " TEXT NOT NULL, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_SECTION + " TEXT, "
+                + COLUMN_SECTION_ID + " TEXT, "
+                + COLUMN_AUTHOR + " TEXT, "
+                + COLUMN_PUBLISHED_MILLIS + " INTEGER NOT NULL, "
+                + COLUMN_THUMBNAIL_URL + " TEXT, "
+                + COLUMN_FEED + " TEXT NOT NULL, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_FEED + ", " + COLUMN_URL + "));" );
+        db.execSQL ( "CREATE INDEX " + TABLE_NAME + "_feed ON " + TABLE_NAME + " ("
+                + COLUMN_FEED + ", " + COLUMN_FETCHED_AT + " DESC, " + COLUMN_POSITION + ");" );
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only holds cached copies, so it is simply rebuilt
+        db.execSQL ( "DROP TABLE IF EXISTS " + TABLE_NAME );
+        onCreate ( db );
+    }
+}
@@ -0,0 +1,248 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for Guardian "search" responses.
+ * <p>
+ * Reads the response body token by token and emits an {@link Article} as soon as one
+ * result object is complete. Fields that are not shown in the list are skipped without
+ * being materialized, so no JSON tree of the whole response is ever built. Section and
+ * author names are looked up in their dictionaries straight from the reader's buffer, so
+ * only names that were never seen before become new Strings.
+ */
+final class ArticleJsonDecoder {
+
+    /**
+     * Receives every {@link Article} as soon as it has been decoded.
+     */
+    interface ArticleSink {
+        void onArticle(Article article);
+    }
+
+    static final String AUTHOR_UNAVAILABLE = "Author Unavailable";
+
+    private static final int NO_SECTION_NAME = Article.SECTIONS.idOf ( "" );
+
+    private static final Charset UTF_8 = Charset.forName ( "UTF-8" );
+
+    private ArticleJsonDecoder() {
+    }
+
+    /**
+     * Decode the whole response and return the articles in the order they were received.
+     */
+    static List <Article> decode(InputStream inputStream) throws IOException {
+        final List <Article> articles = new ArrayList <> ();
+        decode ( inputStream, new ArticleSink () {
+            @Override
+            public void onArticle(Article article) {
+                articles.add ( article );
+            }
+        } );
+        return articles;
+    }
+
+    /**
+     * Decode the response, handing every article to the sink as soon as it is complete.
+     * The stream is not closed.
+     */
+    static void decode(InputStream inputStream, ArticleSink sink) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader ( new InputStreamReader ( inputStream, UTF_8 ) );
+
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            if ("response".equals ( reader.nextName () )) {
+                readResponse ( reader, sink );
+            } else {
+                reader.skipValue ();
+            }
+        }
+        reader.endObject ();
+    }
+
+    /**
+     * Decode a single item response requested with "show-fields=body" and return the HTML
+     * body of the article, or null if it has none. The stream is not closed.
+     */
+    static String decodeBody(InputStream inputStream) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader ( new InputStreamReader ( inputStream, UTF_8 ) );
+        String body = null;
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            if ("response".equals ( reader.nextName () )) {
+                body = readObjectPath ( reader, "content", "fields", "body" );
+            } else {
+                reader.skipValue ();
+            }
+        }
+        reader.endObject ();
+        return body;
+    }
+
+    /**
+     * Follows the names through nested objects and returns the string at the end, or null.
+     */
+    private static String readObjectPath(JsonStreamReader reader, String... names) throws IOException {
+        if (reader.peek () != JsonStreamReader.Token.BEGIN_OBJECT) {
+            reader.skipValue ();
+            return null;
+        }
+        String value = null;
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            if (!names[0].equals ( reader.nextName () )) {
+                reader.skipValue ();
+            } else if (names.length > 1) {
+                value = readObjectPath ( reader, Arrays.copyOfRange ( names, 1, names.length ) );
+            } else if (reader.peek () == JsonStreamReader.Token.STRING) {
+                value = reader.nextString ();
+            } else {
+                reader.skipValue ();
+            }
+        }
+        reader.endObject ();
+        return value;
+    }
+
+    private static void readResponse(JsonStreamReader reader, ArticleSink sink) throws IOException {
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            if ("results".equals ( reader.nextName () )) {
+                reader.beginArray ();
+                while (reader.hasNext ()) {
+                    Article article = readArticle ( reader );
+                    if (article != null) {
+                        sink.onArticle ( article );
+                    }
+                }
+                reader.endArray ();
+            } else {
+                reader.skipValue ();
+            }
+        }
+        reader.endObject ();
+    }
+
+    /**
+     * Read a single result object. Returns null if the title or url is missing.
+     */
+    private static Article readArticle(JsonStreamReader reader) throws IOException {
+        String titleOfArticle = null;
+        int sectionName = NO_SECTION_NAME;
+        int sectionId = StringDictionary.NULL_ID;
+        long publishedMillis = PublicationDates.UNKNOWN;
+        String url = null;
+        String author = AUTHOR_UNAVAILABLE;
+        String thumbnailUrl = null;
+
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            String name = reader.nextName ();
+            if (reader.peek () == JsonStreamReader.Token.NULL) {
+                reader.skipValue ();
+                continue;
+            }
+            switch (name) {
+                case "webTitle":
+                    titleOfArticle = reader.nextString ();
+                    break;
+                case "sectionName":
+                    if (reader.peek () == JsonStreamReader.Token.STRING) {
+                        sectionName = Article.SECTIONS.idOf ( reader.nextCharSequence () );
+                    } else {
+                        sectionName = Article.SECTIONS.idOf ( reader.nextString () );
+                    }
+                    break;
+                case "sectionId":
+                    if (reader.peek () == JsonStreamReader.Token.STRING) {
+                        sectionId = Article.SECTIONS.idOf ( reader.nextCharSequence () );
+                    } else {
+                        reader.skipValue ();
+                    }
+                    break;
+                case "webPublicationDate":
+                    // Parsed straight from the reader's buffer, no String is made
+                    if (reader.peek () == JsonStreamReader.Token.STRING) {
+                        publishedMillis = PublicationDates.parse ( reader.nextCharSequence () );
+                    } else {
+                        reader.skipValue ();
+                    }
+                    break;
+                case "webUrl":
+                    url = reader.nextString ();
+                    break;
+                case "tags":
+                    author = readAuthor ( reader );
+                    break;
+                case "fields":
+                    thumbnailUrl = readThumbnail ( reader );
+                    break;
+                default:
+                    reader.skipValue ();
+                    break;
+            }
+        }
+        reader.endObject ();
+
+        if (titleOfArticle == null || url == null) {
+            return null;
+        }
+        return new Article ( titleOfArticle, sectionName, sectionId, author, url, publishedMillis, thumbnailUrl );
+    }
+
+    /**
+     * Reads the "fields" object requested with "show-fields", returns the thumbnail URL or null.
+     */
+    private static String readThumbnail(JsonStreamReader reader) throws IOException {
+        String thumbnailUrl = null;
+        reader.beginObject ();
+        while (reader.hasNext ()) {
+            if ("thumbnail".equals ( reader.nextName () )
+                    && reader.peek () == JsonStreamReader.Token.STRING) {
+                thumbnailUrl = reader.nextString ();
+            } else {
+                reader.skipValue ();
+            }
+        }
+        reader.endObject ();
+        return thumbnailUrl;
+    }
+
+    /**
+     * The author is only shown when the article has exactly one contributor tag. It is
+     * interned in {@link Article#AUTHORS}.
+     */
+    private static String readAuthor(JsonStreamReader reader) throws IOException {
+        String firstAuthor = null;
+        int count = 0;
+
+        reader.beginArray ();
+        while (reader.hasNext ()) {
+            count++;
+            if (count > 1) {
+                reader.skipValue ();
+                continue;
+            }
+            reader.beginObject ();
+            while (reader.hasNext ()) {
+                if ("webTitle".equals ( reader.nextName () )
+                        && reader.peek () == JsonStreamReader.Token.STRING) {
+                    firstAuthor = Article.AUTHORS.intern ( reader.nextCharSequence () );
+                } else {
+                    reader.skipValue ();
+                }
+            }
+            reader.endObject ();
+        }
+        reader.endArray ();
+
+        return count == 1 && firstAuthor != null ? firstAuthor : AUTHOR_UNAVAILABLE;
+    }
+}
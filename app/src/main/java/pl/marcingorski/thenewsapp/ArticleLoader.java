@@ -1,48 +1,209 @@
 package pl.marcingorski.thenewsapp;
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Loads a list of news by using an AsyncTask to perform the
- * network request to the given URL.
+ * Loads the first page of the news on the {@link FetchEngine}, the {@link ArticlePager}
+ * loads the pages after it.
+ *
+ * The articles stored by a previous load are delivered first, so the list is not blank
+ * while the request is running or when there is no connection. In fan-out mode every
+ * section is delivered as soon as it arrives. The network result is then merged into the
+ * {@link ArticleStore} and the merged list is delivered.
+ *
+ * The last result is kept, so restarting the loader (e.g. after a rotation or coming back
+ * from another activity) delivers it again without a new request. A new load is only
+ * started when the content changed, see {@link #onContentChanged()}. Starting a load
+ * cancels the one still running.
  */
-public class ArticleLoader extends AsyncTaskLoader<List<Article>> {
+public class ArticleLoader extends Loader<List<Article>> {
 
     /** Tag for log messages */
     private static final String LOG_TAG = ArticleLoader.class.getName();
 
-    /** Query URL */
-    private String mUrl;
+    /**
+     * A feed refreshed less than this long ago, e.g. by the background sync, is shown
+     * from the store without a request. The shortest sync interval.
+     */
+    private static final long FRESH_FOR_MILLIS = 15 * 60 * 1000;
+
+    /** Runs the loads */
+    private final FetchEngine mEngine;
+
+    /** Fetches the pages of the feed */
+    private FeedFetcher mFeedFetcher;
+
+
+    /** Whether the stored articles have already been delivered */
+    private volatile boolean mStoredDelivered;
+
+    /** The last delivered result of a completed load */
+    private List<Article> mArticles;
+
+    /** The running load, if any */
+    private Future<?> mTask;
+
+    /** Increased for every load, so results of a cancelled load are dropped */
+    private int mGeneration;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     /**
      * Constructs a new {@link ArticleLoader}.
      *
      * @param context of the activity
-     * @param url to load data from
+     * @param feedFetcher to load the first page of the feed with
+     * @param engine to run the loads on
      */
-    public ArticleLoader(Context context, String url) {
+    ArticleLoader(Context context, FeedFetcher feedFetcher, FetchEngine engine) {
         super(context);
-        mUrl = url;
+        mFeedFetcher = feedFetcher;
+        mEngine = engine;
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (mArticles != null) {
+            deliverResult(mArticles);
+        }
+        if (takeContentChanged() || (mArticles == null && mTask == null)) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        cancelTask();
+        final int generation = ++mGeneration;
+        try {
+            mTask = mEngine.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final List<Article> articles = loadInBackground(generation);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onLoadComplete(generation, articles);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The engine is saturated, the next start tries again
+            Log.w(LOG_TAG, "Load rejected", e);
+            mTask = null;
+        }
     }
 
     /**
-     * This is on a background thread.
+     * Switches to another feed whose articles the caller already has, e.g. after sections
+     * were added or dropped in the settings. Cancels the running load; the articles are
+     * delivered again when the loader is restarted.
      */
+    void setFeed(FeedFetcher feedFetcher, List<Article> articles) {
+        cancelTask();
+        mGeneration++;
+        mFeedFetcher = feedFetcher;
+        mArticles = articles;
+        mStoredDelivered = true;
+    }
+
     @Override
-    public List<Article> loadInBackground() {
-        if (mUrl == null) {
+    protected void onReset() {
+        cancelTask();
+        mGeneration++;
+        mArticles = null;
+        mStoredDelivered = false;
+    }
+
+    private void cancelTask() {
+        if (mTask != null) {
+            mTask.cancel(true);
+            mTask = null;
+        }
+    }
+
+    /**
+     * Called on the main thread when a load finished.
+     */
+    private void onLoadComplete(int generation, List<Article> articles) {
+        if (generation != mGeneration) {
+            // Cancelled or superseded by a newer load
+            return;
+        }
+        mTask = null;
+        mArticles = articles;
+        if (isStarted()) {
+            deliverResult(articles);
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    private List<Article> loadInBackground(final int generation) {
+        if (mFeedFetcher == null) {
+            return null;
+        }
+
+        ArticleStore store = ArticleStore.getInstance(getContext());
+        String feed = mFeedFetcher.getFeedKey();
+        int rows = mFeedFetcher.getRowsPerPage();
+
+        // The background sync got the feed a moment ago, no request is needed.
+        if (FeedSettings.getLastRefreshed(getContext(), feed) > System.currentTimeMillis() - FRESH_FOR_MILLIS
+                && store.getLastFetchedAt(feed) > 0) {
+            mStoredDelivered = true;
+            return store.loadArticles(feed, rows);
+        }
+
+        // Show what we have stored while the network request is running.
+        if (!mStoredDelivered) {
+            mStoredDelivered = true;
+            List<Article> stored = store.loadArticles(feed, rows);
+            if (!stored.isEmpty()) {
+                deliverFromBackground(generation, stored);
+            }
+        }
+
+        // Perform the (conditional) network requests for what is new, parse the responses,
+        // and merge the articles into the store. When the sections are fetched separately,
+        // show each one as soon as it arrives.
+        FeedUpdater.Result result = FeedUpdater.update(getContext(), mFeedFetcher, new SectionFanOut.ProgressListener() {
+            @Override
+            public void onProgress(List<Article> merged, int completed, int total) {
+                if (completed < total) {
+                    deliverFromBackground(generation, merged);
+                }
+            }
+        });
+        if (Thread.currentThread().isInterrupted()) {
+            // Cancelled, the result is dropped anyway
             return null;
         }
 
-        // Perform the network request, parse the response, and extract a list of articles.
-        List<Article> articles = QueryUtils.fetchNewsData(mUrl);
-        return articles;
+        // Show the merged first page, or just the stored one if the request failed.
+        return result != null ? result.articles : store.loadArticles(feed, rows);
+    }
+
+    /**
+     * Delivers an intermediate result on the main thread while the load is still running.
+     */
+    private void deliverFromBackground(final int generation, final List<Article> articles) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration && isStarted()) {
+                    deliverResult(articles);
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pages through the feed, which is requested with the API's "page" and "page-size" parameters.
+ * <p>
+ * The list reports its scroll position through {@link #onScroll(int, int, int)}. When the
+ * last visible row gets within the prefetch distance of the end, the next page is requested
+ * in the background, and likewise for the previous page when scrolling back up. Only
+ * {@code maxPages} pages are kept in memory; pages at the opposite end of the window are
+ * dropped and fetched again if the user scrolls back to them.
+ * <p>
+ * A story can be on two pages when newer articles pushed it down the feed between the
+ * requests, and the first page from the loader may overlap the pages after it. The window
+ * goes through a {@link DuplicateFilter}, so every article is shown once, on the first page
+ * it is on. The list matches its rows by URL when the window changes, see
+ * {@link ArticleAdapter}, so the rows on screen stay in place when rows before them are
+ * added or dropped.
+ * <p>
+ * All methods must be called on the callback executor, which is the main thread in the app.
+ */
+final class ArticlePager {
+
+    /**
+     * Fetches one page of articles, numbered from 1. Called on the background executor.
+     * Returns null if the page could not be loaded.
+     */
+    interface PageFetcher {
+        List <Article> fetchPage(int page);
+    }
+
+    /**
+     * Receives the articles of all pages in memory whenever the window changes.
+     */
+    interface Listener {
+        /**
+         * @param articles the articles of the pages in memory, in page order
+         */
+        void onWindowChanged(List <Article> articles);
+    }
+
+    private final int mPageSize;
+    private final int mPrefetchDistance;
+    private final int mMaxPages;
+    private final PageFetcher mFetcher;
+    private final Executor mBackgroundExecutor;
+    private final Executor mCallbackExecutor;
+    private final Listener mListener;
+    private final DuplicateFilter mDuplicates;
+
+    /**
+     * Pages in memory, by page number starting at 1.
+     */
+    private final TreeMap <Integer, List <Article>> mPages = new TreeMap <> ();
+
+    /**
+     * Number of the last page, once a page shorter than the page size was received.
+     */
+    private int mLastPage = Integer.MAX_VALUE;
+    private boolean mLoading;
+
+    /**
+     * Increased on every reset, so results of requests made before it are ignored.
+     */
+    private int mGeneration;
+
+    /**
+     * @param pageSize         number of articles requested per page
+     * @param prefetchDistance how many rows before either end of the window the next page is requested
+     * @param maxPages         how many pages are kept in memory
+     */
+    ArticlePager(int pageSize, int prefetchDistance, int maxPages, PageFetcher fetcher,
+                 Executor backgroundExecutor, Executor callbackExecutor, Listener listener) {
+        this ( pageSize, prefetchDistance, maxPages, fetcher, backgroundExecutor, callbackExecutor, listener,
+                new DuplicateFilter ( pageSize * maxPages, false ) );
+    }
+
+    /**
+     * @param duplicates drops the articles already in the window, it is cleared for every window
+     */
+    ArticlePager(int pageSize, int prefetchDistance, int maxPages, PageFetcher fetcher,
+                 Executor backgroundExecutor, Executor callbackExecutor, Listener listener,
+                 DuplicateFilter duplicates) {
+        if (pageSize <= 0 || prefetchDistance < 0 || maxPages < 2) {
+            throw new IllegalArgumentException ( "pageSize=" + pageSize + " prefetchDistance="
+                    + prefetchDistance + " maxPages=" + maxPages );
+        }
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mMaxPages = maxPages;
+        mFetcher = fetcher;
+        mBackgroundExecutor = backgroundExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mListener = listener;
+        mDuplicates = duplicates;
+    }
+
+    /**
+     * Drops all pages and starts over with the given first page, e.g. from the loader. The
+     * next page requested is page 2, so the list must not hold more than the first page.
+     */
+    void reset(List <Article> firstPage) {
+        mGeneration++;
+        mLoading = false;
+        mPages.clear ();
+        mLastPage = Integer.MAX_VALUE;
+        if (firstPage != null) {
+            mPages.put ( 1, firstPage );
+            if (firstPage.size () < mPageSize) {
+                mLastPage = 1;
+            }
+        }
+        mListener.onWindowChanged ( window () );
+    }
+
+    /**
+     * Called when the list is scrolled. Positions are relative to the current window.
+     */
+    void onScroll(int firstVisible, int visibleCount, int totalCount) {
+        if (mLoading || mPages.isEmpty ()) {
+            return;
+        }
+        if (firstVisible + visibleCount >= totalCount - mPrefetchDistance && mPages.lastKey () < mLastPage) {
+            load ( mPages.lastKey () + 1 );
+        } else if (firstVisible <= mPrefetchDistance && mPages.firstKey () > 1) {
+            load ( mPages.firstKey () - 1 );
+        }
+    }
+
+    /**
+     * Ignores the result of the page being loaded, e.g. when the list goes away.
+     */
+    void cancel() {
+        mGeneration++;
+        mLoading = false;
+    }
+
+    boolean isLoading() {
+        return mLoading;
+    }
+
+    int getFirstPage() {
+        return mPages.isEmpty () ? 0 : mPages.firstKey ();
+    }
+
+    int getLastPage() {
+        return mPages.isEmpty () ? 0 : mPages.lastKey ();
+    }
+
+    private void load(final int page) {
+        mLoading = true;
+        final int generation = mGeneration;
+        try {
+            mBackgroundExecutor.execute ( new Runnable () {
+                @Override
+                public void run() {
+                    final List <Article> articles = mFetcher.fetchPage ( page );
+                    mCallbackExecutor.execute ( new Runnable () {
+                        @Override
+                        public void run() {
+                            if (generation == mGeneration) {
+                                onPageLoaded ( page, articles );
+                            }
+                        }
+                    } );
+                }
+            } );
+        } catch (RejectedExecutionException e) {
+            // Every thread is busy, the next scroll event tries again
+            mLoading = false;
+        }
+    }
+
+    private void onPageLoaded(int page, List <Article> articles) {
+        mLoading = false;
+        if (articles == null) {
+            // Failed, the next scroll event tries again
+            return;
+        }
+        if (articles.size () < mPageSize) {
+            mLastPage = page;
+        }
+        if (articles.isEmpty ()) {
+            return;
+        }
+
+        boolean prepend = page < mPages.firstKey ();
+        mPages.put ( page, articles );
+
+        // Keep the window bounded by dropping pages from the end we moved away from
+        while (mPages.size () > mMaxPages) {
+            if (prepend) {
+                mPages.pollLastEntry ();
+            } else {
+                mPages.pollFirstEntry ();
+            }
+        }
+        mListener.onWindowChanged ( window () );
+    }
+
+    /**
+     * Returns the articles of the pages in memory without duplicates.
+     */
+    private List <Article> window() {
+        mDuplicates.clear ();
+        List <Article> articles = new ArrayList <> ();
+        for (List <Article> page : mPages.values ()) {
+            articles.addAll ( mDuplicates.filter ( page ) );
+        }
+        return Collections.unmodifiableList ( articles );
+    }
+}
@@ -0,0 +1,189 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_AUTHOR;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_FEED;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_FETCHED_AT;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_POSITION;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_PUBLISHED_MILLIS;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_SECTION;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_SECTION_ID;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_THUMBNAIL_URL;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_TITLE;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.COLUMN_URL;
+import static pl.marcingorski.thenewsapp.ArticleDbHelper.TABLE_NAME;
+
+/**
+ * Persistent store of the articles received from the Guardian, so the list can be shown
+ * right away on a cold start and without a connection.
+ * <p>
+ * Articles are keyed by their feed and their webUrl, so an article in several feeds has a
+ * row in each of them. Every network result is merged in with one transaction of upserts,
+ * and each feed keeps at most {@link #MAX_ARTICLES_PER_FEED} rows.
+ * All methods do disk I/O and must be called from a background thread.
+ */
+public final class ArticleStore {
+
+    static final int MAX_ARTICLES_PER_FEED = 500;
+
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO " + TABLE_NAME + " ("
+            + COLUMN_URL + ", " + COLUMN_TITLE + ", " + COLUMN_SECTION + ", " + COLUMN_AUTHOR + ", "
+            + COLUMN_PUBLISHED_MILLIS + ", " + COLUMN_FEED + ", " + COLUMN_FETCHED_AT + ", " + COLUMN_POSITION + ", "
+            + COLUMN_THUMBNAIL_URL + ", " + COLUMN_SECTION_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String[] ARTICLE_COLUMNS = {COLUMN_TITLE, COLUMN_SECTION, COLUMN_AUTHOR, COLUMN_URL,
+            COLUMN_PUBLISHED_MILLIS, COLUMN_THUMBNAIL_URL, COLUMN_SECTION_ID};
+
+    private static final String ORDER_BY = COLUMN_FETCHED_AT + " DESC, " + COLUMN_POSITION;
+
+    private static ArticleStore sInstance;
+
+    private final ArticleDbHelper mDbHelper;
+
+    private ArticleStore(Context context) {
+        this ( new ArticleDbHelper ( context.getApplicationContext () ) );
+    }
+
+    ArticleStore(ArticleDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    public static synchronized ArticleStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArticleStore ( context );
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored articles of the feed, most recently received first.
+     */
+    public List <Article> loadArticles(String feed) {
+        return loadArticles ( feed, MAX_ARTICLES_PER_FEED );
+    }
+
+    /**
+     * Returns at most {@code limit} stored articles of the feed, most recently received first.
+     */
+    public List <Article> loadArticles(String feed, int limit) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase ();
+        Cursor cursor = db.query ( TABLE_NAME, ARTICLE_COLUMNS,
+                COLUMN_FEED + " = ?", new String[]{feed},
+                null, null, ORDER_BY, String.valueOf ( Math.min ( limit, MAX_ARTICLES_PER_FEED ) ) );
+        List <Article> articles = new ArrayList <> ();
+        try {
+            while (cursor.moveToNext ()) {
+                articles.add ( readArticle ( cursor ) );
+            }
+        } finally {
+            cursor.close ();
+        }
+        return articles;
+    }
+
+    /**
+     * Returns the stored articles of all feeds, each once, in no particular order.
+     */
+    public List <Article> loadAllArticles() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase ();
+        Cursor cursor = db.query ( TABLE_NAME, ARTICLE_COLUMNS, null, null, COLUMN_URL, null, null );
+        List <Article> articles = new ArrayList <> ( cursor.getCount () );
+        try {
+            while (cursor.moveToNext ()) {
+                articles.add ( readArticle ( cursor ) );
+            }
+        } finally {
+            cursor.close ();
+        }
+        return articles;
+    }
+
+    /**
+     * Returns when the feed was last received from the network, in milliseconds since
+     * the epoch, or 0 if it never was.
+     */
+    public long getLastFetchedAt(String feed) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase ();
+        Cursor cursor = db.rawQuery ( "SELECT MAX(" + COLUMN_FETCHED_AT + ") FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_FEED + " = ?", new String[]{feed} );
+        try {
+            return cursor.moveToFirst () ? cursor.getLong ( 0 ) : 0;
+        } finally {
+            cursor.close ();
+        }
+    }
+
+    /**
+     * Inserts or updates the articles of one network response in a single transaction,
+     * then trims the feed to its size limit.
+     */
+    public void upsertArticles(String feed, List <Article> articles) {
+        writeArticles ( feed, articles, false );
+    }
+
+    /**
+     * Replaces the stored articles of the feed with the given ones in a single transaction.
+     */
+    public void replaceArticles(String feed, List <Article> articles) {
+        writeArticles ( feed, articles, true );
+    }
+
+    private void writeArticles(String feed, List <Article> articles, boolean replace) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase ();
+        long fetchedAt = System.currentTimeMillis ();
+        SQLiteStatement upsert = db.compileStatement ( UPSERT_SQL );
+        db.beginTransaction ();
+        try {
+            if (replace) {
+                db.delete ( TABLE_NAME, COLUMN_FEED + " = ?", new String[]{feed} );
+            }
+            for (int i = 0; i < articles.size (); i++) {
+                Article article = articles.get ( i );
+                upsert.clearBindings ();
+                upsert.bindString ( 1, article.getmUrl () );
+                upsert.bindString ( 2, article.getTitleOfArticle () );
+                bindNullable ( upsert, 3, article.getSection () );
+                bindNullable ( upsert, 4, article.getAuthor () );
+                upsert.bindLong ( 5, article.getPublishedMillis () );
+                upsert.bindString ( 6, feed );
+                upsert.bindLong ( 7, fetchedAt );
+                upsert.bindLong ( 8, i );
+                bindNullable ( upsert, 9, article.getThumbnailUrl () );
+                bindNullable ( upsert, 10, article.getSectionId () );
+                upsert.executeInsert ();
+            }
+            // Drop the oldest rows of the feed beyond the limit
+            db.execSQL ( "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_FEED + " = ? AND " + COLUMN_URL
+                            + " NOT IN (SELECT " + COLUMN_URL + " FROM " + TABLE_NAME + " WHERE " + COLUMN_FEED
+                            + " = ? ORDER BY " + ORDER_BY + " LIMIT " + MAX_ARTICLES_PER_FEED + ")",
+                    new Object[]{feed, feed} );
+            db.setTransactionSuccessful ();
+        } finally {
+            db.endTransaction ();
+            upsert.close ();
+        }
+    }
+
+    /**
+     * Reads the article at the cursor, which holds the {@link #ARTICLE_COLUMNS}.
+     */
+    private static Article readArticle(Cursor cursor) {
+        return new Article ( cursor.getString ( 0 ), cursor.getString ( 1 ), cursor.getString ( 6 ),
+                cursor.getString ( 2 ), cursor.getString ( 3 ), cursor.getLong ( 4 ), cursor.getString ( 5 ) );
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull ( index );
+        } else {
+            statement.bindString ( index, value );
+        }
+    }
+}
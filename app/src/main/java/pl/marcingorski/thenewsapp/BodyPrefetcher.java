@@ -0,0 +1,161 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Downloads the bodies of the articles most likely to be opened into the {@link BodyStore},
+ * so the reader opens them without a request.
+ * <p>
+ * Articles on screen come first, then the others newest first. Bodies that are already stored
+ * are skipped. A run stops after the given number of articles or once the bytes received
+ * reach its budget; the download that crosses the budget is still completed and stored.
+ * It also stops after {@link #MAX_FAILURES_IN_A_ROW} failed downloads in a row, e.g. when
+ * offline or out of quota, instead of trying every candidate.
+ */
+final class BodyPrefetcher {
+
+    /**
+     * Failed downloads in a row after which a run gives up
+     */
+    static final int MAX_FAILURES_IN_A_ROW = 3;
+
+    /**
+     * Downloads the body of a single article.
+     */
+    interface BodySource {
+        /**
+         * Returns the body, or null if it could not be downloaded.
+         */
+        Download fetch(String articleUrl);
+    }
+
+    /**
+     * A downloaded body and the bytes received for it.
+     */
+    static final class Download {
+        final String body;
+        final long bytes;
+
+        Download(String body, long bytes) {
+            this.body = body;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * What a run did.
+     */
+    static final class Result {
+        final int downloaded;
+        final int failed;
+        final long bytes;
+
+        Result(int downloaded, int failed, long bytes) {
+            this.downloaded = downloaded;
+            this.failed = failed;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return downloaded + " bodies, " + failed + " failed, " + bytes + " bytes";
+        }
+    }
+
+    private static final class Candidate {
+        final Article article;
+        final boolean visible;
+
+        Candidate(Article article, boolean visible) {
+            this.article = article;
+            this.visible = visible;
+        }
+    }
+
+    /**
+     * Visible first, then newest first.
+     */
+    private static final Comparator <Candidate> PRIORITY = new Comparator <Candidate> () {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            if (a.visible != b.visible) {
+                return a.visible ? -1 : 1;
+            }
+            long x = a.article.getPublishedMillis ();
+            long y = b.article.getPublishedMillis ();
+            return x > y ? -1 : (x == y ? 0 : 1);
+        }
+    };
+
+    private final BodyStore mStore;
+    private final BodySource mSource;
+
+    BodyPrefetcher(BodyStore store, BodySource source) {
+        mStore = store;
+        mSource = source;
+    }
+
+    /**
+     * Downloads missing bodies in priority order, blocking until done. Stops early when
+     * the thread is interrupted.
+     *
+     * @param visible     the articles on screen, may be empty
+     * @param recent      other articles to consider, e.g. the stored feed
+     * @param maxArticles most bodies to download
+     * @param byteBudget  most bytes to receive, a download is not started beyond it
+     */
+    Result prefetch(List <Article> visible, List <Article> recent, int maxArticles, long byteBudget) {
+        PriorityQueue <Candidate> queue = new PriorityQueue <> ( Math.max ( 1, visible.size () + recent.size () ),
+                PRIORITY );
+        Set <String> queued = new HashSet <> ();
+        for (Article article : visible) {
+            if (queued.add ( article.getmUrl () )) {
+                queue.add ( new Candidate ( article, true ) );
+            }
+        }
+        for (Article article : recent) {
+            if (queued.add ( article.getmUrl () )) {
+                queue.add ( new Candidate ( article, false ) );
+            }
+        }
+
+        int downloaded = 0;
+        int failed = 0;
+        int failedInARow = 0;
+        long bytes = 0;
+        // Behind every other request to the API
+        RequestScheduler.Lane previousLane = RequestScheduler.enterLane ( RequestScheduler.Lane.PREFETCH );
+        try {
+            while (!queue.isEmpty () && downloaded < maxArticles && bytes < byteBudget
+                    && failedInARow < MAX_FAILURES_IN_A_ROW && !Thread.currentThread ().isInterrupted ()) {
+                String url = queue.poll ().article.getmUrl ();
+                if (mStore.contains ( url )) {
+                    continue;
+                }
+                Download download = mSource.fetch ( url );
+                if (download == null || download.body == null) {
+                    failed++;
+                    failedInARow++;
+                    continue;
+                }
+                bytes += download.bytes;
+                try {
+                    mStore.put ( url, download.body );
+                    downloaded++;
+                    failedInARow = 0;
+                } catch (IOException e) {
+                    failed++;
+                    failedInARow++;
+                }
+            }
+        } finally {
+            RequestScheduler.enterLane ( previousLane );
+        }
+        return new Result ( downloaded, failed, bytes );
+    }
+}
@@ -0,0 +1,160 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTML bodies of articles, stored gzip compressed so they can be read without a connection.
+ * <p>
+ * Every body is a file named after the article URL. The least recently read or written bodies
+ * are deleted once the files go over the byte budget. Bodies are written to a temporary file
+ * and renamed, so a reader never sees half a body. All methods do disk I/O and must be called
+ * from a background thread.
+ */
+final class BodyStore {
+
+    private static final Charset UTF_8 = Charset.forName ( "UTF-8" );
+    private static final String SUFFIX = ".html.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /**
+     * @param directory where the bodies are stored, created if missing
+     * @param maxBytes  budget for the compressed bodies, in bytes
+     */
+    BodyStore(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException ( "maxBytes <= 0" );
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    boolean contains(String articleUrl) {
+        return file ( articleUrl ).isFile ();
+    }
+
+    /**
+     * Returns the stored body of the article, or null if it is not stored.
+     */
+    String get(String articleUrl) {
+        File file = file ( articleUrl );
+        if (!file.isFile ()) {
+            return null;
+        }
+        try {
+            InputStream in = new GZIPInputStream ( new BufferedInputStream ( new FileInputStream ( file ) ) );
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream ( (int) file.length () * 4 );
+                byte[] buffer = new byte[8 * 1024];
+                int count;
+                while ((count = in.read ( buffer )) != -1) {
+                    out.write ( buffer, 0, count );
+                }
+                // Keep the order of use for trimming
+                file.setLastModified ( System.currentTimeMillis () );
+                return new String ( out.toByteArray (), UTF_8 );
+            } finally {
+                in.close ();
+            }
+        } catch (IOException e) {
+            // Damaged, it is downloaded again
+            file.delete ();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the body of the article and returns its compressed size, then trims the
+     * store to its budget.
+     */
+    synchronized long put(String articleUrl, String body) throws IOException {
+        if (!mDirectory.isDirectory () && !mDirectory.mkdirs ()) {
+            throw new IOException ( "Could not create " + mDirectory );
+        }
+        File file = file ( articleUrl );
+        File temp = new File ( file.getPath () + TEMP_SUFFIX );
+        OutputStream out = new GZIPOutputStream ( new BufferedOutputStream ( new FileOutputStream ( temp ) ) );
+        try {
+            out.write ( body.getBytes ( UTF_8 ) );
+        } catch (IOException e) {
+            out.close ();
+            temp.delete ();
+            throw e;
+        }
+        out.close ();
+        if (!temp.renameTo ( file )) {
+            temp.delete ();
+            throw new IOException ( "Could not replace " + file );
+        }
+        long length = file.length ();
+        trimToSize ();
+        return length;
+    }
+
+    /**
+     * Returns the compressed size of every stored body.
+     */
+    synchronized long size() {
+        long size = 0;
+        for (File file : bodyFiles ()) {
+            size += file.length ();
+        }
+        return size;
+    }
+
+    private void trimToSize() {
+        File[] files = bodyFiles ();
+        long size = 0;
+        for (File file : files) {
+            size += file.length ();
+        }
+        if (size <= mMaxBytes) {
+            return;
+        }
+        Arrays.sort ( files, new Comparator <File> () {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified ();
+                long y = b.lastModified ();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        } );
+        for (int i = 0; i < files.length && size > mMaxBytes; i++) {
+            size -= files[i].length ();
+            files[i].delete ();
+        }
+    }
+
+    private File[] bodyFiles() {
+        File[] files = mDirectory.listFiles ();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName ().endsWith ( SUFFIX )) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf ( files, count );
+    }
+
+    private File file(String articleUrl) {
+        return new File ( mDirectory, DiskResponseCache.fileName ( articleUrl ) + SUFFIX );
+    }
+}
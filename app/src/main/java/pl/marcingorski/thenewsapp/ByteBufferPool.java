@@ -0,0 +1,65 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayDeque;
+
+/**
+ * Small thread-safe pool of equally sized byte arrays.
+ * <p>
+ * Response bodies are read through buffers taken from this pool, so repeated loads
+ * reuse the same few arrays instead of allocating new ones for every request.
+ */
+final class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque <byte[]> pool = new ArrayDeque <> ();
+
+    /**
+     * @param bufferSize size of every buffer handed out, in bytes
+     * @param maxPooled  how many released buffers are kept for reuse
+     */
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled < 0) {
+            throw new IllegalArgumentException ( "bufferSize=" + bufferSize + " maxPooled=" + maxPooled );
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a pooled buffer, or a new one if the pool is empty.
+     */
+    byte[] acquire() {
+        synchronized (pool) {
+            byte[] buffer = pool.pollFirst ();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Gives a buffer back to the pool. The caller must not use it afterwards.
+     */
+    void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        synchronized (pool) {
+            if (pool.size () < maxPooled) {
+                pool.addFirst ( buffer );
+            }
+        }
+    }
+
+    int pooledCount() {
+        synchronized (pool) {
+            return pool.size ();
+        }
+    }
+}
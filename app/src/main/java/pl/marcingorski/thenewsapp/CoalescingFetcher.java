@@ -0,0 +1,150 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link SectionFanOut.Fetcher} that sends each request only once, however many callers
+ * ask for it at about the same time.
+ * <p>
+ * Requests are keyed by their normalized URL, see {@link DiskResponseCache#normalize}.
+ * While a request is running, callers for the same key wait for it and share its result
+ * instead of sending their own. A successful result is then kept for a short time, so a
+ * reload right after another one, e.g. after a rotation or coming back from the settings,
+ * neither sends nor parses anything. Failures are not kept, the next caller tries again.
+ * <p>
+ * The network requests, the callers that joined a running request and the results served
+ * from memory are counted in {@link PipelineMetrics}.
+ */
+final class CoalescingFetcher implements SectionFanOut.Fetcher {
+
+    /**
+     * Counter names
+     */
+    static final String FETCHES = "coalescer_fetches";
+    static final String JOINED = "coalescer_joined";
+    static final String MEMO_HITS = "coalescer_memo_hits";
+
+    private final SectionFanOut.Fetcher mFetcher;
+    private final long mTtlMillis;
+    private final int mMaxEntries;
+
+    private final ConcurrentMap <String, FutureTask <List <Article>>> mInFlight = new ConcurrentHashMap <> ();
+
+    /**
+     * Recent results by key, least recently used first
+     */
+    private final LinkedHashMap <String, Result> mMemo = new LinkedHashMap <> ( 16, 0.75f, true );
+
+    private final PipelineMetrics.Counter mFetches;
+    private final PipelineMetrics.Counter mJoined;
+    private final PipelineMetrics.Counter mMemoHits;
+
+    private static final class Result {
+        final List <Article> articles;
+        final long expiresAt;
+
+        Result(List <Article> articles, long expiresAt) {
+            this.articles = articles;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param fetcher    performs the requests
+     * @param ttlMillis  how long a result is served from memory
+     * @param maxEntries how many results are kept at most
+     * @param metrics    where the requests, joins and memo hits are counted
+     */
+    CoalescingFetcher(SectionFanOut.Fetcher fetcher, long ttlMillis, int maxEntries, PipelineMetrics metrics) {
+        mFetcher = fetcher;
+        mTtlMillis = ttlMillis;
+        mMaxEntries = maxEntries;
+        mFetches = metrics.counter ( FETCHES );
+        mJoined = metrics.counter ( JOINED );
+        mMemoHits = metrics.counter ( MEMO_HITS );
+    }
+
+    /**
+     * Returns the articles of the URL from memory, from the request already running for it,
+     * or from a new request run on the calling thread. Returns null if the request failed or
+     * the wait for another caller's request was interrupted.
+     */
+    @Override
+    public List <Article> fetch(final String url) {
+        final String key = DiskResponseCache.normalize ( url );
+        List <Article> remembered = remembered ( key );
+        if (remembered != null) {
+            mMemoHits.increment ();
+            return remembered;
+        }
+
+        FutureTask <List <Article>> task = new FutureTask <> ( new Callable <List <Article>> () {
+            @Override
+            public List <Article> call() {
+                // A request for the key may have finished since it was looked up
+                List <Article> remembered = remembered ( key );
+                if (remembered != null) {
+                    mMemoHits.increment ();
+                    return remembered;
+                }
+                mFetches.increment ();
+                List <Article> articles = mFetcher.fetch ( url );
+                // A stale response is passed on as it is, so it can still be told apart, and never reused
+                if (articles != null && !FetchPolicy.isStale ( articles )) {
+                    articles = Collections.unmodifiableList ( articles );
+                    remember ( key, articles );
+                }
+                return articles;
+            }
+        } );
+        FutureTask <List <Article>> running = mInFlight.putIfAbsent ( key, task );
+        if (running == null) {
+            try {
+                task.run ();
+            } finally {
+                mInFlight.remove ( key, task );
+            }
+            running = task;
+        } else {
+            mJoined.increment ();
+        }
+
+        try {
+            return running.get ();
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return null;
+        } catch (ExecutionException e) {
+            // Fetchers report failures with null, so this is a bug in the fetcher
+            throw new RuntimeException ( e.getCause () );
+        }
+    }
+
+    private synchronized List <Article> remembered(String key) {
+        Result result = mMemo.get ( key );
+        if (result == null) {
+            return null;
+        }
+        if (result.expiresAt <= System.currentTimeMillis ()) {
+            mMemo.remove ( key );
+            return null;
+        }
+        return result.articles;
+    }
+
+    private synchronized void remember(String key, List <Article> articles) {
+        mMemo.put ( key, new Result ( articles, System.currentTimeMillis () + mTtlMillis ) );
+        if (mMemo.size () > mMaxEntries) {
+            Map.Entry <String, Result> eldest = mMemo.entrySet ().iterator ().next ();
+            mMemo.remove ( eldest.getKey () );
+        }
+    }
+}
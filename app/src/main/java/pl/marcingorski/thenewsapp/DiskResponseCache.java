@@ -0,0 +1,471 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk backed cache of response bodies that supports conditional GET revalidation.
+ * <p>
+ * Entries are keyed by the normalized request URI and remember the ETag and Last-Modified
+ * validators of the response. A request for a cached URI sends them back as
+ * If-None-Match / If-Modified-Since, and a 304 answer is served from the cache. The most
+ * recently decoded article lists are also kept in memory, so a 304 for one of them costs
+ * no parsing at all.
+ * <p>
+ * Entries are evicted in least recently used order once the stored bodies go over the
+ * byte budget.
+ */
+final class DiskResponseCache {
+
+    private static final Charset UTF_8 = Charset.forName ( "UTF-8" );
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * How many decoded article lists are kept in memory for zero-parse hits.
+     */
+    private static final int MAX_DECODED = 4;
+
+    private final File directory;
+    private final long maxBytes;
+    private long size;
+
+    /**
+     * Access ordered, so iteration starts at the least recently used entry.
+     */
+    private final LinkedHashMap <String, Entry> entries = new LinkedHashMap <> ( 16, 0.75f, true );
+
+    private final LinkedHashMap <String, List <Article>> decoded =
+            new LinkedHashMap <String, List <Article>> ( 8, 0.75f, true ) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry <String, List <Article>> eldest) {
+                    return size () > MAX_DECODED;
+                }
+            };
+
+    private int requestCount;
+    private int hitCount;
+    private int missCount;
+    private int revalidationCount;
+
+    /**
+     * @param directory where the bodies are stored, created if missing
+     * @param maxBytes  budget for the stored bodies, in bytes
+     */
+    DiskResponseCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException ( "maxBytes <= 0" );
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        readEntries ();
+    }
+
+    /**
+     * Returns the cache key for a request URL: the URL with its query parameters sorted,
+     * so the same query always maps to the same entry.
+     */
+    static String normalize(String url) {
+        int queryStart = url.indexOf ( '?' );
+        if (queryStart == -1) {
+            return url;
+        }
+        String query = url.substring ( queryStart + 1 );
+        if (query.isEmpty ()) {
+            return url.substring ( 0, queryStart );
+        }
+        String[] params = query.split ( "&" );
+        Arrays.sort ( params );
+        StringBuilder normalized = new StringBuilder ( url.length () );
+        normalized.append ( url, 0, queryStart + 1 );
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                normalized.append ( '&' );
+            }
+            normalized.append ( params[i] );
+        }
+        return normalized.toString ();
+    }
+
+    /**
+     * Returns the entry stored for the key, or null. Counts as a request, and as a
+     * revalidation if an entry is found.
+     */
+    synchronized Entry get(String key) {
+        requestCount++;
+        Entry entry = entries.get ( key );
+        if (entry != null) {
+            revalidationCount++;
+            // Keep the LRU order across restarts
+            entry.metaFile ().setLastModified ( System.currentTimeMillis () );
+        }
+        return entry;
+    }
+
+    /**
+     * Request headers that revalidate the given entry.
+     */
+    static Map <String, String> validatorHeaders(Entry entry) {
+        Map <String, String> headers = new HashMap <> ();
+        if (entry.etag != null) {
+            headers.put ( "If-None-Match", entry.etag );
+        }
+        if (entry.lastModified != null) {
+            headers.put ( "If-Modified-Since", entry.lastModified );
+        }
+        return headers;
+    }
+
+    /**
+     * Records that a conditional request for the entry was answered with 304 Not Modified.
+     * Returns the articles decoded from it earlier, or null if they have to be decoded
+     * again from {@link #openBody(Entry)}.
+     */
+    synchronized List <Article> onNotModified(Entry entry) {
+        hitCount++;
+        return decoded.get ( entry.key );
+    }
+
+    /**
+     * Records that the response was downloaded in full.
+     */
+    synchronized void onMiss() {
+        missCount++;
+    }
+
+    /**
+     * Remembers the articles decoded from the stored body of the key.
+     */
+    synchronized void putDecoded(String key, List <Article> articles) {
+        if (entries.containsKey ( key )) {
+            decoded.put ( key, Collections.unmodifiableList ( articles ) );
+        }
+    }
+
+    InputStream openBody(Entry entry) throws IOException {
+        return new BufferedInputStream ( new FileInputStream ( entry.bodyFile () ) );
+    }
+
+    /**
+     * Wraps a response body so that everything read from it is also written to the cache.
+     * The entry is only stored once {@link Recorder#commit()} is called.
+     * Returns null if the response has no validators and so can never be revalidated.
+     */
+    Recorder record(String key, String etag, String lastModified, InputStream body) throws IOException {
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        if (!directory.isDirectory () && !directory.mkdirs ()) {
+            return null;
+        }
+        return new Recorder ( key, etag, lastModified, body );
+    }
+
+    /**
+     * Like {@link #record}, for a response that never changes, e.g. an image whose URL changes
+     * with its content. It is stored without validators and its entry can be used as it is.
+     * Returns null if the cache directory can not be created.
+     */
+    Recorder recordImmutable(String key, InputStream body) throws IOException {
+        if (!directory.isDirectory () && !directory.mkdirs ()) {
+            return null;
+        }
+        return new Recorder ( key, null, null, body );
+    }
+
+    synchronized int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Requests answered from the cache after a 304.
+     */
+    synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Requests where the full body was downloaded.
+     */
+    synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Requests that were sent as conditional requests because an entry was stored.
+     */
+    synchronized int getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    long maxSize() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskResponseCache[requests=" + requestCount + ", hits=" + hitCount + ", misses=" + missCount
+                + ", revalidations=" + revalidationCount + ", size=" + size + "/" + maxBytes + "]";
+    }
+
+    private synchronized void commit(Entry entry, File tempFile) throws IOException {
+        Entry previous = entries.remove ( entry.key );
+        if (previous != null) {
+            size -= previous.length;
+        }
+        decoded.remove ( entry.key );
+
+        if (entry.length > maxBytes || !tempFile.renameTo ( entry.bodyFile ())) {
+            deleteFiles ( entry );
+            tempFile.delete ();
+            return;
+        }
+        writeMeta ( entry );
+        entries.put ( entry.key, entry );
+        size += entry.length;
+        trimToSize ();
+    }
+
+    private void trimToSize() {
+        Iterator <Entry> iterator = entries.values ().iterator ();
+        while (size > maxBytes && iterator.hasNext ()) {
+            Entry eldest = iterator.next ();
+            iterator.remove ();
+            decoded.remove ( eldest.key );
+            size -= eldest.length;
+            deleteFiles ( eldest );
+        }
+    }
+
+    private void deleteFiles(Entry entry) {
+        entry.bodyFile ().delete ();
+        entry.metaFile ().delete ();
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream (
+                new BufferedOutputStream ( new FileOutputStream ( entry.metaFile () ) ) );
+        try {
+            out.writeUTF ( entry.key );
+            out.writeUTF ( entry.etag == null ? "" : entry.etag );
+            out.writeUTF ( entry.lastModified == null ? "" : entry.lastModified );
+            out.writeLong ( entry.length );
+        } finally {
+            out.close ();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the files of a previous run, oldest used first.
+     */
+    private void readEntries() {
+        File[] metaFiles = directory.listFiles ();
+        if (metaFiles == null) {
+            return;
+        }
+        List <File> files = new ArrayList <> ();
+        for (File file : metaFiles) {
+            if (file.getName ().endsWith ( META_SUFFIX )) {
+                files.add ( file );
+            } else if (file.getName ().endsWith ( TEMP_SUFFIX )) {
+                file.delete ();
+            }
+        }
+        Collections.sort ( files, new Comparator <File> () {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified ();
+                long y = b.lastModified ();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        } );
+
+        for (File file : files) {
+            Entry entry = readMeta ( file );
+            if (entry == null || !entry.bodyFile ().isFile () || entry.bodyFile ().length () != entry.length) {
+                file.delete ();
+                continue;
+            }
+            entries.put ( entry.key, entry );
+            size += entry.length;
+        }
+        trimToSize ();
+    }
+
+    private Entry readMeta(File file) {
+        try {
+            DataInputStream in = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( file ) ) );
+            try {
+                String key = in.readUTF ();
+                String etag = in.readUTF ();
+                String lastModified = in.readUTF ();
+                long length = in.readLong ();
+                return new Entry ( key, etag.isEmpty () ? null : etag,
+                        lastModified.isEmpty () ? null : lastModified, length );
+            } finally {
+                in.close ();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a file name for the key: its SHA-1 in hex.
+     */
+    static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance ( "SHA-1" ).digest ( key.getBytes ( UTF_8 ) );
+            StringBuilder name = new StringBuilder ( digest.length * 2 );
+            for (byte b : digest) {
+                name.append ( Character.forDigit ( (b >> 4) & 0xf, 16 ) );
+                name.append ( Character.forDigit ( b & 0xf, 16 ) );
+            }
+            return name.toString ();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError ( e );
+        }
+    }
+
+    /**
+     * A stored response.
+     */
+    final class Entry {
+
+        final String key;
+        final String etag;
+        final String lastModified;
+        final long length;
+        private final String fileName;
+
+        private Entry(String key, String etag, String lastModified, long length) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.fileName = fileName ( key );
+        }
+
+        private File bodyFile() {
+            return new File ( directory, fileName + BODY_SUFFIX );
+        }
+
+        private File metaFile() {
+            return new File ( directory, fileName + META_SUFFIX );
+        }
+    }
+
+    /**
+     * Copies a response body into a temporary file while it is being read.
+     */
+    final class Recorder extends FilterInputStream {
+
+        private final String key;
+        private final String etag;
+        private final String lastModified;
+        private final File tempFile;
+        private final OutputStream out;
+        private long length;
+        private boolean failed;
+
+        private Recorder(String key, String etag, String lastModified, InputStream body) throws IOException {
+            super ( body );
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.tempFile = File.createTempFile ( fileName ( key ), TEMP_SUFFIX, directory );
+            this.out = new BufferedOutputStream ( new FileOutputStream ( tempFile ) );
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = in.read ();
+            if (result != -1) {
+                write ( new byte[]{(byte) result}, 0, 1 );
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = in.read ( b, off, len );
+            if (result > 0) {
+                write ( b, off, result );
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the stored copy
+            failed = true;
+            return in.skip ( n );
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            length += len;
+            if (length > maxBytes) {
+                failed = true;
+                return;
+            }
+            try {
+                out.write ( b, off, len );
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        /**
+         * Stores the recorded body. Must only be called after the whole body was read.
+         */
+        void commit() throws IOException {
+            out.close ();
+            if (failed) {
+                tempFile.delete ();
+                return;
+            }
+            DiskResponseCache.this.commit ( new Entry ( key, etag, lastModified, length ), tempFile );
+        }
+
+        /**
+         * Throws the recorded body away.
+         */
+        void abort() {
+            try {
+                out.close ();
+            } catch (IOException ignored) {
+                // The file is deleted anyway
+            }
+            tempFile.delete ();
+        }
+    }
+}
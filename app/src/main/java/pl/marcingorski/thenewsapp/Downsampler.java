@@ -0,0 +1,39 @@
+package pl.marcingorski.thenewsapp;
+
+/**
+ * Works out how far an image is scaled down while it is decoded, so a thumbnail takes
+ * the memory of the view it is shown in rather than of the full image.
+ */
+final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Returns the largest power of two to divide the image size by that still leaves the image
+     * at least as large as the target in both dimensions, for BitmapFactory's inSampleSize.
+     * Returns 1 if the image is not larger than the target or a size is unknown.
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the scale, below 1, that brings the sampled image down to cover the target,
+     * or 1 if it already is not larger.
+     */
+    static float scale(int sampledWidth, int sampledHeight, int targetWidth, int targetHeight) {
+        if (sampledWidth <= 0 || sampledHeight <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return 1f;
+        }
+        float scale = Math.max ( (float) targetWidth / sampledWidth, (float) targetHeight / sampledHeight );
+        return Math.min ( 1f, scale );
+    }
+}
@@ -0,0 +1,386 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drops articles that were already seen, so a story that is in several sections or moved
+ * to the next page while paging is shown once.
+ * <p>
+ * An article is a duplicate if its URL was seen before; the Guardian id is the path of the
+ * URL, so this also matches the id. The URLs are kept as 64 bit hashes in an open addressing
+ * table. Optionally, an article is also a near duplicate if its title shares most of its
+ * word pairs with the title of an article published around the same time, e.g. a story
+ * filed again with a corrected headline. The titles are found through MinHash signatures:
+ * the signature of a title is cut into bands, and a title that shares a band with another is
+ * compared with it word pair by word pair. Both checks take constant time per article.
+ * <p>
+ * Only the last {@code window} articles are remembered, in a ring; the oldest one is
+ * forgotten when a new one is added, so the memory used is fixed. Not safe for use from
+ * several threads.
+ */
+final class DuplicateFilter {
+
+    /**
+     * Counters of the articles dropped because of their URL and because of their title
+     */
+    static final String DUPLICATES_COUNTER = "duplicates";
+    static final String NEAR_DUPLICATES_COUNTER = "near_duplicates";
+
+    private static final PipelineMetrics.Counter DUPLICATES =
+            PipelineMetrics.getDefault ().counter ( DUPLICATES_COUNTER );
+    private static final PipelineMetrics.Counter NEAR_DUPLICATES =
+            PipelineMetrics.getDefault ().counter ( NEAR_DUPLICATES_COUNTER );
+
+    /**
+     * MinHash signature of a title: bands of rows, each row the smallest hash of a word pair.
+     * Two titles sharing 60% of their word pairs share a band 98% of the time.
+     */
+    private static final int BANDS = 8;
+    private static final int ROWS = 2;
+
+    /**
+     * Share of word pairs two titles must have in common to be near duplicates.
+     */
+    private static final double MIN_SIMILARITY = 0.6;
+
+    /**
+     * Titles with fewer word pairs are too short to tell a near duplicate from a similar
+     * headline, e.g. a recurring column.
+     */
+    private static final int MIN_PAIRS = 3;
+
+    /**
+     * Near duplicates are published at most this far apart.
+     */
+    private static final long NEAR_DUPLICATE_SPAN_MILLIS = 48 * 60 * 60 * 1000L;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Odd multipliers of the MinHash rows, one per row.
+     */
+    private static final long[] ROW_SEEDS = new long[BANDS * ROWS];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < ROW_SEEDS.length; i++) {
+            seed = mix64 ( seed + i );
+            ROW_SEEDS[i] = seed | 1;
+        }
+    }
+
+    private final boolean mNearDuplicates;
+
+    /**
+     * The ring of the remembered articles, their URL hashes and their band keys
+     */
+    private final Article[] mArticles;
+    private final long[] mUrlHashes;
+    private final long[] mBandKeys;
+    private int mNext;
+
+    private final LongIndex mUrls;
+    private final LongIndex mBands;
+
+    /**
+     * @param window         how many of the last articles are remembered
+     * @param nearDuplicates whether articles with nearly the same title are dropped too
+     */
+    DuplicateFilter(int window, boolean nearDuplicates) {
+        if (window < 1) {
+            throw new IllegalArgumentException ( "window=" + window );
+        }
+        mNearDuplicates = nearDuplicates;
+        mArticles = new Article[window];
+        mUrlHashes = new long[window];
+        mUrls = new LongIndex ( window );
+        mBandKeys = nearDuplicates ? new long[window * BANDS] : null;
+        mBands = nearDuplicates ? new LongIndex ( window * BANDS ) : null;
+    }
+
+    /**
+     * Remembers the article and returns true, or returns false if it is a duplicate of an
+     * article remembered before.
+     */
+    boolean add(Article article) {
+        long urlHash = urlHash ( article.getmUrl () );
+        if (mUrls.get ( urlHash ) != LongIndex.NONE) {
+            DUPLICATES.increment ();
+            return false;
+        }
+
+        long[] pairs = null;
+        long[] bandKeys = null;
+        if (mNearDuplicates) {
+            pairs = wordPairs ( article.getTitleOfArticle () );
+            if (pairs.length >= MIN_PAIRS) {
+                bandKeys = bandKeys ( pairs );
+                if (hasNearDuplicate ( article, pairs, bandKeys )) {
+                    NEAR_DUPLICATES.increment ();
+                    return false;
+                }
+            }
+        }
+
+        int slot = mNext;
+        mNext = (mNext + 1) % mArticles.length;
+        forget ( slot );
+        mArticles[slot] = article;
+        mUrlHashes[slot] = urlHash;
+        mUrls.put ( urlHash, slot );
+        if (bandKeys != null) {
+            for (int band = 0; band < BANDS; band++) {
+                mBandKeys[slot * BANDS + band] = bandKeys[band];
+                mBands.put ( bandKeys[band], slot );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the articles in order and returns the ones that were not duplicates.
+     */
+    List <Article> filter(List <Article> articles) {
+        List <Article> kept = new ArrayList <> ( articles.size () );
+        for (Article article : articles) {
+            if (add ( article )) {
+                kept.add ( article );
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Forgets every article.
+     */
+    void clear() {
+        Arrays.fill ( mArticles, null );
+        mUrls.clear ();
+        if (mBands != null) {
+            mBands.clear ();
+        }
+        mNext = 0;
+    }
+
+    private boolean hasNearDuplicate(Article article, long[] pairs, long[] bandKeys) {
+        for (int band = 0; band < BANDS; band++) {
+            int slot = mBands.get ( bandKeys[band] );
+            if (slot == LongIndex.NONE) {
+                continue;
+            }
+            Article other = mArticles[slot];
+            if (Math.abs ( other.getPublishedMillis () - article.getPublishedMillis () ) <= NEAR_DUPLICATE_SPAN_MILLIS
+                    && similarity ( pairs, wordPairs ( other.getTitleOfArticle () ) ) >= MIN_SIMILARITY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the article in the slot of the ring from the tables, unless a newer article
+     * took over one of its keys.
+     */
+    private void forget(int slot) {
+        if (mArticles[slot] == null) {
+            return;
+        }
+        mUrls.remove ( mUrlHashes[slot], slot );
+        if (mBands != null) {
+            for (int band = 0; band < BANDS; band++) {
+                mBands.remove ( mBandKeys[slot * BANDS + band], slot );
+            }
+        }
+        mArticles[slot] = null;
+    }
+
+    /**
+     * Hashes the URL without its scheme, so http and https links to a story are equal.
+     */
+    static long urlHash(String url) {
+        int start = url.indexOf ( "://" );
+        long hash = FNV_OFFSET;
+        for (int i = start == -1 ? 0 : start + 3; i < url.length (); i++) {
+            hash = (hash ^ url.charAt ( i )) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the sorted, distinct hashes of the pairs of consecutive words of the title,
+     * in lower case and without punctuation. A title of one word is one pair.
+     */
+    static long[] wordPairs(String title) {
+        // A word takes at least one letter and one separator, so the hashes fit in this
+        long[] words = new long[(title.length () + 1) / 2];
+        int count = 0;
+        long word = FNV_OFFSET;
+        boolean inWord = false;
+        for (int i = 0; i <= title.length (); i++) {
+            char c = i < title.length () ? title.charAt ( i ) : ' ';
+            if (Character.isLetterOrDigit ( c )) {
+                word = (word ^ Character.toLowerCase ( c )) * FNV_PRIME;
+                inWord = true;
+            } else if (inWord) {
+                words[count++] = word;
+                word = FNV_OFFSET;
+                inWord = false;
+            }
+        }
+        if (count == 1) {
+            return new long[]{words[0]};
+        }
+        // The pairs take the place of the words, each pair is written after both words are read
+        int pairs = Math.max ( 0, count - 1 );
+        for (int i = 0; i < pairs; i++) {
+            words[i] = mix64 ( words[i] * 31 + words[i + 1] );
+        }
+        Arrays.sort ( words, 0, pairs );
+        int distinct = 0;
+        for (int i = 0; i < pairs; i++) {
+            if (distinct == 0 || words[i] != words[distinct - 1]) {
+                words[distinct++] = words[i];
+            }
+        }
+        return Arrays.copyOf ( words, distinct );
+    }
+
+    /**
+     * Returns the Jaccard similarity of two sorted sets of word pairs.
+     */
+    static double similarity(long[] a, long[] b) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    /**
+     * Returns the key of every band of the MinHash signature of the word pairs.
+     */
+    private static long[] bandKeys(long[] pairs) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = band;
+            for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+                long min = Long.MAX_VALUE;
+                for (long pair : pairs) {
+                    min = Math.min ( min, mix64 ( pair * ROW_SEEDS[row] ) );
+                }
+                key = key * FNV_PRIME + min;
+            }
+            keys[band] = mix64 ( key );
+        }
+        return keys;
+    }
+
+    /**
+     * Spreads the bits of the value over the whole long, the finalizer of MurmurHash3.
+     */
+    private static long mix64(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Open addressing hash table from long keys to the slots of the ring, with linear probing.
+     * Removing shifts the following entries back, so there are no tombstones and the table
+     * never fills up.
+     */
+    private static final class LongIndex {
+
+        static final int NONE = -1;
+
+        /**
+         * The keys, 0 marks a free slot, so a key of 0 is stored as 1.
+         */
+        private final long[] mKeys;
+        private final int[] mValues;
+        private final int mMask;
+
+        /**
+         * @param entries the most entries the table holds, it is kept at most half full
+         */
+        LongIndex(int entries) {
+            int capacity = Integer.highestOneBit ( Math.max ( 1, entries * 2 - 1 ) ) * 2;
+            mKeys = new long[capacity];
+            mValues = new int[capacity];
+            mMask = capacity - 1;
+        }
+
+        int get(long key) {
+            key = key == 0 ? 1 : key;
+            for (int i = home ( key ); mKeys[i] != 0; i = (i + 1) & mMask) {
+                if (mKeys[i] == key) {
+                    return mValues[i];
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * Maps the key to the value, replacing the value it had.
+         */
+        void put(long key, int value) {
+            key = key == 0 ? 1 : key;
+            int i = home ( key );
+            while (mKeys[i] != 0 && mKeys[i] != key) {
+                i = (i + 1) & mMask;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+        }
+
+        /**
+         * Removes the key if it still maps to the value.
+         */
+        void remove(long key, int value) {
+            key = key == 0 ? 1 : key;
+            int hole = home ( key );
+            while (mKeys[hole] != key) {
+                if (mKeys[hole] == 0) {
+                    return;
+                }
+                hole = (hole + 1) & mMask;
+            }
+            if (mValues[hole] != value) {
+                return;
+            }
+            // Move back every following entry of the run whose home is not between the hole and it
+            for (int i = (hole + 1) & mMask; mKeys[i] != 0; i = (i + 1) & mMask) {
+                int home = home ( mKeys[i] );
+                boolean reachable = i > hole ? home <= hole || home > i : home <= hole && home > i;
+                if (reachable) {
+                    mKeys[hole] = mKeys[i];
+                    mValues[hole] = mValues[i];
+                    hole = i;
+                }
+            }
+            mKeys[hole] = 0;
+        }
+
+        void clear() {
+            Arrays.fill ( mKeys, 0 );
+        }
+
+        private int home(long key) {
+            return (int) mix64 ( key ) & mMask;
+        }
+    }
+}
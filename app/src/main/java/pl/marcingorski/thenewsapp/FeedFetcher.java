@@ -0,0 +1,316 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches pages of the feed shown in the list.
+ * <p>
+ * The feed is made of the queries of one or more {@link FeedProvider}s: per provider either
+ * one query for all chosen sections, or one query per section. Several queries are sent at
+ * the same time through a {@link SectionFanOut} and merged by publication date as they
+ * arrive; a query that takes longer than the timeout of its provider is left out, and
+ * when it is the only query, the request fails.
+ * <p>
+ * A refresh of the first page can be incremental: for every query the newest publication
+ * date seen so far, its high-water mark, is kept, and only articles published after it are
+ * requested with the API's "from-date" parameter. The response then only holds what changed
+ * instead of a whole page.
+ */
+final class FeedFetcher {
+
+    /**
+     * The most pages of a query a delta refresh requests to reach the high-water mark
+     */
+    static final int MAX_DELTA_PAGES = 5;
+
+    /**
+     * The newest publication date seen for every query of one feed, by query key.
+     */
+    interface HighWaterMarks {
+        /**
+         * Returns the high-water mark of the query, or {@link PublicationDates#UNKNOWN}.
+         */
+        long get(String queryKey);
+
+        void putAll(Map <String, Long> marks);
+    }
+
+    /**
+     * The result of {@link #refresh(HighWaterMarks, SectionFanOut.ProgressListener)}.
+     */
+    static final class Refresh {
+
+        /**
+         * The new articles, or null if the refresh failed.
+         */
+        final List <Article> articles;
+
+        /**
+         * The high-water marks after the refresh, to be saved once the articles are stored.
+         */
+        final Map <String, Long> highWaterMarks;
+
+        /**
+         * Whether only articles newer than the high-water marks were requested. Otherwise the
+         * articles are the first page, which replaces the stored feed.
+         */
+        final boolean delta;
+
+        /**
+         * Whether a query was answered with its last good response instead of the network's,
+         * see {@link FetchPolicy#isStale}. The articles may then be older than the stored ones,
+         * and the high-water marks leave that query out.
+         */
+        final boolean stale;
+
+        Refresh(List <Article> articles, Map <String, Long> highWaterMarks, boolean delta, boolean stale) {
+            this.articles = articles;
+            this.highWaterMarks = highWaterMarks;
+            this.delta = delta;
+            this.stale = stale;
+        }
+    }
+
+    private final List <String> mQueryUrls;
+    private final List <FeedProvider> mProviders;
+    private final long[] mTimeoutsMillis;
+    private final int mPageSize;
+    private final SectionFanOut mFanOut;
+    private final SectionFanOut.Fetcher mFetcher;
+
+    /**
+     * Creates a fetcher for queries of the {@link GuardianProvider}.
+     */
+    FeedFetcher(List <String> queryUrls, int pageSize, SectionFanOut fanOut, SectionFanOut.Fetcher fetcher) {
+        this ( queryUrls, Collections. <FeedProvider>singletonList ( GuardianProvider.getDefault () ),
+                pageSize, fanOut, fetcher );
+    }
+
+    /**
+     * @param queryUrls query URLs without paging parameters, see {@link FeedProvider#queryUrls}
+     * @param providers the providers of the queries, each query belongs to the first one that
+     *                  {@link FeedProvider#handles handles} it
+     * @param pageSize  articles requested per page of every query
+     * @param fanOut    runs the queries in parallel if there is more than one
+     * @param fetcher   performs a single request
+     */
+    FeedFetcher(List <String> queryUrls, List <FeedProvider> providers, int pageSize, SectionFanOut fanOut,
+                SectionFanOut.Fetcher fetcher) {
+        if (queryUrls.isEmpty ()) {
+            throw new IllegalArgumentException ( "No query URLs" );
+        }
+        mQueryUrls = Collections.unmodifiableList ( new ArrayList <> ( queryUrls ) );
+        List <FeedProvider> queryProviders = new ArrayList <> ( queryUrls.size () );
+        mTimeoutsMillis = new long[queryUrls.size ()];
+        for (int i = 0; i < queryUrls.size (); i++) {
+            FeedProvider provider = providerOf ( queryUrls.get ( i ), providers );
+            if (provider == null) {
+                throw new IllegalArgumentException ( "No provider for " + queryUrls.get ( i ) );
+            }
+            queryProviders.add ( provider );
+            mTimeoutsMillis[i] = provider.getTimeoutMillis ();
+        }
+        mProviders = Collections.unmodifiableList ( queryProviders );
+        mPageSize = pageSize;
+        mFanOut = fanOut;
+        mFetcher = fetcher;
+    }
+
+    /**
+     * Returns the provider that handles the URL, or null if there is none.
+     */
+    static FeedProvider providerOf(String url, List <FeedProvider> providers) {
+        for (FeedProvider provider : providers) {
+            if (provider.handles ( url )) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URL of the given page of the i-th query.
+     */
+    private String pageUrl(int query, int page) {
+        return mProviders.get ( query ).pageUrl ( mQueryUrls.get ( query ), page, mPageSize );
+    }
+
+    int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns the most articles on one page of the feed, of all queries together.
+     */
+    int getRowsPerPage() {
+        return mPageSize * mQueryUrls.size ();
+    }
+
+    /**
+     * Returns the first page of a list of articles of the feed, newest first, e.g. of the
+     * stored ones, so the pages after it follow on from it.
+     */
+    List <Article> firstPage(List <Article> articles) {
+        int rows = getRowsPerPage ();
+        return articles.size () <= rows ? articles : new ArrayList <> ( articles.subList ( 0, rows ) );
+    }
+
+    boolean isFanOut() {
+        return mQueryUrls.size () > 1;
+    }
+
+    /**
+     * Key of the feed in the {@link ArticleStore}: the normalized URLs of the first page.
+     */
+    String getFeedKey() {
+        StringBuilder key = new StringBuilder ();
+        for (int i = 0; i < mQueryUrls.size (); i++) {
+            if (key.length () > 0) {
+                key.append ( ' ' );
+            }
+            key.append ( DiskResponseCache.normalize ( pageUrl ( i, 1 ) ) );
+        }
+        return key.toString ();
+    }
+
+    /**
+     * Key of a query for its high-water mark: the normalized URL without paging parameters.
+     */
+    static String queryKey(String queryUrl) {
+        return DiskResponseCache.normalize ( queryUrl );
+    }
+
+    /**
+     * Fetches the first page, or with high-water marks only the articles published after them,
+     * blocking until it is complete. Only a full refresh tells the listener about every section
+     * as it arrives, a delta would replace the list with just the new articles.
+     * <p>
+     * A delta needs the mark of every query; otherwise the first pages are fetched, and they
+     * replace the stored feed. When a whole page is newer than the mark, the following pages
+     * are fetched until the mark is reached, so there is no gap between the new articles and
+     * the stored ones. If it is not reached within {@link #MAX_DELTA_PAGES}, the refresh falls
+     * back to a full one.
+     *
+     * @param marks    the marks of this feed, null for a full refresh
+     * @param listener may be null
+     */
+    Refresh refresh(HighWaterMarks marks, SectionFanOut.ProgressListener listener) {
+        final long[] queryMarks = new long[mQueryUrls.size ()];
+        boolean delta = marks != null;
+        for (int i = 0; i < queryMarks.length; i++) {
+            queryMarks[i] = marks == null ? PublicationDates.UNKNOWN : marks.get ( queryKey ( mQueryUrls.get ( i ) ) );
+            delta &= queryMarks[i] != PublicationDates.UNKNOWN;
+        }
+        if (!delta) {
+            Arrays.fill ( queryMarks, PublicationDates.UNKNOWN );
+        }
+
+        final Map <String, Integer> queriesByUrl = new HashMap <> ();
+        final Map <String, Long> newMarks = new ConcurrentHashMap <> ();
+        final AtomicBoolean gap = new AtomicBoolean ();
+        final AtomicBoolean stale = new AtomicBoolean ();
+        List <String> urls = new ArrayList <> ( mQueryUrls.size () );
+        for (int i = 0; i < mQueryUrls.size (); i++) {
+            String url = deltaPageUrl ( i, 1, queryMarks[i] );
+            urls.add ( url );
+            queriesByUrl.put ( url, i );
+        }
+
+        SectionFanOut.Fetcher fetcher = new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                int query = queriesByUrl.get ( url );
+                long mark = queryMarks[query];
+                long newest = mark;
+                List <Article> newer = new ArrayList <> ();
+                boolean fresh = true;
+                for (int page = 1; ; page++) {
+                    List <Article> articles = mFetcher.fetch ( page == 1 ? url : deltaPageUrl ( query, page, mark ) );
+                    if (articles == null) {
+                        return null;
+                    }
+                    if (FetchPolicy.isStale ( articles )) {
+                        stale.set ( true );
+                        fresh = false;
+                    }
+                    boolean reached = false;
+                    for (Article article : articles) {
+                        // The page since the mark includes the mark itself, which we already have
+                        if (mark == PublicationDates.UNKNOWN || article.getPublishedMillis () > mark) {
+                            newer.add ( article );
+                        } else {
+                            reached = true;
+                        }
+                        newest = Math.max ( newest, article.getPublishedMillis () );
+                    }
+                    if (mark == PublicationDates.UNKNOWN || reached || articles.size () < mPageSize) {
+                        break;
+                    }
+                    if (page == MAX_DELTA_PAGES) {
+                        gap.set ( true );
+                        return null;
+                    }
+                }
+                if (fresh && newest != PublicationDates.UNKNOWN) {
+                    newMarks.put ( queryKey ( mQueryUrls.get ( query ) ), newest );
+                }
+                return newer;
+            }
+        };
+
+        List <Article> articles = fetchAll ( urls, fetcher, delta ? null : listener );
+        if (gap.get ()) {
+            // Too much is new to reach the stored articles, start over from the first page
+            return refresh ( null, listener );
+        }
+        return new Refresh ( articles, newMarks, delta, stale.get () );
+    }
+
+    /**
+     * Returns the URL of a page of the i-th query, with only the articles since the mark if
+     * there is one and the provider can filter by date.
+     */
+    private String deltaPageUrl(int query, int page, long mark) {
+        String url = pageUrl ( query, page );
+        if (mark == PublicationDates.UNKNOWN) {
+            return url;
+        }
+        // A provider that cannot filter by date sends the whole page,
+        // the articles up to the mark are dropped by the refresh
+        String sinceUrl = mProviders.get ( query ).sinceUrl ( url, mark );
+        return sinceUrl != null ? sinceUrl : url;
+    }
+
+    /**
+     * Fetches one page, blocking until it is complete. Returns null if the page could not be
+     * loaded. The listener is told about every query as it arrives.
+     *
+     * @param listener may be null
+     */
+    List <Article> fetchPage(int page, SectionFanOut.ProgressListener listener) {
+        List <String> pageUrls = new ArrayList <> ( mQueryUrls.size () );
+        for (int i = 0; i < mQueryUrls.size (); i++) {
+            pageUrls.add ( pageUrl ( i, page ) );
+        }
+        return fetchAll ( pageUrls, mFetcher, listener );
+    }
+
+    /**
+     * Sends one request per query, each within the timeout of its provider. A single query
+     * whose provider has no timeout is sent on the calling thread.
+     */
+    private List <Article> fetchAll(List <String> urls, SectionFanOut.Fetcher fetcher,
+                                    SectionFanOut.ProgressListener listener) {
+        if (urls.size () == 1 && mTimeoutsMillis[0] <= 0) {
+            return fetcher.fetch ( urls.get ( 0 ) );
+        }
+        return mFanOut.fetchAll ( urls, fetcher, listener, mTimeoutsMillis );
+    }
+}
@@ -0,0 +1,55 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A source of news articles: how its requests are built and how its responses are decoded.
+ * <p>
+ * The feed is made of the queries of every provider, see {@link FeedFetcher}. They are sent
+ * at the same time and merged by publication date as each one arrives, and a provider that
+ * does not answer within its timeout is left out, so one slow source never holds up the list.
+ * Implementations must be safe to use from several threads.
+ */
+interface FeedProvider {
+
+    /**
+     * Returns a short name for the logs and metrics.
+     */
+    String getName();
+
+    /**
+     * Returns true if the URL is one of this provider's requests.
+     */
+    boolean handles(String url);
+
+    /**
+     * Returns the query URLs for the sections, without paging parameters.
+     *
+     * @param perSection whether every section should be a query of its own
+     */
+    List <String> queryUrls(SectionSelection sections, boolean perSection);
+
+    /**
+     * Returns the URL of the given page of a query, the first page being 1.
+     */
+    String pageUrl(String queryUrl, int page, int pageSize);
+
+    /**
+     * Returns the URL of a page that only holds articles published at or after the given
+     * time, or null if the provider cannot filter by date.
+     */
+    String sinceUrl(String pageUrl, long sinceMillis);
+
+    /**
+     * Returns how long a request may take before the feed is shown without it.
+     */
+    long getTimeoutMillis();
+
+    /**
+     * Decodes a response into articles sorted newest first, reading the stream as it arrives.
+     * The stream is not closed.
+     */
+    List <Article> decode(InputStream in) throws IOException;
+}
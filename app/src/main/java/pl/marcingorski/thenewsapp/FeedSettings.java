@@ -0,0 +1,346 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The feed chosen in the settings, shared by the activity and the background sync.
+ */
+final class FeedSettings {
+
+    private static final String LOG_TAG = FeedSettings.class.getSimpleName ();
+
+    /**
+     * Articles per request
+     */
+    static final int PAGE_SIZE = 20;
+
+    /**
+     * Settings key, whether every section is requested separately
+     */
+    static final String KEY_FAN_OUT = "fan_out";
+
+    /**
+     * File with the first rows of the last loaded feed
+     */
+    static final String SNAPSHOT_FILE = "feed.snapshot";
+
+    /**
+     * Preferences file with the newest publication date seen per query of every feed,
+     * and when every feed was last refreshed
+     */
+    private static final String FEED_STATE_FILE = "feed_state";
+    private static final String MARK_PREFIX = "mark ";
+    private static final String REFRESHED_PREFIX = "refreshed ";
+
+    /**
+     * How long a response is reused for the same request, which covers a rotation or coming
+     * back from the settings, and how many are kept
+     */
+    private static final long REUSE_RESPONSE_MILLIS = 10 * 1000;
+    private static final int MAX_REUSED_RESPONSES = 16;
+
+    /**
+     * Fetch policy of single requests: how long a request may take with all its attempts,
+     * when a slow attempt is hedged at the earliest and before enough attempts were timed,
+     * and the delays between retries. The threads are enough for a hedge of every request
+     * of the section fan-out, the pager and the sync. The deadline is cut short to end before
+     * the timeout of every provider, see {@link #getFetchDeadlineMillis}.
+     */
+    private static final long FETCH_DEADLINE_MILLIS = 20 * 1000;
+    private static final long STALE_LOOKUP_MILLIS = 1000;
+    private static final long MIN_HEDGE_MILLIS = 500;
+    private static final long DEFAULT_HEDGE_MILLIS = 3 * 1000;
+    private static final long RETRY_BASE_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 4 * 1000;
+    private static final int MAX_PARALLEL_ATTEMPTS = 8;
+    private static final int MAX_QUEUED_ATTEMPTS = 8;
+
+    /**
+     * Single item requests, by the path of the article on the website
+     */
+    private static final String GUARDIAN_CONTENT_URL = "https://content.guardianapis.com";
+
+    /**
+     * Location and budget of the stored article bodies
+     */
+    private static final String BODIES_DIR = "bodies";
+    private static final long BODIES_BYTES = 8 * 1024 * 1024;
+
+    private static final List <FeedProvider> PROVIDERS =
+            Collections. <FeedProvider>singletonList ( GuardianProvider.getDefault () );
+
+    private static CoalescingFetcher sNetworkFetcher;
+    private static BodyStore sBodyStore;
+
+    private FeedSettings() {
+    }
+
+    /**
+     * Returns the snapshot of the last loaded feed.
+     */
+    static FeedSnapshot getSnapshot(Context context) {
+        return new FeedSnapshot ( new File ( context.getFilesDir (), SNAPSHOT_FILE ) );
+    }
+
+    /**
+     * Returns the high-water marks of the queries of the feed. A query in several feeds has
+     * a mark in each, since each feed stores its own articles.
+     */
+    static FeedFetcher.HighWaterMarks getHighWaterMarks(Context context, String feed) {
+        final SharedPreferences preferences = getFeedState ( context );
+        final String prefix = MARK_PREFIX + feed + ' ';
+        return new FeedFetcher.HighWaterMarks () {
+            @Override
+            public long get(String queryKey) {
+                return preferences.getLong ( prefix + queryKey, PublicationDates.UNKNOWN );
+            }
+
+            @Override
+            public void putAll(Map <String, Long> marks) {
+                SharedPreferences.Editor editor = preferences.edit ();
+                for (Map.Entry <String, Long> mark : marks.entrySet ()) {
+                    editor.putLong ( prefix + mark.getKey (), mark.getValue () );
+                }
+                editor.apply ();
+            }
+        };
+    }
+
+    /**
+     * Forgets the high-water marks of the feed, so its next refresh is a full one.
+     */
+    static void clearHighWaterMarks(Context context, String feed) {
+        SharedPreferences preferences = getFeedState ( context );
+        String prefix = MARK_PREFIX + feed + ' ';
+        SharedPreferences.Editor editor = preferences.edit ();
+        for (String key : preferences.getAll ().keySet ()) {
+            if (key.startsWith ( prefix )) {
+                editor.remove ( key );
+            }
+        }
+        editor.apply ();
+    }
+
+    /**
+     * Returns when the feed was last refreshed from the network, whether or not there was
+     * anything new, in milliseconds since the epoch, or 0 if it never was.
+     */
+    static long getLastRefreshed(Context context, String feed) {
+        return getFeedState ( context ).getLong ( REFRESHED_PREFIX + feed, 0 );
+    }
+
+    static void setLastRefreshed(Context context, String feed, long millis) {
+        getFeedState ( context ).edit ().putLong ( REFRESHED_PREFIX + feed, millis ).apply ();
+    }
+
+    private static SharedPreferences getFeedState(Context context) {
+        return context.getApplicationContext ().getSharedPreferences ( FEED_STATE_FILE,
+                Context.MODE_PRIVATE );
+    }
+
+    /**
+     * Returns the sections chosen in the settings.
+     */
+    static SectionSelection getSections(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences ( context );
+        List <String> sections = new ArrayList <> ();
+        for (String section : SectionSelection.SECTIONS) {
+            if (sharedPreferences.getBoolean ( section, false )) {
+                sections.add ( section );
+            }
+        }
+        return new SectionSelection ( sections );
+    }
+
+    /**
+     * Tells the listener on the main thread whenever the chosen sections change, with the
+     * sections chosen before and after. The returned registration must be kept by the caller,
+     * the preferences only hold on to it weakly, and passed to {@link #stopObserving}.
+     */
+    static SharedPreferences.OnSharedPreferenceChangeListener observeSections(
+            final Context context, final SectionSelection.Listener listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener registration =
+                new SharedPreferences.OnSharedPreferenceChangeListener () {
+                    private SectionSelection mLast = getSections ( context );
+
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                        if (!SectionSelection.SECTIONS.contains ( key )) {
+                            return;
+                        }
+                        SectionSelection current = getSections ( context );
+                        if (!current.equals ( mLast )) {
+                            SectionSelection previous = mLast;
+                            mLast = current;
+                            listener.onSectionsChanged ( previous, current );
+                        }
+                    }
+                };
+        PreferenceManager.getDefaultSharedPreferences ( context )
+                .registerOnSharedPreferenceChangeListener ( registration );
+        return registration;
+    }
+
+    /**
+     * Calls the listener on the main thread whenever one of the given preferences changes.
+     * The registration is kept and stopped like the one of {@link #observeSections}.
+     */
+    static SharedPreferences.OnSharedPreferenceChangeListener observe(
+            Context context, final Collection <String> keys, final Runnable listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener registration =
+                new SharedPreferences.OnSharedPreferenceChangeListener () {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                        if (keys.contains ( key )) {
+                            listener.run ();
+                        }
+                    }
+                };
+        PreferenceManager.getDefaultSharedPreferences ( context )
+                .registerOnSharedPreferenceChangeListener ( registration );
+        return registration;
+    }
+
+    static void stopObserving(
+            Context context, SharedPreferences.OnSharedPreferenceChangeListener registration) {
+        PreferenceManager.getDefaultSharedPreferences ( context )
+                .unregisterOnSharedPreferenceChangeListener ( registration );
+    }
+
+    /**
+     * Creates the fetcher for the sections chosen in the settings.
+     */
+    static FeedFetcher createFeedFetcher(Context context) {
+        return createFeedFetcher ( context, getSections ( context ) );
+    }
+
+    /**
+     * Returns whether every section is requested separately, see {@link #KEY_FAN_OUT}.
+     */
+    static boolean isFanOut(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences ( context ).getBoolean ( KEY_FAN_OUT, false );
+    }
+
+    /**
+     * Creates the fetcher for the given sections. With "fan_out" enabled, every section is
+     * requested separately and the results are merged.
+     */
+    static FeedFetcher createFeedFetcher(Context context, SectionSelection sections) {
+        boolean fanOut = isFanOut ( context );
+
+        List <String> queryUrls = new ArrayList <> ();
+        for (FeedProvider provider : getProviders ()) {
+            queryUrls.addAll ( provider.queryUrls ( sections, fanOut ) );
+        }
+        return new FeedFetcher ( queryUrls, getProviders (), PAGE_SIZE, SectionFanOut.getDefault (),
+                getNetworkFetcher ( context ) );
+    }
+
+    /**
+     * Returns the sources of the feed. Their queries are sent at the same time and merged.
+     */
+    static List <FeedProvider> getProviders() {
+        return PROVIDERS;
+    }
+
+    /**
+     * Returns how long a request may take with all its attempts, so that the last good
+     * response is read from the cache before the section fan-out gives up on the request
+     * after the timeout of its provider.
+     */
+    static long getFetchDeadlineMillis(List <FeedProvider> providers) {
+        long deadline = FETCH_DEADLINE_MILLIS;
+        for (FeedProvider provider : providers) {
+            long timeout = provider.getTimeoutMillis ();
+            if (timeout > 0) {
+                deadline = Math.min ( deadline, Math.max ( timeout / 2, timeout - STALE_LOOKUP_MILLIS ) );
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Returns the fetcher of the app for single requests. It is shared by every feed fetcher,
+     * so the activity, the loader and the background sync never send the same request twice
+     * at a time. Slow requests are hedged and failed ones retried, see {@link FetchPolicy},
+     * and the last good response is served when the network gives none in time.
+     */
+    private static synchronized SectionFanOut.Fetcher getNetworkFetcher(Context context) {
+        if (sNetworkFetcher == null) {
+            final Context appContext = context.getApplicationContext ();
+            FetchPolicy policy = new FetchPolicy ( new SectionFanOut.Fetcher () {
+                @Override
+                public List <Article> fetch(String url) {
+                    FeedProvider provider = FeedFetcher.providerOf ( url, getProviders () );
+                    if (provider == null) {
+                        Log.e ( LOG_TAG, "No provider for " + url );
+                        return null;
+                    }
+                    return QueryUtils.fetchNewsData ( url, QueryUtils.getResponseCache ( appContext ),
+                            provider );
+                }
+            }, QueryUtils.NETWORK, new FetchPolicy.StaleSource () {
+                @Override
+                public List <Article> stale(String url) {
+                    FeedProvider provider = FeedFetcher.providerOf ( url, getProviders () );
+                    return provider == null ? null : QueryUtils.readCachedNewsData ( url,
+                            QueryUtils.getResponseCache ( appContext ), provider );
+                }
+            }, FetchEngine.newPool ( "attempt", MAX_PARALLEL_ATTEMPTS, MAX_QUEUED_ATTEMPTS ),
+                    getFetchDeadlineMillis ( getProviders () ), MIN_HEDGE_MILLIS, DEFAULT_HEDGE_MILLIS,
+                    new SyncBackoff ( RETRY_BASE_MILLIS, RETRY_MAX_MILLIS, new Random () ),
+                    PipelineMetrics.getDefault () );
+            sNetworkFetcher = new CoalescingFetcher ( policy, REUSE_RESPONSE_MILLIS, MAX_REUSED_RESPONSES,
+                    PipelineMetrics.getDefault () );
+        }
+        return sNetworkFetcher;
+    }
+
+    /**
+     * Returns the stored article bodies of the app. The directory is only touched when the
+     * store is used, so this may be called on the main thread.
+     */
+    static synchronized BodyStore getBodyStore(Context context) {
+        if (sBodyStore == null) {
+            File directory = new File ( context.getApplicationContext ().getFilesDir (), BODIES_DIR );
+            sBodyStore = new BodyStore ( directory, BODIES_BYTES );
+        }
+        return sBodyStore;
+    }
+
+    /**
+     * Creates a prefetcher downloading into the {@link #getBodyStore body store}.
+     */
+    static BodyPrefetcher createBodyPrefetcher(Context context) {
+        return new BodyPrefetcher ( getBodyStore ( context ), new BodyPrefetcher.BodySource () {
+            @Override
+            public BodyPrefetcher.Download fetch(String articleUrl) {
+                return QueryUtils.fetchArticleBody ( contentUrl ( articleUrl ) );
+            }
+        } );
+    }
+
+    /**
+     * Returns the single item request for the body of the article at the given web URL.
+     * The API id of an article is the path of its web URL.
+     */
+    static String contentUrl(String articleUrl) {
+        Uri.Builder uriBuilder = Uri.parse ( GUARDIAN_CONTENT_URL ).buildUpon ();
+        uriBuilder.encodedPath ( Uri.parse ( articleUrl ).getEncodedPath () );
+        uriBuilder.appendQueryParameter ( "show-fields", "body" );
+        uriBuilder.appendQueryParameter ( "api-key", "test" );
+        return uriBuilder.toString ();
+    }
+}
@@ -0,0 +1,136 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows last shown for a feed, in a small binary file that can be read on the main
+ * thread while the activity is being created.
+ * <p>
+ * Only the first rows are kept, enough to fill the screen. The file holds a header with
+ * the feed key, followed by the fields of every article in {@link DataOutputStream} form,
+ * so reading it needs neither SQLite nor a JSON parser. A snapshot of another feed, an
+ * older format or a damaged file is treated as missing.
+ */
+final class FeedSnapshot {
+
+    /**
+     * How many rows are kept, about two screens.
+     */
+    static final int MAX_ARTICLES = 30;
+
+    private static final int MAGIC = 0x4e455753;
+    private static final int VERSION = 3;
+
+    private final File mFile;
+
+    FeedSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Returns the snapshot of the feed, or null if there is none.
+     */
+    List <Article> read(String feedKey) {
+        if (!mFile.exists ()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( mFile ), 8 * 1024 ) );
+            if (in.readInt () != MAGIC || in.readInt () != VERSION || !feedKey.equals ( in.readUTF () )) {
+                return null;
+            }
+            int count = in.readInt ();
+            if (count < 0 || count > MAX_ARTICLES) {
+                return null;
+            }
+            List <Article> articles = new ArrayList <> ( count );
+            for (int i = 0; i < count; i++) {
+                String title = in.readUTF ();
+                String section = emptyToNull ( in.readUTF () );
+                String author = emptyToNull ( in.readUTF () );
+                String url = in.readUTF ();
+                long publishedMillis = in.readLong ();
+                String thumbnailUrl = emptyToNull ( in.readUTF () );
+                String sectionId = emptyToNull ( in.readUTF () );
+                articles.add ( new Article ( title, section, sectionId, author, url, publishedMillis, thumbnailUrl ) );
+            }
+            return Collections.unmodifiableList ( articles );
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly ( in );
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the first rows of the feed. The file is written next to
+     * the old one and renamed over it, so a reader never sees half a snapshot.
+     */
+    synchronized void write(String feedKey, List <Article> articles) throws IOException {
+        File parent = mFile.getAbsoluteFile ().getParentFile ();
+        if (parent != null && !parent.isDirectory () && !parent.mkdirs ()) {
+            throw new IOException ( "Could not create " + parent );
+        }
+        File temp = new File ( mFile.getPath () + ".tmp" );
+        int count = Math.min ( articles.size (), MAX_ARTICLES );
+        DataOutputStream out = new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( temp ), 8 * 1024 ) );
+        try {
+            out.writeInt ( MAGIC );
+            out.writeInt ( VERSION );
+            out.writeUTF ( feedKey );
+            out.writeInt ( count );
+            for (int i = 0; i < count; i++) {
+                Article article = articles.get ( i );
+                out.writeUTF ( article.getTitleOfArticle () );
+                out.writeUTF ( nullToEmpty ( article.getSection () ) );
+                out.writeUTF ( nullToEmpty ( article.getAuthor () ) );
+                out.writeUTF ( article.getmUrl () );
+                out.writeLong ( article.getPublishedMillis () );
+                out.writeUTF ( nullToEmpty ( article.getThumbnailUrl () ) );
+                out.writeUTF ( nullToEmpty ( article.getSectionId () ) );
+            }
+        } catch (IOException e) {
+            closeQuietly ( out );
+            temp.delete ();
+            throw e;
+        }
+        out.close ();
+        if (!temp.renameTo ( mFile )) {
+            temp.delete ();
+            throw new IOException ( "Could not replace " + mFile );
+        }
+    }
+
+    /**
+     * The fields an article may not have are written as empty strings.
+     */
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty () ? null : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close ();
+            } catch (IOException ignored) {
+                // Nothing left to do with it
+            }
+        }
+    }
+}
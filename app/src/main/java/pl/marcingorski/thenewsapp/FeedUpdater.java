@@ -0,0 +1,140 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings the stored feed up to date, for the loader and the background sync.
+ * <p>
+ * If the feed has been stored before, only the articles newer than its high-water marks
+ * are requested, see {@link FeedFetcher#refresh}, and merged into the {@link ArticleStore};
+ * a full refresh replaces the stored feed. The marks are saved once the articles are stored,
+ * and the first page is written to the {@link FeedSnapshot} for the next start of the app.
+ * <p>
+ * A refresh that got the last good response of a query instead of a fresh one is stale: the
+ * stored feed, its marks and the time of the last refresh are left as they are, unless
+ * nothing is stored yet.
+ */
+final class FeedUpdater {
+
+    private static final String LOG_TAG = FeedUpdater.class.getSimpleName ();
+
+    /**
+     * The outcome of {@link #update}.
+     */
+    static final class Result {
+
+        /**
+         * The first page of the stored articles after the update.
+         */
+        final List <Article> articles;
+
+        /**
+         * Whether the network gave no fresh response for some query, so the feed was not
+         * brought up to date.
+         */
+        final boolean stale;
+
+        Result(List <Article> articles, boolean stale) {
+            this.articles = articles;
+            this.stale = stale;
+        }
+    }
+
+    private FeedUpdater() {
+    }
+
+    /**
+     * Updates the stored feed. Returns the first page of the stored articles afterwards and
+     * whether the refresh was stale, or null if the request failed. Must be called on a background thread.
+     *
+     * @param listener told about every section of a full refresh as it arrives, may be null
+     */
+    static Result update(Context context, FeedFetcher feedFetcher, SectionFanOut.ProgressListener listener) {
+        ArticleStore store = ArticleStore.getInstance ( context );
+        String feed = feedFetcher.getFeedKey ();
+
+        // Without stored articles the marks are of no use, e.g. after the store was cleared
+        FeedFetcher.HighWaterMarks marks = FeedSettings.getHighWaterMarks ( context, feed );
+        boolean stored = store.getLastFetchedAt ( feed ) > 0;
+        FeedFetcher.Refresh refresh = feedFetcher.refresh ( stored ? marks : null, listener );
+        if (refresh.articles == null) {
+            return null;
+        }
+        Log.d ( LOG_TAG, (refresh.stale ? "Stale " : "") + (refresh.delta ? "delta" : "full") + " refresh: "
+                + refresh.articles.size () + " new articles of " + feed );
+
+        if (refresh.stale) {
+            // May be older than what is stored, only better than nothing
+            if (!stored) {
+                store.replaceArticles ( feed, refresh.articles );
+            }
+        } else {
+            if (!refresh.delta) {
+                // The stored articles may be older than the end of the first page
+                store.replaceArticles ( feed, refresh.articles );
+            } else if (!refresh.articles.isEmpty ()) {
+                store.upsertArticles ( feed, refresh.articles );
+            }
+            marks.putAll ( refresh.highWaterMarks );
+            FeedSettings.setLastRefreshed ( context, feed, System.currentTimeMillis () );
+        }
+
+        List <Article> articles = store.loadArticles ( feed, feedFetcher.getRowsPerPage () );
+        writeSnapshot ( context, feed, articles, feedFetcher.getPageSize () );
+        return new Result ( articles, refresh.stale );
+    }
+
+    /**
+     * Turns the articles of the previous feed into the feed of the fetcher, after sections
+     * were changed in the settings: only the added sections are requested, and merged with the
+     * articles kept from the previous feed. The result is stored as the new feed, which is as
+     * fresh as the previous one. Returns the first page of the merged articles, or null if the
+     * request failed. Must be called on a background thread.
+     *
+     * @param previousFeed key of the feed the kept articles come from
+     * @param feedFetcher  fetcher of the new feed
+     * @param addedFetcher fetcher of just the added sections, null if sections were only dropped
+     * @param kept         articles of the sections chosen before and after, newest first
+     */
+    static List <Article> addSections(Context context, String previousFeed, FeedFetcher feedFetcher,
+                                      FeedFetcher addedFetcher, List <Article> kept) {
+        List <Article> articles = kept;
+        if (addedFetcher != null) {
+            FeedFetcher.Refresh refresh = addedFetcher.refresh ( null, null );
+            if (refresh.articles == null) {
+                return null;
+            }
+            articles = SectionFanOut.merge ( Arrays.asList ( kept, refresh.articles ) );
+            Log.d ( LOG_TAG, "Added " + refresh.articles.size () + " articles to " + kept.size ()
+                    + " kept ones" );
+        }
+
+        // The kept articles may not start at the first page, so the next refresh of the new
+        // feed is a full one
+        String feed = feedFetcher.getFeedKey ();
+        ArticleStore.getInstance ( context ).replaceArticles ( feed, articles );
+        FeedSettings.clearHighWaterMarks ( context, feed );
+        FeedSettings.setLastRefreshed ( context, feed,
+                FeedSettings.getLastRefreshed ( context, previousFeed ) );
+        List <Article> firstPage = feedFetcher.firstPage ( articles );
+        writeSnapshot ( context, feed, firstPage, feedFetcher.getPageSize () );
+        return firstPage;
+    }
+
+    private static void writeSnapshot(Context context, String feed, List <Article> articles, int pageSize) {
+        if (articles.isEmpty ()) {
+            return;
+        }
+        try {
+            int end = Math.min ( articles.size (), pageSize );
+            FeedSettings.getSnapshot ( context ).write ( feed, articles.subList ( 0, end ) );
+        } catch (IOException e) {
+            Log.w ( LOG_TAG, "Could not write the feed snapshot", e );
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the feed and page loads in the background.
+ * <p>
+ * At most {@code concurrency} loads run at the same time and at most {@code queueCapacity}
+ * wait for a thread; anything beyond that is rejected instead of piling up. Every submitted
+ * load returns a {@link Future}, and cancelling it interrupts the thread running it. Idle
+ * threads stop after a while, so the engine costs nothing when the app is not loading.
+ */
+final class FetchEngine implements Executor {
+
+    /**
+     * Loads running at the same time in the app wide engine: the feed and one page.
+     */
+    static final int DEFAULT_CONCURRENCY = 2;
+    static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Work of the app wide background engine, like the periodic sync: one at a time, and a
+     * few may wait
+     */
+    private static final int BACKGROUND_CONCURRENCY = 1;
+    private static final int BACKGROUND_QUEUE_CAPACITY = 4;
+
+    private static FetchEngine sDefault;
+    private static FetchEngine sBackground;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param name          prefix of the thread names
+     * @param concurrency   how many loads run at the same time
+     * @param queueCapacity how many loads may wait for a thread
+     */
+    FetchEngine(String name, int concurrency, int queueCapacity) {
+        mExecutor = newPool ( name, concurrency, queueCapacity );
+    }
+
+    /**
+     * Returns the app wide engine, creating it on first use.
+     */
+    static synchronized FetchEngine getDefault() {
+        if (sDefault == null) {
+            sDefault = new FetchEngine ( "fetch", DEFAULT_CONCURRENCY, DEFAULT_QUEUE_CAPACITY );
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the app wide engine for work nobody is waiting for, creating it on first use,
+     * so it never takes a thread or a queue slot of the loads of {@link #getDefault()}.
+     */
+    static synchronized FetchEngine getBackground() {
+        if (sBackground == null) {
+            sBackground = new FetchEngine ( "background", BACKGROUND_CONCURRENCY, BACKGROUND_QUEUE_CAPACITY );
+        }
+        return sBackground;
+    }
+
+    /**
+     * Creates a pool of at most {@code concurrency} named threads with a bounded queue,
+     * whose threads stop when they have been idle for a while.
+     */
+    static ThreadPoolExecutor newPool(final String name, int concurrency, int queueCapacity) {
+        if (concurrency < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException ( "concurrency=" + concurrency + " queueCapacity=" + queueCapacity );
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor ( concurrency, concurrency,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue <Runnable> ( queueCapacity ),
+                new ThreadFactory () {
+                    private final AtomicInteger mCount = new AtomicInteger ();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread ( runnable, name + "-" + mCount.incrementAndGet () );
+                        // Below the main thread, so loads do not compete with drawing
+                        thread.setPriority ( Thread.NORM_PRIORITY - 1 );
+                        return thread;
+                    }
+                } );
+        executor.allowCoreThreadTimeOut ( true );
+        return executor;
+    }
+
+    /**
+     * Runs the load in the background.
+     *
+     * @throws RejectedExecutionException if the queue is full or the engine was shut down
+     */
+    Future <?> submit(Runnable load) {
+        return mExecutor.submit ( load );
+    }
+
+    /**
+     * Runs the load in the background.
+     *
+     * @throws RejectedExecutionException if the queue is full or the engine was shut down
+     */
+    <T> Future <T> submit(Callable <T> load) {
+        return mExecutor.submit ( load );
+    }
+
+    @Override
+    public void execute(Runnable load) {
+        mExecutor.execute ( load );
+    }
+
+    /**
+     * Number of loads that are running right now.
+     */
+    int getActiveCount() {
+        return mExecutor.getActiveCount ();
+    }
+
+    /**
+     * Number of loads waiting for a thread.
+     */
+    int getQueuedCount() {
+        return mExecutor.getQueue ().size ();
+    }
+
+    /**
+     * Removes cancelled loads from the queue, which otherwise keep their place in it until
+     * a thread gets to them.
+     */
+    void purge() {
+        mExecutor.purge ();
+    }
+
+    /**
+     * Interrupts the running loads and drops the waiting ones.
+     */
+    void shutdownNow() {
+        mExecutor.shutdownNow ();
+    }
+}
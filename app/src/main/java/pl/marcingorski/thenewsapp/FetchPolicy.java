@@ -0,0 +1,339 @@
+package pl.marcingorski.thenewsapp;
+
+import android.util.Log;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link SectionFanOut.Fetcher} that keeps the time to a result short when the network
+ * is slow or fails now and then.
+ * <p>
+ * Every request has a deadline. When an attempt takes longer than 95% of the attempts
+ * before it, a second, hedged attempt for the same URL is sent and whichever answers first
+ * is used, unless requests are waiting for a permit of the {@link RequestScheduler}, which the
+ * hedge would only wait behind. An attempt is timed from when it got its permit. A failed
+ * attempt is retried after a jittered backoff as long as the deadline allows, if the network
+ * says it may succeed when sent again. When the deadline passes or the attempts failed, the
+ * last good response of the URL is served instead, if there is one, so a result is never
+ * held up by the worst case of the network. It can be told apart from a fresh one with
+ * {@link #isStale}. Only requests in the
+ * {@link RequestScheduler.Lane#INTERACTIVE interactive} lane are hedged; nobody waits for
+ * the others, so they do not spend the quota twice.
+ * <p>
+ * The attempts run on the given executor; the calling thread waits for them. The time to a
+ * result, the attempts, hedges, retries, missed deadlines and stale results are recorded in
+ * {@link PipelineMetrics}.
+ */
+final class FetchPolicy implements SectionFanOut.Fetcher {
+
+    /**
+     * Returns the last good response of a URL, or null if there is none.
+     */
+    interface StaleSource {
+        List <Article> stale(String url);
+    }
+
+    /**
+     * What the network code tells about the attempts sent on the calling thread.
+     */
+    interface Network {
+        /**
+         * Returns whether the last attempt that failed may succeed when sent again, e.g. after
+         * an I/O error or a 503 but not after a 404.
+         */
+        boolean isRetryable();
+
+        /**
+         * Returns the {@link System#nanoTime()} at which the last attempt was sent, after the
+         * wait for its permit, or 0 if it was never sent.
+         */
+        long getSentAtNanos();
+
+        /**
+         * Returns whether requests of the lane of the calling thread wait for a permit.
+         */
+        boolean isQueued();
+    }
+
+    /**
+     * The last good response of a URL, served in place of a fresh one.
+     */
+    private static final class StaleArticles extends AbstractList <Article> {
+        private final List <Article> mArticles;
+
+        StaleArticles(List <Article> articles) {
+            mArticles = articles;
+        }
+
+        @Override
+        public Article get(int index) {
+            return mArticles.get ( index );
+        }
+
+        @Override
+        public int size() {
+            return mArticles.size ();
+        }
+    }
+
+    /**
+     * Metric names: histograms of the time to a result and of the successful attempts,
+     * and counters of the hedged attempts, the hedges that answered first, the retries,
+     * the missed deadlines and the stale results served.
+     */
+    static final String FETCH_TIME = "policy_fetch";
+    static final String ATTEMPT_TIME = "policy_attempt";
+    static final String HEDGES = "policy_hedges";
+    static final String HEDGE_WINS = "policy_hedge_wins";
+    static final String RETRIES = "policy_retries";
+    static final String DEADLINES = "policy_deadlines";
+    static final String STALE = "policy_stale";
+
+    /**
+     * The attempts needed before their 95th percentile is trusted as the hedging delay
+     */
+    private static final int MIN_SAMPLES = 20;
+    private static final double HEDGE_QUANTILE = 0.95;
+
+    private static final String LOG_TAG = FetchPolicy.class.getSimpleName ();
+
+    private final SectionFanOut.Fetcher mFetcher;
+    private final Network mNetwork;
+    private final StaleSource mStaleSource;
+    private final ExecutorService mExecutor;
+    private final long mDeadlineNanos;
+    private final long mMinHedgeNanos;
+    private final long mDefaultHedgeNanos;
+    private final SyncBackoff mBackoff;
+
+    private final PipelineMetrics.Histogram mFetchTime;
+    private final PipelineMetrics.Histogram mAttemptTime;
+    private final PipelineMetrics.Counter mHedges;
+    private final PipelineMetrics.Counter mHedgeWins;
+    private final PipelineMetrics.Counter mRetries;
+    private final PipelineMetrics.Counter mDeadlines;
+    private final PipelineMetrics.Counter mStale;
+
+    /**
+     * @param fetcher            sends one attempt, returns null if it failed
+     * @param network            tells about the attempts of the fetcher, null to retry every
+     *                           failure, time attempts from their start and always hedge
+     * @param staleSource        the last good responses, may be null
+     * @param executor           runs the attempts
+     * @param deadlineMillis     how long a request may take with all its attempts and retries
+     * @param minHedgeMillis     an attempt is never hedged sooner than this
+     * @param defaultHedgeMillis when an attempt is hedged until enough attempts were timed
+     * @param backoff            delays between the retries
+     * @param metrics            where the timings and counts are recorded
+     */
+    FetchPolicy(SectionFanOut.Fetcher fetcher, Network network, StaleSource staleSource, ExecutorService executor,
+                long deadlineMillis, long minHedgeMillis, long defaultHedgeMillis, SyncBackoff backoff,
+                PipelineMetrics metrics) {
+        if (deadlineMillis <= 0 || minHedgeMillis < 0 || defaultHedgeMillis < minHedgeMillis) {
+            throw new IllegalArgumentException ( "deadlineMillis=" + deadlineMillis + " minHedgeMillis="
+                    + minHedgeMillis + " defaultHedgeMillis=" + defaultHedgeMillis );
+        }
+        mFetcher = fetcher;
+        mNetwork = network;
+        mStaleSource = staleSource;
+        mExecutor = executor;
+        mDeadlineNanos = TimeUnit.MILLISECONDS.toNanos ( deadlineMillis );
+        mMinHedgeNanos = TimeUnit.MILLISECONDS.toNanos ( minHedgeMillis );
+        mDefaultHedgeNanos = TimeUnit.MILLISECONDS.toNanos ( defaultHedgeMillis );
+        mBackoff = backoff;
+        mFetchTime = metrics.histogram ( FETCH_TIME );
+        mAttemptTime = metrics.histogram ( ATTEMPT_TIME );
+        mHedges = metrics.counter ( HEDGES );
+        mHedgeWins = metrics.counter ( HEDGE_WINS );
+        mRetries = metrics.counter ( RETRIES );
+        mDeadlines = metrics.counter ( DEADLINES );
+        mStale = metrics.counter ( STALE );
+    }
+
+    /**
+     * Returns whether the articles are a last good response served by a policy, rather than
+     * a response of the network.
+     */
+    static boolean isStale(List <Article> articles) {
+        return articles instanceof StaleArticles;
+    }
+
+    /**
+     * Returns the articles of the URL from the network, or the last good response if the
+     * network gave none before the deadline, see {@link #isStale}. Returns null if there is
+     * neither, or the calling thread was interrupted.
+     */
+    @Override
+    public List <Article> fetch(String url) {
+        long start = System.nanoTime ();
+        long deadline = start + mDeadlineNanos;
+        try {
+            int failures = 0;
+            AtomicBoolean hopeless = new AtomicBoolean ();
+            while (true) {
+                List <Article> articles = attempt ( url, deadline, hopeless );
+                if (articles != null) {
+                    return articles;
+                }
+                if (hopeless.get ()) {
+                    // Sending it again gives the same answer
+                    break;
+                }
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos ( mBackoff.delayMillis ( ++failures ) );
+                if (System.nanoTime () + delayNanos - deadline >= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.sleep ( delayNanos );
+                mRetries.increment ();
+            }
+        } catch (InterruptedException e) {
+            // The load was cancelled, nobody waits for the result
+            Thread.currentThread ().interrupt ();
+            return null;
+        } finally {
+            mFetchTime.recordSince ( start );
+        }
+
+        List <Article> stale = mStaleSource == null ? null : mStaleSource.stale ( url );
+        if (stale == null) {
+            return null;
+        }
+        mStale.increment ();
+        return new StaleArticles ( stale );
+    }
+
+    /**
+     * Returns how long an attempt may run before it is hedged: the 95th percentile of the
+     * attempts so far, but no less than the minimum.
+     */
+    long getHedgeDelayMillis() {
+        if (mAttemptTime.getCount () < MIN_SAMPLES) {
+            return TimeUnit.NANOSECONDS.toMillis ( mDefaultHedgeNanos );
+        }
+        long quantileNanos = TimeUnit.MICROSECONDS.toNanos ( mAttemptTime.getQuantileMicros ( HEDGE_QUANTILE ) );
+        return TimeUnit.NANOSECONDS.toMillis ( Math.max ( mMinHedgeNanos, quantileNanos ) );
+    }
+
+    /**
+     * Sends an attempt, and a hedged one if it is slow. Returns the first result of either,
+     * or null if both failed or the deadline passed first.
+     *
+     * @param hopeless set when an attempt failed in a way that is not worth retrying
+     */
+    private List <Article> attempt(String url, long deadline, AtomicBoolean hopeless) throws InterruptedException {
+        CompletionService <List <Article>> completion = new ExecutorCompletionService <> ( mExecutor );
+        List <Future <List <Article>>> running = new ArrayList <> ( 2 );
+        Future <List <Article>> first;
+        try {
+            first = completion.submit ( timed ( url, hopeless ) );
+        } catch (RejectedExecutionException e) {
+            // Every thread is busy, attempt on this one without a hedge
+            return fetchTimed ( url, hopeless );
+        }
+        running.add ( first );
+
+        boolean hedge = RequestScheduler.currentLane () == RequestScheduler.Lane.INTERACTIVE;
+        long hedgeAt = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos ( getHedgeDelayMillis () );
+        try {
+            while (!running.isEmpty ()) {
+                long until = hedge && hedgeAt - deadline < 0 ? hedgeAt : deadline;
+                Future <List <Article>> next = completion.poll ( until - System.nanoTime (), TimeUnit.NANOSECONDS );
+                if (next == null) {
+                    if (until == deadline) {
+                        mDeadlines.increment ();
+                        return null;
+                    }
+                    if (mNetwork != null && mNetwork.isQueued ()) {
+                        // The hedge would wait for a permit behind the others, look again later
+                        hedgeAt = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos ( getHedgeDelayMillis () );
+                        continue;
+                    }
+                    hedge = false;
+                    try {
+                        running.add ( completion.submit ( timed ( url, hopeless ) ) );
+                        mHedges.increment ();
+                    } catch (RejectedExecutionException e) {
+                        // No thread for the hedge, keep waiting for the first attempt
+                    }
+                    continue;
+                }
+                running.remove ( next );
+                List <Article> articles = result ( next, url, hopeless );
+                if (articles != null) {
+                    if (next != first) {
+                        mHedgeWins.increment ();
+                    }
+                    return articles;
+                }
+                // Failed, the other attempt may still answer
+            }
+            return null;
+        } finally {
+            for (Future <List <Article>> future : running) {
+                future.cancel ( true );
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a finished attempt. An attempt that threw counts as failed for
+     * good, fetchers report failures with null, so it is a bug in the fetcher.
+     */
+    private static List <Article> result(Future <List <Article>> attempt, String url, AtomicBoolean hopeless)
+            throws InterruptedException {
+        try {
+            return attempt.get ();
+        } catch (ExecutionException e) {
+            Log.e ( LOG_TAG, "Attempt for " + url + " failed", e.getCause () );
+            hopeless.set ( true );
+            return null;
+        }
+    }
+
+    /**
+     * Returns an attempt sent in the lane of the calling thread.
+     */
+    private Callable <List <Article>> timed(final String url, final AtomicBoolean hopeless) {
+        final RequestScheduler.Lane lane = RequestScheduler.currentLane ();
+        return new Callable <List <Article>> () {
+            @Override
+            public List <Article> call() {
+                RequestScheduler.Lane previous = RequestScheduler.enterLane ( lane );
+                try {
+                    return fetchTimed ( url, hopeless );
+                } finally {
+                    RequestScheduler.enterLane ( previous );
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends an attempt and records its time from when it was sent if it succeeds, or tells
+     * if it failed in a way that is not worth retrying.
+     */
+    private List <Article> fetchTimed(String url, AtomicBoolean hopeless) {
+        long start = System.nanoTime ();
+        List <Article> articles = mFetcher.fetch ( url );
+        if (articles == null) {
+            if (mNetwork != null && !mNetwork.isRetryable ()) {
+                hopeless.set ( true );
+            }
+        } else {
+            long sentAt = mNetwork == null ? 0 : mNetwork.getSentAtNanos ();
+            mAttemptTime.recordSince ( sentAt - start > 0 ? sentAt : start );
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,101 @@
+package pl.marcingorski.thenewsapp;
+
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Guardian content API.
+ */
+final class GuardianProvider implements FeedProvider {
+
+    /**
+     * URL for news data from Guardian API
+     */
+    private static final String GUARDIAN_REQUEST_URL =
+            "https://content.guardianapis.com/search?";
+
+    private static final String GUARDIAN_HOST_URL = "https://content.guardianapis.com/";
+
+    /**
+     * Longer than a response normally takes over a slow mobile connection
+     */
+    private static final long TIMEOUT_MILLIS = 10 * 1000;
+
+    private static GuardianProvider sDefault;
+
+    static synchronized GuardianProvider getDefault() {
+        if (sDefault == null) {
+            sDefault = new GuardianProvider ();
+        }
+        return sDefault;
+    }
+
+    @Override
+    public String getName() {
+        return "guardian";
+    }
+
+    @Override
+    public boolean handles(String url) {
+        return url.startsWith ( GUARDIAN_HOST_URL );
+    }
+
+    @Override
+    public List <String> queryUrls(SectionSelection sections, boolean perSection) {
+        if (!perSection || sections.getSections ().size () < 2) {
+            return Collections.singletonList ( buildQueryUrl ( sections.toQueryParameter () ) );
+        }
+        List <String> queryUrls = new ArrayList <> ();
+        for (String section : sections.getSections ()) {
+            queryUrls.add ( buildQueryUrl ( section ) );
+        }
+        return queryUrls;
+    }
+
+    @Override
+    public String pageUrl(String queryUrl, int page, int pageSize) {
+        String separator = queryUrl.indexOf ( '?' ) == -1 ? "?"
+                : (queryUrl.endsWith ( "?" ) || queryUrl.endsWith ( "&" ) ? "" : "&");
+        return queryUrl + separator + "page=" + page + "&page-size=" + pageSize;
+    }
+
+    /**
+     * Adds the "from-date" parameter, which includes the given second itself.
+     */
+    @Override
+    public String sinceUrl(String pageUrl, long sinceMillis) {
+        return pageUrl + "&from-date=" + PublicationDates.toIso ( sinceMillis );
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return TIMEOUT_MILLIS;
+    }
+
+    @Override
+    public List <Article> decode(InputStream in) throws IOException {
+        return ArticleJsonDecoder.decode ( in );
+    }
+
+    /**
+     * Builds the query URL for the given sections, without paging parameters.
+     */
+    private static String buildQueryUrl(String sections) {
+        Uri.Builder uriBuilder = Uri.parse ( GUARDIAN_REQUEST_URL ).buildUpon ();
+
+        if (!sections.isEmpty ()) {
+            uriBuilder.appendQueryParameter ( "section", sections );
+        }
+        // Newest first, so results of separate section requests can be merged by date
+        uriBuilder.appendQueryParameter ( "order-by", "newest" );
+        uriBuilder.appendQueryParameter ( "show-tags", "contributor" );
+        uriBuilder.appendQueryParameter ( "show-fields", "thumbnail" );
+        uriBuilder.appendQueryParameter ( "api-key", "test" );
+        return uriBuilder.toString ();
+    }
+}
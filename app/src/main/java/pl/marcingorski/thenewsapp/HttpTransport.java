@@ -0,0 +1,305 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Performs the HTTP GET requests for the app.
+ * <p>
+ * Every request asks the server for a gzip encoded body. The body is handed to the caller
+ * as a stream that decompresses on the fly and reads through buffers borrowed from a
+ * {@link ByteBufferPool}, so the payload is never copied into an intermediate String.
+ * Both the bytes received on the wire and the bytes after decoding are counted. A body that
+ * ends before its Content-Length, because the connection was dropped, fails with an
+ * {@link EOFException} instead of looking complete.
+ * <p>
+ * Connections are kept alive: a closed response reads what is left of its body and hands
+ * the socket back to the platform's connection pool instead of disconnecting, so the next
+ * request to the same host skips the TCP and TLS handshakes. The time spent setting up every
+ * connection is measured, which shows how much is saved on repeated loads.
+ */
+final class HttpTransport {
+
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Up to this many bytes left in a body are read on close to keep the connection.
+     * Anything longer is cheaper to drop along with the connection.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final ByteBufferPool bufferPool;
+
+    /**
+     * Totals over every request made through this transport.
+     */
+    private final AtomicLong totalWireBytes = new AtomicLong ();
+    private final AtomicLong totalDecodedBytes = new AtomicLong ();
+    private final AtomicLong requestCount = new AtomicLong ();
+    private final AtomicLong totalConnectNanos = new AtomicLong ();
+
+    HttpTransport(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sets how many idle connections the platform keeps alive for reuse. Must be called
+     * before the first request, the pool reads the setting when it is created.
+     */
+    static void configureConnectionPool(int maxIdleConnections) {
+        System.setProperty ( "http.keepAlive", "true" );
+        System.setProperty ( "http.maxConnections", String.valueOf ( maxIdleConnections ) );
+    }
+
+    /**
+     * Opens a GET request to the given URL. The returned {@link Response} must be closed.
+     */
+    Response get(URL url) throws IOException {
+        return get ( url, null );
+    }
+
+    /**
+     * Opens a GET request with additional request headers, e.g. cache validators.
+     * The returned {@link Response} must be closed.
+     */
+    Response get(URL url, Map <String, String> headers) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection ();
+        try {
+            urlConnection.setReadTimeout ( READ_TIMEOUT_MILLIS );
+            urlConnection.setConnectTimeout ( CONNECT_TIMEOUT_MILLIS );
+            urlConnection.setRequestMethod ( "GET" );
+            // Setting the header ourselves turns off transparent decompression,
+            // which is what lets us count the compressed bytes.
+            urlConnection.setRequestProperty ( "Accept-Encoding", "gzip" );
+            if (headers != null) {
+                for (Map.Entry <String, String> header : headers.entrySet ()) {
+                    urlConnection.setRequestProperty ( header.getKey (), header.getValue () );
+                }
+            }
+            long start = System.nanoTime ();
+            urlConnection.connect ();
+            long connectNanos = System.nanoTime () - start;
+            requestCount.incrementAndGet ();
+            totalConnectNanos.addAndGet ( connectNanos );
+            return new Response ( urlConnection, connectNanos );
+        } catch (IOException e) {
+            urlConnection.disconnect ();
+            throw e;
+        }
+    }
+
+    long getTotalWireBytes() {
+        return totalWireBytes.get ();
+    }
+
+    long getTotalDecodedBytes() {
+        return totalDecodedBytes.get ();
+    }
+
+    long getRequestCount() {
+        return requestCount.get ();
+    }
+
+    /**
+     * Time spent in connection setup over every request, which is close to zero
+     * for requests on a reused connection.
+     */
+    long getTotalConnectNanos() {
+        return totalConnectNanos.get ();
+    }
+
+    /**
+     * A response to a single request. Closing it returns the buffers to the pool,
+     * releases the connection for reuse and adds the byte counts to the transport totals.
+     */
+    final class Response implements Closeable {
+
+        private final HttpURLConnection connection;
+        private final int responseCode;
+        private final long connectNanos;
+        private final long firstByteNanos;
+        private CountingInputStream wireStream;
+        private CountingInputStream decodedStream;
+        private InputStream body;
+        private boolean closed;
+
+        private Response(HttpURLConnection connection, long connectNanos) throws IOException {
+            this.connection = connection;
+            this.connectNanos = connectNanos;
+            long start = System.nanoTime ();
+            this.responseCode = connection.getResponseCode ();
+            this.firstByteNanos = System.nanoTime () - start;
+        }
+
+        int getResponseCode() {
+            return responseCode;
+        }
+
+        /**
+         * Time spent setting up the connection for this request.
+         */
+        long getConnectNanos() {
+            return connectNanos;
+        }
+
+        /**
+         * Time from the connection being set up until the status line and headers arrived.
+         */
+        long getFirstByteNanos() {
+            return firstByteNanos;
+        }
+
+        String getHeader(String name) {
+            return connection.getHeaderField ( name );
+        }
+
+        /**
+         * Returns the decoded response body. Repeated calls return the same stream.
+         */
+        InputStream body() throws IOException {
+            if (body == null) {
+                wireStream = new CountingInputStream ( connection.getInputStream () );
+                InputStream decoded = wireStream;
+                long contentLength = getContentLength ();
+                if (contentLength >= 0) {
+                    decoded = new CompleteBodyInputStream ( wireStream, contentLength );
+                }
+                if ("gzip".equalsIgnoreCase ( connection.getContentEncoding () )) {
+                    decoded = new GZIPInputStream ( decoded, bufferPool.getBufferSize () );
+                }
+                decodedStream = new CountingInputStream ( new PooledBufferedInputStream ( decoded, bufferPool ) );
+                body = decodedStream;
+            }
+            return body;
+        }
+
+        /**
+         * Returns the Content-Length of the response, or -1 if it has none.
+         */
+        private long getContentLength() {
+            String contentLength = connection.getHeaderField ( "Content-Length" );
+            if (contentLength == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong ( contentLength.trim () );
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Bytes of the response body as received from the network, before decompression.
+         */
+        long getWireBytes() {
+            return wireStream == null ? 0 : wireStream.getCount ();
+        }
+
+        /**
+         * Bytes of the response body after decompression.
+         */
+        long getDecodedBytes() {
+            return decodedStream == null ? 0 : decodedStream.getCount ();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean reusable = false;
+            try {
+                reusable = drain ();
+                if (body != null) {
+                    body.close ();
+                } else if (wireStream != null) {
+                    wireStream.close ();
+                }
+            } finally {
+                totalWireBytes.addAndGet ( getWireBytes () );
+                totalDecodedBytes.addAndGet ( getDecodedBytes () );
+                if (!reusable) {
+                    connection.disconnect ();
+                }
+            }
+        }
+
+        /**
+         * Reads the rest of the body off the wire, so the connection can carry the next
+         * request. Returns false if the connection can not be reused.
+         */
+        private boolean drain() throws IOException {
+            if (wireStream == null) {
+                InputStream raw = responseCode >= 400 ? connection.getErrorStream () : connection.getInputStream ();
+                if (raw == null) {
+                    return true;
+                }
+                wireStream = new CountingInputStream ( raw );
+            }
+            byte[] scratch = new byte[1024];
+            long limit = wireStream.getCount () + MAX_DRAIN_BYTES;
+            while (wireStream.getCount () <= limit) {
+                if (wireStream.read ( scratch ) == -1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fails the read that reaches the end of the wire stream before the whole body arrived.
+     * Some platforms report a dropped connection as a normal end of stream.
+     */
+    private static final class CompleteBodyInputStream extends FilterInputStream {
+
+        private final CountingInputStream wire;
+        private final long contentLength;
+
+        CompleteBodyInputStream(CountingInputStream wire, long contentLength) {
+            super ( wire );
+            this.wire = wire;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = in.read ();
+            if (result == -1) {
+                checkComplete ();
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = in.read ( b, off, len );
+            if (result == -1) {
+                checkComplete ();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void checkComplete() throws EOFException {
+            if (wire.getCount () < contentLength) {
+                throw new EOFException ( "Body ended after " + wire.getCount () + " of "
+                        + contentLength + " bytes" );
+            }
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for JSON documents, modelled on {@link android.util.JsonReader}.
+ * <p>
+ * It reads tokens straight from a {@link Reader} through a fixed size char buffer,
+ * so the response never has to be held in memory as one big String. Values that are
+ * not needed can be skipped with {@link #skipValue()} without building any objects.
+ * <p>
+ * It has no Android dependencies, so it can be used from plain JVM unit tests.
+ */
+final class JsonStreamReader implements Closeable {
+
+    /**
+     * Kinds of tokens returned by {@link #peek()}.
+     */
+    enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    /**
+     * Thrown when the input is not valid JSON, as opposed to the input failing to be read.
+     */
+    static final class MalformedJsonException extends IOException {
+        MalformedJsonException(String message) {
+            super ( message );
+        }
+    }
+
+    // Scopes kept on the nesting stack
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+
+    /**
+     * Characters read from the reader but not consumed yet.
+     */
+    private final char[] buffer = new char[1024];
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    /**
+     * The token that was peeked but not consumed, or null.
+     */
+    private Token peeked;
+
+    /**
+     * Reused for every string value so only the resulting String is allocated.
+     */
+    private final StringBuilder scratch = new StringBuilder ();
+
+    JsonStreamReader(Reader in) {
+        if (in == null) {
+            throw new NullPointerException ( "in == null" );
+        }
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        expect ( Token.BEGIN_OBJECT );
+        push ( EMPTY_OBJECT );
+        peeked = null;
+    }
+
+    void endObject() throws IOException {
+        expect ( Token.END_OBJECT );
+        stackSize--;
+        peeked = null;
+    }
+
+    void beginArray() throws IOException {
+        expect ( Token.BEGIN_ARRAY );
+        push ( EMPTY_ARRAY );
+        peeked = null;
+    }
+
+    void endArray() throws IOException {
+        expect ( Token.END_ARRAY );
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek ();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    String nextName() throws IOException {
+        expect ( Token.NAME );
+        peeked = null;
+        return readQuoted ();
+    }
+
+    /**
+     * Returns the string value of the next token. Numbers are returned as their literal text.
+     */
+    String nextString() throws IOException {
+        Token token = peek ();
+        peeked = null;
+        if (token == Token.STRING) {
+            return readQuoted ();
+        }
+        if (token == Token.NUMBER) {
+            return readLiteral ();
+        }
+        throw syntaxError ( "Expected a string but was " + token );
+    }
+
+    /**
+     * Like {@link #nextString()} for a string value, but returns the characters without
+     * allocating a String. The result is only valid until the next call on this reader.
+     */
+    CharSequence nextCharSequence() throws IOException {
+        expect ( Token.STRING );
+        peeked = null;
+        readQuotedToScratch ();
+        return scratch;
+    }
+
+    boolean nextBoolean() throws IOException {
+        expect ( Token.BOOLEAN );
+        peeked = null;
+        return "true".equals ( readLiteral () );
+    }
+
+    void nextNull() throws IOException {
+        expect ( Token.NULL );
+        peeked = null;
+        readLiteral ();
+    }
+
+    /**
+     * Skips the next value, including any nested arrays or objects, without allocating.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek ();
+            peeked = null;
+            switch (token) {
+                case BEGIN_ARRAY:
+                    push ( EMPTY_ARRAY );
+                    depth++;
+                    break;
+                case BEGIN_OBJECT:
+                    push ( EMPTY_OBJECT );
+                    depth++;
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    if (depth == 0) {
+                        throw syntaxError ( "Expected a value but was " + token );
+                    }
+                    stackSize--;
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    skipQuoted ();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    skipLiteral ();
+                    break;
+                default:
+                    throw syntaxError ( "Unexpected " + token );
+            }
+        } while (depth != 0);
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace ( true );
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError ( "Unterminated array" );
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                if (scope == NONEMPTY_OBJECT) {
+                    c = nextNonWhitespace ( true );
+                    if (c == '}') {
+                        return peeked = Token.END_OBJECT;
+                    }
+                    if (c != ',') {
+                        throw syntaxError ( "Unterminated object" );
+                    }
+                }
+                c = nextNonWhitespace ( true );
+                if (c == '"') {
+                    return peeked = Token.NAME;
+                }
+                if (c == '}' && scope == EMPTY_OBJECT) {
+                    return peeked = Token.END_OBJECT;
+                }
+                throw syntaxError ( "Expected name" );
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace ( true ) != ':') {
+                    throw syntaxError ( "Expected ':'" );
+                }
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                if (nextNonWhitespace ( false ) == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError ( "Expected end of document" );
+        }
+
+        c = nextNonWhitespace ( true );
+        switch (c) {
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return peeked = Token.END_ARRAY;
+                }
+                throw syntaxError ( "Unexpected value" );
+            case '"':
+                return peeked = Token.STRING;
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case 't':
+            case 'f':
+                pos--;
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError ( "Unexpected character '" + (char) c + "'" );
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stackSize = 0;
+        in.close ();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek ();
+        if (token != expected) {
+            throw syntaxError ( "Expected " + expected + " but was " + token );
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy ( stack, 0, newStack, 0, stackSize );
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private boolean fill() throws IOException {
+        pos = 0;
+        limit = in.read ( buffer, 0, buffer.length );
+        if (limit == -1) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+        while (pos < limit || fill ()) {
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        if (throwOnEof) {
+            throw syntaxError ( "End of input" );
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a string whose opening quote has already been consumed.
+     */
+    private String readQuoted() throws IOException {
+        readQuotedToScratch ();
+        return scratch.toString ();
+    }
+
+    private void readQuotedToScratch() throws IOException {
+        scratch.setLength ( 0 );
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    scratch.append ( buffer, start, pos - start - 1 );
+                    return;
+                }
+                if (c == '\\') {
+                    scratch.append ( buffer, start, pos - start - 1 );
+                    scratch.append ( readEscape () );
+                    start = pos;
+                }
+            }
+            scratch.append ( buffer, start, pos - start );
+            if (!fill ()) {
+                throw syntaxError ( "Unterminated string" );
+            }
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (pos < limit || fill ()) {
+            char c = buffer[pos++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readEscape ();
+            }
+        }
+        throw syntaxError ( "Unterminated string" );
+    }
+
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill ()) {
+            throw syntaxError ( "Unterminated escape sequence" );
+        }
+        char escaped = buffer[pos++];
+        switch (escaped) {
+            case 'u':
+                int result = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (pos == limit && !fill ()) {
+                        throw syntaxError ( "Unterminated escape sequence" );
+                    }
+                    char c = buffer[pos++];
+                    result <<= 4;
+                    if (c >= '0' && c <= '9') {
+                        result += c - '0';
+                    } else if (c >= 'a' && c <= 'f') {
+                        result += c - 'a' + 10;
+                    } else if (c >= 'A' && c <= 'F') {
+                        result += c - 'A' + 10;
+                    } else {
+                        throw syntaxError ( "Malformed \\u escape" );
+                    }
+                }
+                return (char) result;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            default:
+                return escaped;
+        }
+    }
+
+    /**
+     * Reads an unquoted number, boolean or null literal.
+     */
+    private String readLiteral() throws IOException {
+        scratch.setLength ( 0 );
+        while (pos < limit || fill ()) {
+            char c = buffer[pos];
+            if (!isLiteral ( c )) {
+                break;
+            }
+            scratch.append ( c );
+            pos++;
+        }
+        return scratch.toString ();
+    }
+
+    private void skipLiteral() throws IOException {
+        while (pos < limit || fill ()) {
+            if (!isLiteral ( buffer[pos] )) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isLiteral(char c) {
+        switch (c) {
+            case ',':
+            case ':':
+            case '}':
+            case ']':
+            case '{':
+            case '[':
+            case '"':
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException ( "Malformed JSON: " + message );
+    }
+}
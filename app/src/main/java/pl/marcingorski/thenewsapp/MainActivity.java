@@ -8,35 +8,58 @@ import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 public class MainActivity extends AppCompatActivity
         implements LoaderCallbacks <List <Article>> {
 
     public static final String LOG_TAG = MainActivity.class.getName ();
 
+    // Constant value for article loader ID.
+
+    private static final int ARTICLE_LOADER_ID = 1;
+
     /**
-     * URL for news data from Guardian API
+     * Paging of the feed: how many rows before the end of the list the next page
+     * is prefetched, and how many pages are kept in memory.
      */
-    private static final String GUARDIAN_REQUEST_URL =
-            "https://content.guardianapis.com/search?";
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int MAX_PAGES_IN_MEMORY = 5;
 
-    // Constant value for article loader ID.
+    /**
+     * Most search results shown, the newest ones
+     */
+    private static final int MAX_SEARCH_RESULTS = 100;
 
-    private static final int ARTICLE_LOADER_ID = 1;
+    /**
+     * Bodies downloaded for the reader after every load or scroll: at most this many,
+     * and no more bytes than this
+     */
+    private static final int PREFETCH_BODIES = 8;
+    private static final long PREFETCH_BODY_BYTES = 512 * 1024;
+
+    private static final PipelineMetrics.Histogram SEARCH_TIME =
+            PipelineMetrics.getDefault ().histogram ( PipelineMetrics.SEARCH );
 
     /**
      * Adapter for the list of articles
@@ -48,110 +71,457 @@ public class MainActivity extends AppCompatActivity
      */
     private TextView mEmptyStateTextView;
 
+    private LinearLayoutManager mLayoutManager;
+
+    /**
+     * Loads the pages after the first one, which comes from the loader
+     */
+    private ArticlePager mPager;
+
+    /**
+     * Runs the feed and page loads
+     */
+    private FetchEngine mFetchEngine;
+
+    /**
+     * Fetches pages of the feed for the sections chosen in the settings
+     */
+    private FeedFetcher mFeedFetcher;
+
+    private FeedSnapshot mSnapshot;
+
+    /**
+     * Finds the articles received so far while typing in the search box
+     */
+    private SearchIndex mSearchIndex;
+
+    /**
+     * The text in the search box, or null while the feed is shown
+     */
+    private String mSearchQuery;
+
+    /**
+     * The articles of the feed, shown again when the search is closed
+     */
+    private List <Article> mFeedArticles = new ArrayList <> ();
+
+    /**
+     * Downloads the bodies of the rows on screen and the newest ones, one run at a time
+     * on its own thread so it never holds up a page load
+     */
+    private BodyPrefetcher mBodyPrefetcher;
+    private final FetchEngine mPrefetchEngine = new FetchEngine ( "prefetch", 1, 1 );
+    private Future <?> mBodyPrefetch;
+
+    /**
+     * The sections of the feed in the list and whether they are requested separately.
+     * Changes in the settings are applied when the activity is back in front, see
+     * {@link #applySections}.
+     */
+    private SectionSelection mSections;
+    private boolean mFanOut;
+    private SharedPreferences.OnSharedPreferenceChangeListener mSectionsRegistration;
+    private SharedPreferences.OnSharedPreferenceChangeListener mFanOutRegistration;
+    private boolean mResumed;
+
+    /**
+     * Schedules the background sync again when its settings change
+     */
+    private SharedPreferences.OnSharedPreferenceChangeListener mSyncRegistration;
+
+    /**
+     * Increased for every change of the sections, so the result of an earlier one is dropped
+     */
+    private int mSectionsGeneration;
+
+    private final Handler mMainHandler = new Handler ( Looper.getMainLooper () );
+
+    /**
+     * Where the first rows shown came from, for {@link StartupTrace}
+     */
+    private String mFirstRowSource = "loader";
+
     @Override
     protected void onCreate(Bundle saveInstanceState) {
+        StartupTrace.onActivityCreated ();
         super.onCreate ( saveInstanceState );
         setContentView ( R.layout.activity_main );
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView articleListView = findViewById ( R.id.list );
+        // Find a reference to the {@link RecyclerView} in the layout
+        final RecyclerView articleListView = findViewById ( R.id.list );
+        mLayoutManager = new LinearLayoutManager ( this );
+        articleListView.setLayoutManager ( mLayoutManager );
+        articleListView.setHasFixedSize ( true );
 
         mEmptyStateTextView = findViewById ( R.id.empty_view );
-        articleListView.setEmptyView ( mEmptyStateTextView );
 
-        // Create a new adapter that takes an empty list of articles as input
-        mAdapter = new ArticleAdapter ( this, new ArrayList <Article> () );
+        // Create a new adapter, which opens the clicked article in the reader
+        mAdapter = new ArticleAdapter ( new ArticleAdapter.OnArticleClickListener () {
+            @Override
+            public void onArticleClick(Article article) {
+                Intent readerIntent = new Intent ( MainActivity.this, ReaderActivity.class );
+                readerIntent.putExtra ( ReaderActivity.EXTRA_URL, article.getmUrl () );
+                readerIntent.putExtra ( ReaderActivity.EXTRA_TITLE, article.getTitleOfArticle () );
+                startActivity ( readerIntent );
+            }
+        }, ThumbnailLoader.getInstance ( this ) );
+
+        // The empty view is shown whenever the adapter has no rows, after each applied diff
+        mAdapter.registerAdapterDataObserver ( new RecyclerView.AdapterDataObserver () {
+            @Override
+            public void onChanged() {
+                updateEmptyView ();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView ();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView ();
+            }
+        } );
 
-        // Set the adapter on the {@link ListView}
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
         articleListView.setAdapter ( mAdapter );
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected article.
-        articleListView.setOnItemClickListener ( new AdapterView.OnItemClickListener () {
+        // Page through the feed while the list is scrolled
+        mFetchEngine = FetchEngine.getDefault ();
+        mSections = FeedSettings.getSections ( this );
+        mFanOut = FeedSettings.isFanOut ( this );
+        mFeedFetcher = FeedSettings.createFeedFetcher ( this, mSections );
+        mPager = createPager ( mFeedFetcher );
+        mSectionsRegistration = FeedSettings.observeSections ( this, new SectionSelection.Listener () {
+            @Override
+            public void onSectionsChanged(SectionSelection previous, SectionSelection current) {
+                // While the settings are in front, the changes add up until the list is shown again
+                if (mResumed) {
+                    applySections ( current );
+                }
+            }
+        } );
+        mFanOutRegistration = FeedSettings.observe ( this, Collections.singleton ( FeedSettings.KEY_FAN_OUT ),
+                new Runnable () {
+                    @Override
+                    public void run() {
+                        if (mResumed) {
+                            applySections ( mSections );
+                        }
+                    }
+                } );
+        mSyncRegistration = FeedSettings.observe ( this, SyncScheduler.KEYS, new Runnable () {
+            @Override
+            public void run() {
+                SyncScheduler.schedule ( MainActivity.this );
+            }
+        } );
+        mSearchIndex = SearchIndex.getDefault ();
+        mBodyPrefetcher = FeedSettings.createBodyPrefetcher ( this );
+        articleListView.addOnScrollListener ( new RecyclerView.OnScrollListener () {
             @Override
-            public void onItemClick(AdapterView <?> adapterView, View view, int position, long l) {
-                Article currentArticle = mAdapter.getItem ( position );
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchBodies ();
+                }
+            }
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri articleUri = Uri.parse ( currentArticle.getmUrl () );
-                // Create a new intent to view the article URI
-                Intent websiteIntent = new Intent ( Intent.ACTION_VIEW, articleUri );
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstVisible = mLayoutManager.findFirstVisibleItemPosition ();
+                int lastVisible = mLayoutManager.findLastVisibleItemPosition ();
+                // Search results are not paged
+                if (firstVisible != RecyclerView.NO_POSITION && mSearchQuery == null) {
+                    mPager.onScroll ( firstVisible, lastVisible - firstVisible + 1, mAdapter.getItemCount () );
+                }
+            }
+        } );
 
-                // Send the intent to launch a new activity
-                startActivity ( websiteIntent );
+        // Record when the first row is about to be drawn
+        articleListView.getViewTreeObserver ().addOnPreDrawListener ( new ViewTreeObserver.OnPreDrawListener () {
+            @Override
+            public boolean onPreDraw() {
+                if (articleListView.getChildCount () > 0) {
+                    StartupTrace.onFirstRow ( mFirstRowSource );
+                    articleListView.getViewTreeObserver ().removeOnPreDrawListener ( this );
+                }
+                return true;
             }
         } );
-        // Get a reference to the ConnectivityManager to check state of network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                getSystemService ( Context.CONNECTIVITY_SERVICE );
 
-        // Get details on the currently active default data network
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo ();
+        // Show the first rows of the last run at once, the loader refreshes them in the background.
+        // The snapshot is a few kilobytes, small enough to read before the first frame.
+        mSnapshot = FeedSettings.getSnapshot ( this );
+        List <Article> snapshot = mSnapshot.read ( mFeedFetcher.getFeedKey () );
+        if (snapshot != null && !snapshot.isEmpty ()) {
+            mFirstRowSource = "snapshot";
+            findViewById ( R.id.loading_indicator ).setVisibility ( View.GONE );
+            mPager.reset ( snapshot );
+        }
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected ()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager ();
+        // Keep the feed current in the background, as chosen in the settings
+        SyncScheduler.schedule ( this );
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader ( ARTICLE_LOADER_ID, null, this );
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById ( R.id.loading_indicator );
-            loadingIndicator.setVisibility ( View.GONE );
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager ();
 
-            // Update empty state with no connection error message
-            mEmptyStateTextView.setText ( R.string.no_internet_connection );
-        }
+        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+        // because this activity implements the LoaderCallbacks interface).
+        // The loader is started even without a connection, so the stored articles are shown.
+        loaderManager.initLoader ( ARTICLE_LOADER_ID, null, this );
     }
 
     @Override
-    public Loader <List <Article>> onCreateLoader(int i, Bundle args) {
-        // Create url builder
+    protected void onResume() {
+        super.onResume ();
+        mResumed = true;
+        applySections ( FeedSettings.getSections ( this ) );
+    }
 
-        String TAG = "URI";
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences ( this );
+    @Override
+    protected void onPause() {
+        super.onPause ();
+        mResumed = false;
+    }
 
-        Boolean business = sharedPreferences.getBoolean ( "business", false );
-        Boolean fashion = sharedPreferences.getBoolean ( "fashion", false );
-        Boolean lifeandstyle = sharedPreferences.getBoolean ( "lifeandstyle", false );
-        Boolean science = sharedPreferences.getBoolean ( "science", false );
-        Boolean technology = sharedPreferences.getBoolean ( "technology", false );
+    @Override
+    protected void onDestroy() {
+        super.onDestroy ();
+        FeedSettings.stopObserving ( this, mSectionsRegistration );
+        FeedSettings.stopObserving ( this, mFanOutRegistration );
+        FeedSettings.stopObserving ( this, mSyncRegistration );
+        mPager.cancel ();
+        if (mBodyPrefetch != null) {
+            mBodyPrefetch.cancel ( true );
+        }
+        mPrefetchEngine.shutdownNow ();
+    }
 
-        Uri baseUri = Uri.parse ( GUARDIAN_REQUEST_URL );
+    /**
+     * Creates the pager for the query. Pages are fetched on {@link #mFetchEngine} and
+     * delivered on the main thread.
+     */
+    private ArticlePager createPager(final FeedFetcher feedFetcher) {
+        return new ArticlePager ( feedFetcher.getPageSize (), PREFETCH_DISTANCE, MAX_PAGES_IN_MEMORY,
+                new ArticlePager.PageFetcher () {
+                    @Override
+                    public List <Article> fetchPage(int page) {
+                        return feedFetcher.fetchPage ( page, null );
+                    }
+                },
+                mFetchEngine,
+                new Executor () {
+                    @Override
+                    public void execute(Runnable command) {
+                        mMainHandler.post ( command );
+                    }
+                },
+                new ArticlePager.Listener () {
+                    @Override
+                    public void onWindowChanged(List <Article> articles) {
+                        showArticles ( articles );
+                    }
+                }, new DuplicateFilter ( feedFetcher.getRowsPerPage () * MAX_PAGES_IN_MEMORY, true ) );
+    }
 
-        Uri.Builder uriBuilder = baseUri.buildUpon ();
+    /**
+     * Switches the list to the given sections without recreating the activity. The articles
+     * of dropped sections are removed at once, and only the added sections are requested and
+     * merged in, see {@link FeedUpdater#addSections}. Going from or to every section, or
+     * switching the fan-out on or off, loads the new feed from scratch.
+     */
+    private void applySections(SectionSelection current) {
+        boolean fanOut = FeedSettings.isFanOut ( this );
+        if (current.equals ( mSections ) && fanOut == mFanOut) {
+            return;
+        }
+        SectionSelection previous = mSections;
+        boolean fanOutChanged = fanOut != mFanOut;
+        mFanOut = fanOut;
+        final String previousFeed = mFeedFetcher.getFeedKey ();
+        final int generation = ++mSectionsGeneration;
+        mSections = current;
+        mFeedFetcher = FeedSettings.createFeedFetcher ( this, current );
+        mPager.cancel ();
+        mPager = createPager ( mFeedFetcher );
+        Log.d ( LOG_TAG, "Sections changed from " + previous + " to " + current + ", fan-out " + fanOut );
+
+        final ArticleLoader loader = (ArticleLoader) getLoaderManager ().<List <Article>>getLoader ( ARTICLE_LOADER_ID );
+        if (fanOutChanged || !current.isIncrementalFrom ( previous ) || loader == null) {
+            reloadFeed ();
+            return;
+        }
 
-        String sections = "";
-        if (business) {
-            sections += "business|";
+        // All kept articles are stored with the new feed, the list starts over on the first page
+        final List <Article> kept = current.filter ( mFeedArticles );
+        List <Article> firstPage = mFeedFetcher.firstPage ( kept );
+        mPager.reset ( firstPage );
+        loader.setFeed ( mFeedFetcher, firstPage );
+
+        Set <String> added = current.added ( previous );
+        final FeedFetcher feedFetcher = mFeedFetcher;
+        final FeedFetcher addedFetcher = added.isEmpty () ? null
+                : FeedSettings.createFeedFetcher ( this, new SectionSelection ( added ) );
+        final Context context = getApplicationContext ();
+        try {
+            mFetchEngine.submit ( new Runnable () {
+                @Override
+                public void run() {
+                    final List <Article> articles = FeedUpdater.addSections ( context, previousFeed,
+                            feedFetcher, addedFetcher, kept );
+                    mMainHandler.post ( new Runnable () {
+                        @Override
+                        public void run() {
+                            // Dropped if the sections changed again in the meantime
+                            if (articles != null && generation == mSectionsGeneration) {
+                                mPager.reset ( articles );
+                                loader.setFeed ( feedFetcher, articles );
+                            }
+                        }
+                    } );
+                }
+            } );
+        } catch (RejectedExecutionException e) {
+            Log.w ( LOG_TAG, "Adding sections rejected, loading the feed instead", e );
+            reloadFeed ();
         }
-        if (fashion) {
-            sections += "fashion|";
+    }
+
+    /**
+     * Loads the feed of {@link #mFeedFetcher} from scratch.
+     */
+    private void reloadFeed() {
+        findViewById ( R.id.loading_indicator ).setVisibility ( View.VISIBLE );
+        getLoaderManager ().restartLoader ( ARTICLE_LOADER_ID, null, this );
+    }
+
+    /**
+     * Replaces the articles in the list. The difference to the current list is computed in
+     * the background and only the rows that changed are rebound. The rows on screen stay in
+     * place because they are matched by URL.
+     * While searching, the feed is only kept for when the search is closed.
+     */
+    private void showArticles(List <Article> articles) {
+        mFeedArticles = articles;
+        if (mSearchQuery == null) {
+            mAdapter.submitList ( articles );
         }
-        if (lifeandstyle) {
-            sections += "lifeandstyle|";
+    }
+
+    /**
+     * Shows the articles matching the search box, or the feed while it is empty.
+     * The index is in memory, so this is fast enough for every key typed.
+     */
+    private void showSearchResults() {
+        if (mSearchQuery == null || mSearchQuery.trim ().isEmpty ()) {
+            mAdapter.submitList ( mFeedArticles );
+            return;
         }
-        if (science) {
-            sections += "science|";
+        long start = System.nanoTime ();
+        List <Article> results = mSearchIndex.search ( mSearchQuery, MAX_SEARCH_RESULTS );
+        SEARCH_TIME.recordSince ( start );
+        mAdapter.submitList ( results );
+    }
+
+    /**
+     * Adds the stored articles of earlier runs to the search index, once per process.
+     */
+    private void indexStoredArticles() {
+        if (mSearchIndex.isSeeded ()) {
+            return;
+        }
+        final ArticleStore store = ArticleStore.getInstance ( this );
+        try {
+            mFetchEngine.submit ( new Runnable () {
+                @Override
+                public void run() {
+                    if (mSearchIndex.isSeeded ()) {
+                        return;
+                    }
+                    mSearchIndex.seed ( store.loadAllArticles () );
+                    mMainHandler.post ( new Runnable () {
+                        @Override
+                        public void run() {
+                            if (mSearchQuery != null) {
+                                showSearchResults ();
+                            }
+                        }
+                    } );
+                }
+            } );
+        } catch (RejectedExecutionException e) {
+            // Busy loading, the next search tries again
+            Log.w ( LOG_TAG, "Indexing of the stored articles rejected", e );
         }
-        if (technology) {
-            sections += "technology|";
+    }
+
+    /**
+     * Downloads the bodies of the rows on screen, then of the newest articles of the feed,
+     * so they open in the reader without a request. Replaces the run still going, since the
+     * rows on screen have changed.
+     */
+    private void prefetchBodies() {
+        if (!isConnected ()) {
+            return;
+        }
+        final List <Article> visible = new ArrayList <> ();
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition ();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition ();
+        if (firstVisible != RecyclerView.NO_POSITION) {
+            for (int i = firstVisible; i <= lastVisible && i < mAdapter.getItemCount (); i++) {
+                visible.add ( mAdapter.getArticle ( i ) );
+            }
         }
-        if (sections.endsWith ( "|" )) {
-            sections = sections.substring ( 0, sections.length () - 1 ) + "";
+        final List <Article> recent = mFeedArticles;
+        if (mBodyPrefetch != null) {
+            mBodyPrefetch.cancel ( true );
+            // A cancelled run that has not started keeps its place in the queue
+            mPrefetchEngine.purge ();
         }
-        if (!sections.isEmpty ()) {
-            uriBuilder.appendQueryParameter ( "section", sections );
+        try {
+            mBodyPrefetch = mPrefetchEngine.submit ( new Runnable () {
+                @Override
+                public void run() {
+                    BodyPrefetcher.Result result = mBodyPrefetcher.prefetch ( visible, recent,
+                            PREFETCH_BODIES, PREFETCH_BODY_BYTES );
+                    Log.d ( LOG_TAG, "Prefetched " + result );
+                }
+            } );
+        } catch (RejectedExecutionException e) {
+            // The cancelled run is still finishing, the next scroll tries again
+            Log.d ( LOG_TAG, "Body prefetch rejected" );
         }
-        uriBuilder.appendQueryParameter ( "show-tags", "contributor" );
-        uriBuilder.appendQueryParameter ( "api-key", "test" );
-        Log.d ( TAG, "uriBuilder: " + uriBuilder.toString () );
-        return new ArticleLoader ( this, uriBuilder.toString () );
+    }
+
+    /**
+     * Shows the empty state text if there are no rows, unless still loading.
+     */
+    private void updateEmptyView() {
+        boolean loading = findViewById ( R.id.loading_indicator ).getVisibility () == View.VISIBLE;
+        boolean empty = mAdapter.getItemCount () == 0;
+        mEmptyStateTextView.setVisibility ( empty && !loading ? View.VISIBLE : View.GONE );
+    }
+
+    /**
+     * Returns true if there is a network connection.
+     */
+    private boolean isConnected() {
+        // Get a reference to the ConnectivityManager to check state of network connectivity
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService ( Context.CONNECTIVITY_SERVICE );
+
+        // Get details on the currently active default data network
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo ();
+        return networkInfo != null && networkInfo.isConnected ();
+    }
+
+    @Override
+    public Loader <List <Article>> onCreateLoader(int i, Bundle args) {
+        // The loader fetches the first page, the pager the ones after it
+        return new ArticleLoader ( this, mFeedFetcher, mFetchEngine );
     }
 
     @Override
@@ -160,28 +530,66 @@ public class MainActivity extends AppCompatActivity
         View loadingIndicator = findViewById ( R.id.loading_indicator );
         loadingIndicator.setVisibility ( View.GONE );
 
-        // Set empty state text to display "No articles found."
-        mEmptyStateTextView.setText ( R.string.no_articles_found );
-
-        // Clear the adapter of previous article data
-        mAdapter.clear ();
-
-        // If there is a valid list of {@link Arlicle}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (articles != null && !articles.isEmpty ()) {
-            mAdapter.addAll ( articles );
+        // Set empty state text to display "No articles found.",
+        // or the connection error if nothing is stored and we are offline
+        if ((articles == null || articles.isEmpty ()) && !isConnected ()) {
+            mEmptyStateTextView.setText ( R.string.no_internet_connection );
+        } else {
+            mEmptyStateTextView.setText ( R.string.no_articles_found );
         }
+
+        // Start paging over with the first page from the loader. This will trigger the list to update.
+        mPager.reset ( articles == null ? new ArrayList <Article> () : articles );
+        updateEmptyView ();
+        prefetchBodies ();
     }
 
     @Override
     public void onLoaderReset(Loader <List <Article>> loader) {
         // Loader reset, so we can clear out our existing data.
-        mAdapter.clear ();
+        mPager.reset ( null );
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater ().inflate ( R.menu.main, menu );
+        menu.findItem ( R.id.action_metrics ).setVisible ( BuildConfig.DEBUG );
+
+        MenuItem searchItem = menu.findItem ( R.id.action_search );
+        final SearchView searchView = (SearchView) searchItem.getActionView ();
+        searchView.setQueryHint ( getString ( R.string.search_hint ) );
+        searchView.setOnQueryTextListener ( new SearchView.OnQueryTextListener () {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The results are already shown, just hide the keyboard
+                searchView.clearFocus ();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                if (mSearchQuery != null) {
+                    mSearchQuery = newText;
+                    showSearchResults ();
+                }
+                return true;
+            }
+        } );
+        searchItem.setOnActionExpandListener ( new MenuItem.OnActionExpandListener () {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                mSearchQuery = "";
+                indexStoredArticles ();
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mSearchQuery = null;
+                mAdapter.submitList ( mFeedArticles );
+                return true;
+            }
+        } );
         return true;
     }
 
@@ -193,6 +601,10 @@ public class MainActivity extends AppCompatActivity
             startActivity ( settingsIntent );
             return true;
         }
+        if (id == R.id.action_metrics) {
+            startActivity ( new Intent ( this, MetricsActivity.class ) );
+            return true;
+        }
         return super.onOptionsItemSelected ( item );
     }
 }
\ No newline at end of file
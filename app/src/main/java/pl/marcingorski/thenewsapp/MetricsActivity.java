@@ -0,0 +1,63 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * Debug screen showing the {@link PipelineMetrics}, with actions to refresh, reset and
+ * share them as text, e.g. to attach to a bug report.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView mDumpView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate ( savedInstanceState );
+        setContentView ( R.layout.metrics_activity );
+        mDumpView = findViewById ( R.id.metrics_dump );
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume ();
+        showMetrics ();
+    }
+
+    private void showMetrics() {
+        mDumpView.setText ( PipelineMetrics.getDefault ().dump () );
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater ().inflate ( R.menu.metrics, menu );
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId ();
+        if (id == R.id.action_refresh_metrics) {
+            showMetrics ();
+            return true;
+        }
+        if (id == R.id.action_reset_metrics) {
+            PipelineMetrics.getDefault ().reset ();
+            showMetrics ();
+            return true;
+        }
+        if (id == R.id.action_share_metrics) {
+            Intent shareIntent = new Intent ( Intent.ACTION_SEND );
+            shareIntent.setType ( "text/plain" );
+            shareIntent.putExtra ( Intent.EXTRA_SUBJECT, getString ( R.string.metrics_title ) );
+            shareIntent.putExtra ( Intent.EXTRA_TEXT, PipelineMetrics.getDefault ().dump () );
+            startActivity ( Intent.createChooser ( shareIntent, getString ( R.string.metrics_share ) ) );
+            return true;
+        }
+        return super.onOptionsItemSelected ( item );
+    }
+}
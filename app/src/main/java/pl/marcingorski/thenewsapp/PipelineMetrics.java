@@ -0,0 +1,272 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counts of the stages of the article pipeline, from the connection to the
+ * bound row, so a slow load can be traced to the stage that got slower.
+ * <p>
+ * Timings go into {@link Histogram}s with power of two buckets of microseconds, counts into
+ * {@link Counter}s and current levels, e.g. of a queue, into {@link Gauge}s. Recording is
+ * a few atomic additions without locks or allocation, so it stays on in release builds.
+ * The code being measured looks its histograms and counters up once and keeps them in
+ * constants; the names are the ones below.
+ */
+final class PipelineMetrics {
+
+    /**
+     * Stages, timed in nanoseconds.
+     */
+    static final String CONNECT = "connect";
+    static final String FIRST_BYTE = "first_byte";
+    static final String READ_DECODE = "read_decode";
+    static final String REQUEST = "request";
+    static final String BIND = "bind";
+    static final String SEARCH = "search";
+
+    /**
+     * Counters. Status codes are counted as {@link #HTTP_STATUS_PREFIX} followed by the code.
+     */
+    static final String REQUESTS = "requests";
+    static final String WIRE_BYTES = "wire_bytes";
+    static final String DECODED_BYTES = "decoded_bytes";
+    static final String ARTICLES = "articles";
+    static final String PARSE_ERRORS = "parse_errors";
+    static final String IO_ERRORS = "io_errors";
+    static final String HTTP_STATUS_PREFIX = "http_";
+
+    private static PipelineMetrics sDefault;
+
+    private final ConcurrentMap <String, Histogram> mHistograms = new ConcurrentHashMap <> ();
+    private final ConcurrentMap <String, Counter> mCounters = new ConcurrentHashMap <> ();
+    private final ConcurrentMap <String, Gauge> mGauges = new ConcurrentHashMap <> ();
+    private volatile long mStartMillis;
+
+    /**
+     * A distribution of durations. Bucket i holds the durations from 2^(i-1) up to 2^i
+     * microseconds, bucket 0 the ones under a microsecond.
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray ( BUCKETS );
+        private final AtomicLong mCount = new AtomicLong ();
+        private final AtomicLong mTotalNanos = new AtomicLong ();
+        private final AtomicLong mMaxNanos = new AtomicLong ();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            int bucket = Math.min ( BUCKETS - 1, 64 - Long.numberOfLeadingZeros ( nanos / 1000 ) );
+            mBuckets.incrementAndGet ( bucket );
+            mCount.incrementAndGet ();
+            mTotalNanos.addAndGet ( nanos );
+            long max = mMaxNanos.get ();
+            while (nanos > max && !mMaxNanos.compareAndSet ( max, nanos )) {
+                max = mMaxNanos.get ();
+            }
+        }
+
+        /**
+         * Records the time since the start, a value of {@link System#nanoTime()}.
+         */
+        void recordSince(long startNanos) {
+            record ( System.nanoTime () - startNanos );
+        }
+
+        long getCount() {
+            return mCount.get ();
+        }
+
+        long getTotalNanos() {
+            return mTotalNanos.get ();
+        }
+
+        long getMaxNanos() {
+            return mMaxNanos.get ();
+        }
+
+        /**
+         * Returns an upper bound of the given quantile (0 to 1) in microseconds: the upper
+         * end of its bucket, but no more than the maximum. Returns 0 if nothing was recorded.
+         */
+        long getQuantileMicros(double quantile) {
+            long count = mCount.get ();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max ( 1, (long) Math.ceil ( quantile * count ) );
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get ( i );
+                if (seen >= rank) {
+                    return Math.min ( i == 0 ? 1 : 1L << i, mMaxNanos.get () / 1000 + 1 );
+                }
+            }
+            return mMaxNanos.get () / 1000;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set ( i, 0 );
+            }
+            mCount.set ( 0 );
+            mTotalNanos.set ( 0 );
+            mMaxNanos.set ( 0 );
+        }
+    }
+
+    /**
+     * A running total, e.g. of bytes or articles.
+     */
+    static final class Counter {
+
+        private final AtomicLong mValue = new AtomicLong ();
+
+        void add(long delta) {
+            mValue.addAndGet ( delta );
+        }
+
+        void increment() {
+            mValue.incrementAndGet ();
+        }
+
+        long get() {
+            return mValue.get ();
+        }
+
+        void reset() {
+            mValue.set ( 0 );
+        }
+    }
+
+    /**
+     * A level that goes up and down, e.g. the callers waiting in a queue. Not cleared by
+     * {@link #reset()}, since it describes the present rather than the past.
+     */
+    static final class Gauge {
+
+        private final AtomicLong mValue = new AtomicLong ();
+
+        void add(long delta) {
+            mValue.addAndGet ( delta );
+        }
+
+        long get() {
+            return mValue.get ();
+        }
+    }
+
+    PipelineMetrics() {
+        mStartMillis = System.currentTimeMillis ();
+    }
+
+    /**
+     * Returns the metrics of the app.
+     */
+    static synchronized PipelineMetrics getDefault() {
+        if (sDefault == null) {
+            sDefault = new PipelineMetrics ();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use.
+     */
+    Histogram histogram(String name) {
+        Histogram histogram = mHistograms.get ( name );
+        if (histogram == null) {
+            mHistograms.putIfAbsent ( name, new Histogram () );
+            histogram = mHistograms.get ( name );
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     */
+    Counter counter(String name) {
+        Counter counter = mCounters.get ( name );
+        if (counter == null) {
+            mCounters.putIfAbsent ( name, new Counter () );
+            counter = mCounters.get ( name );
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the gauge with the given name, creating it on first use.
+     */
+    Gauge gauge(String name) {
+        Gauge gauge = mGauges.get ( name );
+        if (gauge == null) {
+            mGauges.putIfAbsent ( name, new Gauge () );
+            gauge = mGauges.get ( name );
+        }
+        return gauge;
+    }
+
+    /**
+     * Counts a response with the given HTTP status code.
+     */
+    void countStatus(int statusCode) {
+        counter ( HTTP_STATUS_PREFIX + statusCode ).increment ();
+    }
+
+    /**
+     * Sets every histogram and counter back to zero. They stay registered, so the
+     * constants holding them keep recording. Gauges keep their level.
+     */
+    void reset() {
+        for (Histogram histogram : mHistograms.values ()) {
+            histogram.reset ();
+        }
+        for (Counter counter : mCounters.values ()) {
+            counter.reset ();
+        }
+        mStartMillis = System.currentTimeMillis ();
+    }
+
+    /**
+     * Returns a plain text table of every histogram, counter and gauge, sorted by name,
+     * for the debug screen and to share.
+     */
+    String dump() {
+        StringBuilder out = new StringBuilder ();
+        out.append ( "Since " ).append ( PublicationDates.toIso ( mStartMillis ) ).append ( '\n' );
+        out.append ( "Stage timings in ms\n" );
+        out.append ( String.format ( Locale.US, "%-12s %7s %8s %8s %8s %8s %8s%n",
+                "stage", "count", "mean", "p50", "p90", "p99", "max" ) );
+        for (Map.Entry <String, Histogram> entry : new TreeMap <> ( mHistograms ).entrySet ()) {
+            Histogram histogram = entry.getValue ();
+            long count = histogram.getCount ();
+            out.append ( String.format ( Locale.US, "%-12s %7d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    entry.getKey (), count,
+                    count == 0 ? 0 : histogram.getTotalNanos () / 1e6 / count,
+                    histogram.getQuantileMicros ( 0.5 ) / 1e3,
+                    histogram.getQuantileMicros ( 0.9 ) / 1e3,
+                    histogram.getQuantileMicros ( 0.99 ) / 1e3,
+                    histogram.getMaxNanos () / 1e6 ) );
+        }
+        out.append ( "\nCounters\n" );
+        for (Map.Entry <String, Counter> entry : new TreeMap <> ( mCounters ).entrySet ()) {
+            out.append ( String.format ( Locale.US, "%-16s %12d%n", entry.getKey (), entry.getValue ().get () ) );
+        }
+        if (!mGauges.isEmpty ()) {
+            out.append ( "\nGauges\n" );
+            for (Map.Entry <String, Gauge> entry : new TreeMap <> ( mGauges ).entrySet ()) {
+                out.append ( String.format ( Locale.US, "%-16s %12d%n", entry.getKey (), entry.getValue ().get () ) );
+            }
+        }
+        return out.toString ();
+    }
+}
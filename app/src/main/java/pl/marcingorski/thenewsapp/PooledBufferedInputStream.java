@@ -0,0 +1,85 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered {@link InputStream} whose buffer is borrowed from a {@link ByteBufferPool}
+ * and handed back when the stream is closed.
+ */
+final class PooledBufferedInputStream extends InputStream {
+
+    private final InputStream in;
+    private final ByteBufferPool pool;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+
+    PooledBufferedInputStream(InputStream in, ByteBufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+        this.buffer = pool.acquire ();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !fill ()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int available = limit - pos;
+        if (available == 0) {
+            ensureOpen ();
+            // Large reads go straight to the destination instead of through the buffer
+            if (len >= buffer.length) {
+                return in.read ( b, off, len );
+            }
+            if (!fill ()) {
+                return -1;
+            }
+            available = limit - pos;
+        }
+        int count = Math.min ( available, len );
+        System.arraycopy ( buffer, pos, b, off, count );
+        pos += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen ();
+        return (limit - pos) + in.available ();
+    }
+
+    @Override
+    public void close() throws IOException {
+        byte[] released = buffer;
+        buffer = null;
+        pos = limit = 0;
+        if (released != null) {
+            pool.release ( released );
+        }
+        in.close ();
+    }
+
+    private boolean fill() throws IOException {
+        ensureOpen ();
+        int read = in.read ( buffer, 0, buffer.length );
+        pos = 0;
+        limit = Math.max ( read, 0 );
+        return read > 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException ( "Stream closed" );
+        }
+    }
+}
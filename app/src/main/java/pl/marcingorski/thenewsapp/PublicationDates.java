@@ -0,0 +1,206 @@
+package pl.marcingorski.thenewsapp;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parsing and display formatting of article publication dates.
+ * <p>
+ * The API sends dates in the fixed form {@code yyyy-MM-dd'T'HH:mm:ss'Z'} (UTC). They are
+ * parsed by hand into epoch milliseconds, without allocating, instead of going through
+ * {@link SimpleDateFormat}. Formatting for display is only done when a row is bound, with
+ * one formatter per thread that is reused for every article.
+ */
+final class PublicationDates {
+
+    /**
+     * Returned by {@link #parse(CharSequence)} for missing or malformed dates.
+     */
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final String DISPLAY_PATTERN = "HH:mm    dd.MM.yyyy";
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final ThreadLocal <DisplayFormat> DISPLAY_FORMAT = new ThreadLocal <DisplayFormat> () {
+        @Override
+        protected DisplayFormat initialValue() {
+            return new DisplayFormat ();
+        }
+    };
+
+    private PublicationDates() {
+    }
+
+    /**
+     * Parses {@code yyyy-MM-ddTHH:mm:ssZ}, optionally with fractional seconds, into epoch
+     * milliseconds. Returns {@link #UNKNOWN} if the text is not in that form.
+     */
+    static long parse(CharSequence text) {
+        if (text == null || text.length () < 20) {
+            return UNKNOWN;
+        }
+        int year = digits ( text, 0, 4 );
+        int month = digits ( text, 5, 2 );
+        int day = digits ( text, 8, 2 );
+        int hour = digits ( text, 11, 2 );
+        int minute = digits ( text, 14, 2 );
+        int second = digits ( text, 17, 2 );
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth ( year, month )
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || text.charAt ( 4 ) != '-' || text.charAt ( 7 ) != '-' || text.charAt ( 10 ) != 'T'
+                || text.charAt ( 13 ) != ':' || text.charAt ( 16 ) != ':') {
+            return UNKNOWN;
+        }
+
+        int end = text.length () - 1;
+        if (text.charAt ( end ) != 'Z') {
+            return UNKNOWN;
+        }
+        int millis = 0;
+        if (end > 19) {
+            // Fractional seconds, only the first three digits matter
+            if (text.charAt ( 19 ) != '.' || end == 20) {
+                return UNKNOWN;
+            }
+            int scale = 100;
+            for (int i = 20; i < end; i++) {
+                char c = text.charAt ( i );
+                if (c < '0' || c > '9') {
+                    return UNKNOWN;
+                }
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+        } else if (end != 19) {
+            return UNKNOWN;
+        }
+
+        return daysFromCivil ( year, month, day ) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * Formats the epoch milliseconds for the list, in the device's time zone.
+     * Returns an empty string for {@link #UNKNOWN}.
+     */
+    static String format(long millis) {
+        if (millis == UNKNOWN) {
+            return "";
+        }
+        return DISPLAY_FORMAT.get ().format ( millis );
+    }
+
+    /**
+     * Formats epoch milliseconds the way the API sends and accepts them,
+     * {@code yyyy-MM-ddTHH:mm:ssZ} in UTC. Milliseconds are dropped.
+     */
+    static String toIso(long millis) {
+        long days = millis / MILLIS_PER_DAY;
+        long millisOfDay = millis % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+        long secondOfDay = millisOfDay / 1000;
+
+        // Inverse of daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder iso = new StringBuilder ( 20 );
+        pad ( iso, year, 4 ).append ( '-' );
+        pad ( iso, month, 2 ).append ( '-' );
+        pad ( iso, day, 2 ).append ( 'T' );
+        pad ( iso, secondOfDay / 3600, 2 ).append ( ':' );
+        pad ( iso, secondOfDay / 60 % 60, 2 ).append ( ':' );
+        pad ( iso, secondOfDay % 60, 2 ).append ( 'Z' );
+        return iso.toString ();
+    }
+
+    /**
+     * Newest first ordering of two epoch milliseconds values.
+     */
+    static int compareNewestFirst(long a, long b) {
+        return a < b ? 1 : (a == b ? 0 : -1);
+    }
+
+    /**
+     * Returns the non-negative number in text[start, start + count), or -1.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt ( i );
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static StringBuilder pad(StringBuilder builder, long value, int width) {
+        String digits = String.valueOf ( value );
+        for (int i = digits.length (); i < width; i++) {
+            builder.append ( '0' );
+        }
+        return builder.append ( digits );
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * A display formatter and the Date it formats, reused by one thread.
+     */
+    private static final class DisplayFormat {
+
+        private final DateFormat mFormat = new SimpleDateFormat ( DISPLAY_PATTERN, Locale.getDefault () );
+        private final Date mDate = new Date ();
+
+        String format(long millis) {
+            // Follow the device if the user changed the time zone since the formatter was made
+            TimeZone timeZone = TimeZone.getDefault ();
+            if (!timeZone.getID ().equals ( mFormat.getTimeZone ().getID () )) {
+                mFormat.setTimeZone ( timeZone );
+            }
+            mDate.setTime ( millis );
+            return mFormat.format ( mDate );
+        }
+    }
+}
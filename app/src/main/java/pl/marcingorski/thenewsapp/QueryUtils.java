@@ -1,28 +1,15 @@
 package pl.marcingorski.thenewsapp;
 
 
-import android.text.TextUtils;
+import android.content.Context;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 
 /**
@@ -35,6 +22,89 @@ public final class QueryUtils {
      */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName ();
 
+    /**
+     * Idle connections kept alive for reuse, enough for every section request.
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    static {
+        HttpTransport.configureConnectionPool ( MAX_IDLE_CONNECTIONS );
+    }
+
+    /**
+     * Shared transport, so response buffers and connections are reused across loads.
+     */
+    private static final HttpTransport TRANSPORT = new HttpTransport ( new ByteBufferPool ( 8 * 1024, 4 ) );
+
+    /**
+     * Location and byte budget of the conditional GET response cache
+     */
+    private static final String RESPONSE_CACHE_DIR = "guardian-responses";
+    private static final long RESPONSE_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static DiskResponseCache sResponseCache;
+
+    /**
+     * Timings and counts of every request, see {@link PipelineMetrics}
+     */
+    private static final PipelineMetrics METRICS = PipelineMetrics.getDefault ();
+    private static final PipelineMetrics.Histogram CONNECT_TIME = METRICS.histogram ( PipelineMetrics.CONNECT );
+    private static final PipelineMetrics.Histogram FIRST_BYTE_TIME = METRICS.histogram ( PipelineMetrics.FIRST_BYTE );
+    private static final PipelineMetrics.Histogram READ_DECODE_TIME = METRICS.histogram ( PipelineMetrics.READ_DECODE );
+    private static final PipelineMetrics.Histogram REQUEST_TIME = METRICS.histogram ( PipelineMetrics.REQUEST );
+    private static final PipelineMetrics.Counter REQUESTS = METRICS.counter ( PipelineMetrics.REQUESTS );
+    private static final PipelineMetrics.Counter WIRE_BYTES = METRICS.counter ( PipelineMetrics.WIRE_BYTES );
+    private static final PipelineMetrics.Counter DECODED_BYTES = METRICS.counter ( PipelineMetrics.DECODED_BYTES );
+    private static final PipelineMetrics.Counter ARTICLES = METRICS.counter ( PipelineMetrics.ARTICLES );
+    private static final PipelineMetrics.Counter PARSE_ERRORS = METRICS.counter ( PipelineMetrics.PARSE_ERRORS );
+    private static final PipelineMetrics.Counter IO_ERRORS = METRICS.counter ( PipelineMetrics.IO_ERRORS );
+
+    /**
+     * Quota of the API key: one call per second, with a burst of one request per section.
+     * Every request to the API goes through the scheduler.
+     */
+    private static final double API_CALLS_PER_SECOND = 1;
+    private static final int API_CALLS_BURST = 5;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 5 * 1000;
+    private static volatile RequestScheduler sScheduler =
+            new RequestScheduler ( API_CALLS_PER_SECOND, API_CALLS_BURST, METRICS );
+
+    /**
+     * The last request for articles sent on each thread, see {@link #NETWORK}
+     */
+    private static final class LastRequest {
+        boolean retryable;
+        long sentAtNanos;
+    }
+
+    private static final ThreadLocal <LastRequest> LAST_REQUEST = new ThreadLocal <LastRequest> () {
+        @Override
+        protected LastRequest initialValue() {
+            return new LastRequest ();
+        }
+    };
+
+    /**
+     * Tells a {@link FetchPolicy} about the requests for articles sent on the calling thread
+     * and about the quota of the API key.
+     */
+    static final FetchPolicy.Network NETWORK = new FetchPolicy.Network () {
+        @Override
+        public boolean isRetryable() {
+            return LAST_REQUEST.get ().retryable;
+        }
+
+        @Override
+        public long getSentAtNanos() {
+            return LAST_REQUEST.get ().sentAtNanos;
+        }
+
+        @Override
+        public boolean isQueued() {
+            return sScheduler.getQueueDepth ( RequestScheduler.currentLane () ) > 0;
+        }
+    };
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -47,31 +117,156 @@ public final class QueryUtils {
      * Query the Guardian dataset and return a list of {@link Article} objects.
      */
     public static List <Article> fetchNewsData(String requestUrl) {
+        return fetchNewsData ( requestUrl, null );
+    }
 
-        try {
-            Thread.sleep ( 2000 );
-        } catch (InterruptedException e) {
-            e.printStackTrace ();
-        }
+    /**
+     * Query the Guardian dataset and return a list of {@link Article} objects,
+     * revalidating against the given response cache (may be null).
+     */
+    public static List <Article> fetchNewsData(String requestUrl, DiskResponseCache cache) {
+        return fetchNewsData ( requestUrl, cache, GuardianProvider.getDefault () );
+    }
+
+    /**
+     * Query a provider and return a list of {@link Article} objects decoded by it,
+     * revalidating against the given response cache (may be null).
+     */
+    static List <Article> fetchNewsData(String requestUrl, DiskResponseCache cache, FeedProvider provider) {
+        LastRequest lastRequest = LAST_REQUEST.get ();
+        lastRequest.retryable = false;
+        lastRequest.sentAtNanos = 0;
 
         // Create URL object
         URL url = createUrl ( requestUrl );
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and decode the JSON response into a list of {@link Article}s
+        List <Article> articles = null;
         try {
-            jsonResponse = makeHttpRequest ( url );
+            articles = makeHttpRequest ( url, cache, provider );
         } catch (IOException e) {
+            lastRequest.retryable = true;
             Log.e ( LOG_TAG, "Problem making the HTTP request.", e );
         }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Article}s
-        List <Article> articles = extractFeatureFromJson ( jsonResponse );
-
         // Return the list of {@link Article}s
         return articles;
     }
 
+    /**
+     * Return the articles of the last good response to the URL from the response cache,
+     * without a request, or null if it is not cached or cannot be read.
+     */
+    static List <Article> readCachedNewsData(String requestUrl, DiskResponseCache cache, FeedProvider provider) {
+        DiskResponseCache.Entry cached = cache.get ( DiskResponseCache.normalize ( requestUrl ) );
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return readCachedArticles ( cache, cached, provider );
+        } catch (IOException e) {
+            Log.e ( LOG_TAG, "Problem reading the cached response.", e );
+            return null;
+        }
+    }
+
+    /**
+     * Request a single article with "show-fields=body" and return its HTML body and the bytes
+     * received, or null if there was no successful response or the article has no body.
+     * Must not be called on the main thread.
+     */
+    static BodyPrefetcher.Download fetchArticleBody(String contentUrl) {
+        URL url = createUrl ( contentUrl );
+        if (url == null) {
+            return null;
+        }
+        if (!acquirePermit ()) {
+            return null;
+        }
+        long start = System.nanoTime ();
+        REQUESTS.increment ();
+        HttpTransport.Response response = null;
+        try {
+            response = TRANSPORT.get ( url );
+            METRICS.countStatus ( response.getResponseCode () );
+            checkRateLimit ( response );
+            if (response.getResponseCode () != 200) {
+                Log.e ( LOG_TAG, "Error response code: " + response.getResponseCode () );
+                return null;
+            }
+            String body = ArticleJsonDecoder.decodeBody ( response.body () );
+            WIRE_BYTES.add ( response.getWireBytes () );
+            DECODED_BYTES.add ( response.getDecodedBytes () );
+            return body == null ? null : new BodyPrefetcher.Download ( body, response.getWireBytes () );
+        } catch (IOException e) {
+            IO_ERRORS.increment ();
+            Log.e ( LOG_TAG, "Problem retrieving the article body.", e );
+            return null;
+        } finally {
+            if (response != null) {
+                closeQuietly ( response );
+            }
+            REQUEST_TIME.recordSince ( start );
+        }
+    }
+
+    /**
+     * Waits for the {@link RequestScheduler} to let a request through in the lane of the
+     * calling thread. Returns false if the wait was interrupted, i.e. the load was cancelled.
+     */
+    private static boolean acquirePermit() {
+        try {
+            sScheduler.acquire ();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return false;
+        }
+    }
+
+    /**
+     * Holds back every request for as long as the server asks after a 429 response.
+     */
+    private static void checkRateLimit(HttpTransport.Response response) {
+        if (response.getResponseCode () != 429) {
+            return;
+        }
+        long retryAfterMillis = RequestScheduler.retryAfterMillis ( response.getHeader ( "Retry-After" ),
+                System.currentTimeMillis (), DEFAULT_RETRY_AFTER_MILLIS );
+        Log.w ( LOG_TAG, "Rate limited, holding requests for " + retryAfterMillis + " ms" );
+        sScheduler.onRateLimited ( retryAfterMillis );
+    }
+
+    /**
+     * Replaces the quota of the API key, e.g. with a much larger one for load tests against
+     * a local server, and returns the scheduler it replaced.
+     */
+    static RequestScheduler setScheduler(RequestScheduler scheduler) {
+        RequestScheduler previous = sScheduler;
+        sScheduler = scheduler;
+        return previous;
+    }
+
+    private static void closeQuietly(HttpTransport.Response response) {
+        try {
+            response.close ();
+        } catch (IOException e) {
+            Log.w ( LOG_TAG, "Problem closing the response.", e );
+        }
+    }
+
+    /**
+     * Returns the app wide response cache, creating it on first use.
+     * Must not be called on the main thread, the cache index is read from disk.
+     */
+    public static synchronized DiskResponseCache getResponseCache(Context context) {
+        if (sResponseCache == null) {
+            File directory = new File ( context.getApplicationContext ().getCacheDir (), RESPONSE_CACHE_DIR );
+            sResponseCache = new DiskResponseCache ( directory, RESPONSE_CACHE_BYTES );
+        }
+        return sResponseCache;
+    }
+
     /**
      * Returns new URL object from the given string URL.
      */
@@ -86,140 +281,156 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and decode the response straight from the
+     * (gzip decoded) body stream into a list of {@link Article}s.
+     * If the response is cached, the request is conditional and a 304 is served from the cache.
+     * Returns null if there was no successful response.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static List <Article> makeHttpRequest(URL url, DiskResponseCache cache, FeedProvider provider)
+            throws IOException {
+        List <Article> articles = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return articles;
+        }
+
+        String cacheKey = null;
+        DiskResponseCache.Entry cached = null;
+        if (cache != null) {
+            cacheKey = DiskResponseCache.normalize ( url.toString () );
+            cached = cache.get ( cacheKey );
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        if (!acquirePermit ()) {
+            return articles;
+        }
+        long start = System.nanoTime ();
+        LastRequest lastRequest = LAST_REQUEST.get ();
+        lastRequest.sentAtNanos = start;
+        REQUESTS.increment ();
+        HttpTransport.Response response = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection ();
-            urlConnection.setReadTimeout ( 10000 /* milliseconds */ );
-            urlConnection.setConnectTimeout ( 15000 /* milliseconds */ );
-            urlConnection.setRequestMethod ( "GET" );
-            urlConnection.connect ();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode () == 200) {
-                inputStream = urlConnection.getInputStream ();
-                jsonResponse = readFromStream ( inputStream );
+            response = TRANSPORT.get ( url, cached == null ? null : DiskResponseCache.validatorHeaders ( cached ) );
+            CONNECT_TIME.record ( response.getConnectNanos () );
+            FIRST_BYTE_TIME.record ( response.getFirstByteNanos () );
+            METRICS.countStatus ( response.getResponseCode () );
+            checkRateLimit ( response );
+            Log.d ( LOG_TAG, "Connection setup took " + response.getConnectNanos () / 1000 + " us, average "
+                    + TRANSPORT.getTotalConnectNanos () / TRANSPORT.getRequestCount () / 1000 + " us over "
+                    + TRANSPORT.getRequestCount () + " requests" );
+
+            if (response.getResponseCode () == 304 && cached != null) {
+                // Not modified, so reuse what we already have
+                articles = cache.onNotModified ( cached );
+                if (articles == null) {
+                    articles = readCachedArticles ( cache, cached, provider );
+                }
+                Log.d ( LOG_TAG, "Not modified, served from cache: " + cache );
+            } else if (response.getResponseCode () == 200) {
+                // If the request was successful (response code 200),
+                // then parse the response while it is being read.
+                long decodeStart = System.nanoTime ();
+                if (cache != null) {
+                    cache.onMiss ();
+                    articles = readAndCache ( cache, cacheKey, response, provider );
+                } else {
+                    articles = extractFeatureFromJson ( response.body (), provider );
+                }
+                READ_DECODE_TIME.recordSince ( decodeStart );
+                WIRE_BYTES.add ( response.getWireBytes () );
+                DECODED_BYTES.add ( response.getDecodedBytes () );
+                Log.d ( LOG_TAG, "Received " + response.getWireBytes () + " bytes, decoded "
+                        + response.getDecodedBytes () + " bytes" );
             } else {
-                Log.e ( LOG_TAG, "Error response code: " + urlConnection.getResponseCode () );
+                // A server error or the quota may pass, a bad request or missing key won't
+                int responseCode = response.getResponseCode ();
+                lastRequest.retryable = responseCode >= 500 || responseCode == 429;
+                Log.e ( LOG_TAG, "Error response code: " + responseCode );
             }
         } catch (IOException e) {
+            IO_ERRORS.increment ();
+            lastRequest.retryable = true;
             Log.e ( LOG_TAG, "Problem retrieving the articles JSON results.", e );
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect ();
-            }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
+            if (response != null) {
+                // Closing the response could throw an IOException, which is why
                 // the makeHttpRequest(URL url) method signature specifies than an IOException
                 // could be thrown.
-                inputStream.close ();
+                response.close ();
             }
+            REQUEST_TIME.recordSince ( start );
         }
-        return jsonResponse;
+        return articles;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * Decode the response body while copying it into the cache. The copy is only
+     * kept if the whole body could be decoded. Returns null if the body is not valid JSON,
+     * and throws if it could not be read to the end.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder ();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader ( inputStream, Charset.forName ( "UTF-8" ) );
-            BufferedReader reader = new BufferedReader ( inputStreamReader );
-            String line = reader.readLine ();
-            while (line != null) {
-                output.append ( line );
-                line = reader.readLine ();
+    private static List <Article> readAndCache(DiskResponseCache cache, String cacheKey,
+                                               HttpTransport.Response response, FeedProvider provider)
+            throws IOException {
+        DiskResponseCache.Recorder recorder = cache.record ( cacheKey,
+                response.getHeader ( "ETag" ), response.getHeader ( "Last-Modified" ), response.body () );
+        if (recorder == null) {
+            return extractFeatureFromJson ( response.body (), provider );
+        }
+        List <Article> articles;
+        try {
+            articles = decode ( recorder, provider );
+        } catch (JsonStreamReader.MalformedJsonException e) {
+            recorder.abort ();
+            PARSE_ERRORS.increment ();
+            Log.e ( LOG_TAG, "Problem parsing the articles JSON results", e );
+            return null;
+        } catch (IOException e) {
+            recorder.abort ();
+            throw e;
+        }
+        // The decoder stops at the closing brace, make sure the copy is complete
+        byte[] rest = new byte[256];
+        while (recorder.read ( rest ) != -1) {
+            // Keep reading
+        }
+        recorder.commit ();
+        cache.putDecoded ( cacheKey, articles );
+        return articles;
+    }
+
+    private static List <Article> readCachedArticles(DiskResponseCache cache, DiskResponseCache.Entry cached,
+                                                     FeedProvider provider) throws IOException {
+        InputStream body = cache.openBody ( cached );
+        try {
+            List <Article> articles = extractFeatureFromJson ( body, provider );
+            if (articles != null) {
+                cache.putDecoded ( cached.key, articles );
             }
+            return articles;
+        } finally {
+            body.close ();
         }
-        return output.toString ();
     }
 
     /**
      * Return a list of {@link Article} objects that has been built up from
-     * parsing the given JSON response.
+     * parsing the given JSON response stream, or null if it is not valid JSON.
+     * Throws if the stream could not be read to the end, e.g. when the connection dropped.
      */
-    private static List <Article> extractFeatureFromJson(String newsJSON) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty ( newsJSON )) {
-            return null;
-        }
+    private static List <Article> extractFeatureFromJson(InputStream newsJSON, FeedProvider provider)
+            throws IOException {
+        List <Article> articles = null;
 
-        // Create an empty ArrayList that we can start adding articles to
-        List <Article> articles = new ArrayList <> ();
-
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
+        // Try to parse the JSON response stream. If there's a problem with the way the JSON
+        // is formatted, a MalformedJsonException will be thrown.
         // Catch the exception so the app doesn't crash, and print the error message to the logs.
         try {
-
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject ( newsJSON );
-
-            JSONObject response = baseJsonResponse.getJSONObject ( "response" );
-            JSONArray articleArray = response.getJSONArray ( "results" );
-
-            for (int i = 0; i < articleArray.length (); i++) {
-
-                // Get a single article at position i within the list of articles
-                JSONObject currentArticle = articleArray.getJSONObject ( i );
-
-
-                // Extract the value for the key called "webTitle"
-                String titleOfArticle = currentArticle.getString ( "webTitle" );
-
-                // Extract the value for the key called "section"
-                String section = currentArticle.getString ( "sectionName" );
-
-                // Extract the value for the key called "webPublicationDate"
-                String datePublished = currentArticle.optString ( "webPublicationDate" );
-
-                String dateFormated = "";
-                try {
-                    DateFormat dateFromWeb = new SimpleDateFormat ( "yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.getDefault () );
-                    Date date = dateFromWeb.parse ( datePublished );
-                    DateFormat readableDate = new SimpleDateFormat ( "HH:mm    dd.MM.yyyy", Locale.getDefault () );
-                    dateFormated = readableDate.format ( date );
-                } catch (ParseException e) {
-                    Log.e ( LOG_TAG, "date formating problem" );
-                }
-
-                // Extract the value for the key called "webUrl"
-                String url = currentArticle.getString ( "webUrl" );
-
-                // Extract Author Array - tags
-
-                JSONArray newsAuthorArray = currentArticle.getJSONArray ( "tags" );
-
-                String author = "Author Unavailable";
-
-                if (newsAuthorArray.length () == 1) {
-                    JSONObject newsAuthorObject = newsAuthorArray.getJSONObject ( 0 );
-                    author = newsAuthorObject.getString ( "webTitle" );
-                }
-
-                // Create a new {@link Article} object from Json response
-                Article article = new Article ( titleOfArticle, section, author, dateFormated, url );
-
-                // Add the new {@link Article} to the list of articles.
-                articles.add ( article );
-            }
-
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
+            articles = decode ( newsJSON, provider );
+        } catch (JsonStreamReader.MalformedJsonException e) {
+            PARSE_ERRORS.increment ();
+            // If an error is thrown while decoding, catch the exception here,
+            // so the app doesn't crash. Print a log message
             // with the message from the exception.
             Log.e ( "QueryUtils", "Problem parsing the articles JSON results", e );
         }
@@ -227,4 +438,15 @@ public final class QueryUtils {
         // Return the list of articles
         return articles;
     }
+
+    /**
+     * Decodes a response body, counts the articles and adds them to the search index.
+     */
+    private static List <Article> decode(InputStream newsJSON, FeedProvider provider) throws IOException {
+        List <Article> articles = provider.decode ( newsJSON );
+        ARTICLES.add ( articles.size () );
+        // Make the articles searchable without another request
+        SearchIndex.getDefault ().addAll ( articles );
+        return articles;
+    }
 }
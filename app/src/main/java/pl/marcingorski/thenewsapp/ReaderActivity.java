@@ -0,0 +1,170 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.webkit.WebView;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Shows the body of an article inside the app.
+ * <p>
+ * The body is read from the {@link BodyStore}, where the {@link BodyPrefetcher} has usually
+ * put it already, so it opens without a connection. Otherwise it is downloaded and stored.
+ * If it cannot be downloaded either, the article is opened in the browser instead.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = ReaderActivity.class.getSimpleName ();
+
+    /**
+     * The web URL and the title of the article to show
+     */
+    static final String EXTRA_URL = "url";
+    static final String EXTRA_TITLE = "title";
+
+    /**
+     * Counter names, see {@link PipelineMetrics}
+     */
+    static final String STORED_BODIES = "reader_stored_bodies";
+    static final String DOWNLOADED_BODIES = "reader_downloaded_bodies";
+
+    private String mUrl;
+    private WebView mBodyView;
+    private Future <?> mLoad;
+    private final Handler mMainHandler = new Handler ( Looper.getMainLooper () );
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate ( savedInstanceState );
+        setContentView ( R.layout.reader_activity );
+        mBodyView = findViewById ( R.id.reader_body );
+
+        mUrl = getIntent ().getStringExtra ( EXTRA_URL );
+        String title = getIntent ().getStringExtra ( EXTRA_TITLE );
+        if (title != null) {
+            setTitle ( title );
+        }
+        loadBody ( title );
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy ();
+        if (mLoad != null) {
+            mLoad.cancel ( true );
+        }
+    }
+
+    /**
+     * Reads or downloads the body in the background and shows it.
+     */
+    private void loadBody(final String title) {
+        final BodyStore store = FeedSettings.getBodyStore ( this );
+        try {
+            mLoad = FetchEngine.getDefault ().submit ( new Runnable () {
+                @Override
+                public void run() {
+                    String body = store.get ( mUrl );
+                    if (body != null) {
+                        PipelineMetrics.getDefault ().counter ( STORED_BODIES ).increment ();
+                    } else {
+                        body = download ( store );
+                    }
+                    final String html = body == null ? null : toHtml ( title, body );
+                    mMainHandler.post ( new Runnable () {
+                        @Override
+                        public void run() {
+                            if (!isFinishing ()) {
+                                showBody ( html );
+                            }
+                        }
+                    } );
+                }
+            } );
+        } catch (RejectedExecutionException e) {
+            // Busy loading the feed, the browser does not have to wait for it
+            showBody ( null );
+        }
+    }
+
+    /**
+     * Downloads and stores the body. Returns null if it could not be downloaded.
+     * Called on a background thread.
+     */
+    private String download(BodyStore store) {
+        BodyPrefetcher.Download download = QueryUtils.fetchArticleBody ( FeedSettings.contentUrl ( mUrl ) );
+        if (download == null) {
+            return null;
+        }
+        PipelineMetrics.getDefault ().counter ( DOWNLOADED_BODIES ).increment ();
+        try {
+            store.put ( mUrl, download.body );
+        } catch (IOException e) {
+            Log.w ( LOG_TAG, "Could not store the body of " + mUrl, e );
+        }
+        return download.body;
+    }
+
+    /**
+     * Shows the page, or opens the article in the browser if there is none.
+     */
+    private void showBody(String html) {
+        findViewById ( R.id.reader_loading_indicator ).setVisibility ( View.GONE );
+        if (html == null) {
+            openInBrowser ();
+            finish ();
+            return;
+        }
+        // Relative links and images resolve against the article on the website
+        mBodyView.loadDataWithBaseURL ( mUrl, html, "text/html", "UTF-8", null );
+    }
+
+    /**
+     * Wraps the body in a page that fits the screen.
+     */
+    private static String toHtml(String title, String body) {
+        StringBuilder html = new StringBuilder ( body.length () + 256 );
+        html.append ( "<html><head><meta name=\"viewport\" content=\"width=device-width\">" );
+        html.append ( "<style>body{margin:16px;line-height:1.5}img,figure,iframe{max-width:100%;height:auto}</style>" );
+        html.append ( "</head><body>" );
+        if (title != null) {
+            html.append ( "<h2>" ).append ( TextUtils.htmlEncode ( title ) ).append ( "</h2>" );
+        }
+        html.append ( body );
+        html.append ( "</body></html>" );
+        return html.toString ();
+    }
+
+    private void openInBrowser() {
+        if (mUrl != null) {
+            startActivity ( new Intent ( Intent.ACTION_VIEW, Uri.parse ( mUrl ) ) );
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater ().inflate ( R.menu.reader, menu );
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId () == R.id.action_open_in_browser) {
+            openInBrowser ();
+            return true;
+        }
+        return super.onOptionsItemSelected ( item );
+    }
+}
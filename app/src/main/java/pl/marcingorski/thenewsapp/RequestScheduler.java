@@ -0,0 +1,246 @@
+package pl.marcingorski.thenewsapp;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the requests to the API within the quota of the key.
+ * <p>
+ * Every request takes a token from a bucket that refills at the permitted rate and holds
+ * at most a burst of tokens. Callers that find the bucket empty wait in one of the
+ * {@link Lane}s: the next token always goes to the longest waiting caller of the most
+ * important lane, so a list the user is looking at never waits behind a background sync
+ * or a prefetch. A 429 response empties the bucket and holds every lane until the time
+ * the server asked for in its Retry-After header.
+ * <p>
+ * The lane of a request is the one of the thread sending it, see {@link #enterLane}.
+ * The wait per lane, the callers waiting per lane and the 429 responses are recorded
+ * in {@link PipelineMetrics}.
+ */
+final class RequestScheduler {
+
+    /**
+     * Priority of a request, most important first.
+     */
+    enum Lane {
+        /**
+         * Loads the user is waiting for, the default
+         */
+        INTERACTIVE,
+        /**
+         * The background sync
+         */
+        BACKGROUND,
+        /**
+         * Bodies downloaded ahead of time
+         */
+        PREFETCH
+    }
+
+    /**
+     * Metric names: a histogram of the wait and a gauge of the waiting callers per lane,
+     * followed by the lane in lower case, and the counter of 429 responses.
+     */
+    static final String WAIT_PREFIX = "scheduler_wait_";
+    static final String QUEUED_PREFIX = "scheduler_queued_";
+    static final String RATE_LIMITED = "scheduler_rate_limited";
+
+    private static final ThreadLocal <Lane> CURRENT_LANE = new ThreadLocal <Lane> () {
+        @Override
+        protected Lane initialValue() {
+            return Lane.INTERACTIVE;
+        }
+    };
+
+    private final double mTokensPerNano;
+    private final double mBurst;
+
+    private final ReentrantLock mLock = new ReentrantLock ();
+    private final Condition mChanged = mLock.newCondition ();
+    private double mTokens;
+    private long mRefilledAt;
+    private long mPausedUntil;
+
+    /**
+     * The waiting callers per lane, in order of arrival
+     */
+    private final List <ArrayDeque <Object>> mWaiting;
+
+    private final PipelineMetrics.Histogram[] mWaitTimes;
+    private final PipelineMetrics.Gauge[] mQueued;
+    private final PipelineMetrics.Counter mRateLimited;
+
+    /**
+     * @param permitsPerSecond requests permitted per second
+     * @param burst            requests that may be sent at once after a quiet period, at least 1
+     * @param metrics          where the waits, queues and 429 responses are recorded
+     */
+    RequestScheduler(double permitsPerSecond, int burst, PipelineMetrics metrics) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException ( "permitsPerSecond <= 0 or burst < 1" );
+        }
+        mTokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos ( 1 );
+        mBurst = burst;
+        mTokens = burst;
+        mRefilledAt = System.nanoTime ();
+        mPausedUntil = mRefilledAt;
+
+        Lane[] lanes = Lane.values ();
+        mWaiting = new ArrayList <> ( lanes.length );
+        mWaitTimes = new PipelineMetrics.Histogram[lanes.length];
+        mQueued = new PipelineMetrics.Gauge[lanes.length];
+        for (Lane lane : lanes) {
+            String name = lane.name ().toLowerCase ( Locale.US );
+            mWaiting.add ( new ArrayDeque <> () );
+            mWaitTimes[lane.ordinal ()] = metrics.histogram ( WAIT_PREFIX + name );
+            mQueued[lane.ordinal ()] = metrics.gauge ( QUEUED_PREFIX + name );
+        }
+        mRateLimited = metrics.counter ( RATE_LIMITED );
+    }
+
+    /**
+     * Returns the lane of the requests sent by the calling thread.
+     */
+    static Lane currentLane() {
+        return CURRENT_LANE.get ();
+    }
+
+    /**
+     * Sends the requests of the calling thread in the given lane, and returns the previous
+     * lane so the caller can restore it in a finally block. Work handed to other threads
+     * takes the lane along, see {@link SectionFanOut}.
+     */
+    static Lane enterLane(Lane lane) {
+        Lane previous = CURRENT_LANE.get ();
+        CURRENT_LANE.set ( lane );
+        return previous;
+    }
+
+    /**
+     * Blocks until a request may be sent in the lane of the calling thread.
+     */
+    void acquire() throws InterruptedException {
+        acquire ( currentLane () );
+    }
+
+    /**
+     * Blocks until a request may be sent in the given lane.
+     */
+    void acquire(Lane lane) throws InterruptedException {
+        long start = System.nanoTime ();
+        Object ticket = new Object ();
+        ArrayDeque <Object> waiting = mWaiting.get ( lane.ordinal () );
+        mLock.lock ();
+        try {
+            waiting.add ( ticket );
+            mQueued[lane.ordinal ()].add ( 1 );
+            try {
+                while (true) {
+                    if (!isNext ( lane, ticket )) {
+                        mChanged.await ();
+                        continue;
+                    }
+                    long now = System.nanoTime ();
+                    refill ( now );
+                    if (now - mPausedUntil < 0) {
+                        mChanged.awaitNanos ( mPausedUntil - now );
+                    } else if (mTokens >= 1) {
+                        mTokens -= 1;
+                        break;
+                    } else {
+                        mChanged.awaitNanos ( (long) Math.ceil ( (1 - mTokens) / mTokensPerNano ) );
+                    }
+                }
+            } finally {
+                waiting.remove ( ticket );
+                mQueued[lane.ordinal ()].add ( -1 );
+                // The next caller in line may go now
+                mChanged.signalAll ();
+            }
+        } finally {
+            mLock.unlock ();
+        }
+        mWaitTimes[lane.ordinal ()].recordSince ( start );
+    }
+
+    /**
+     * Empties the bucket and holds every request for the given time, after a 429 response.
+     */
+    void onRateLimited(long retryAfterMillis) {
+        mRateLimited.increment ();
+        mLock.lock ();
+        try {
+            long now = System.nanoTime ();
+            long until = now + TimeUnit.MILLISECONDS.toNanos ( Math.max ( 0, retryAfterMillis ) );
+            mTokens = 0;
+            mRefilledAt = now;
+            if (until - mPausedUntil > 0) {
+                mPausedUntil = until;
+            }
+            mChanged.signalAll ();
+        } finally {
+            mLock.unlock ();
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting in the lane.
+     */
+    int getQueueDepth(Lane lane) {
+        mLock.lock ();
+        try {
+            return mWaiting.get ( lane.ordinal () ).size ();
+        } finally {
+            mLock.unlock ();
+        }
+    }
+
+    /**
+     * Returns how long to wait after a 429 response: the Retry-After header in seconds or as
+     * an HTTP date, or the default if it is missing or cannot be read.
+     */
+    static long retryAfterMillis(String retryAfter, long nowMillis, long defaultMillis) {
+        if (retryAfter == null) {
+            return defaultMillis;
+        }
+        retryAfter = retryAfter.trim ();
+        try {
+            return Math.max ( 0, Long.parseLong ( retryAfter ) * 1000 );
+        } catch (NumberFormatException e) {
+            // Not seconds, try a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat ( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+        format.setTimeZone ( TimeZone.getTimeZone ( "GMT" ) );
+        try {
+            return Math.max ( 0, format.parse ( retryAfter ).getTime () - nowMillis );
+        } catch (ParseException e) {
+            return defaultMillis;
+        }
+    }
+
+    /**
+     * Returns true if the ticket is first in line: the head of the most important lane
+     * with anyone waiting.
+     */
+    private boolean isNext(Lane lane, Object ticket) {
+        for (ArrayDeque <Object> waiting : mWaiting) {
+            if (!waiting.isEmpty ()) {
+                return waiting == mWaiting.get ( lane.ordinal () ) && waiting.peekFirst () == ticket;
+            }
+        }
+        return false;
+    }
+
+    private void refill(long now) {
+        mTokens = Math.min ( mBurst, mTokens + (now - mRefilledAt) * mTokensPerNano );
+        mRefilledAt = now;
+    }
+}
@@ -0,0 +1,299 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over the titles, sections and authors of the articles received,
+ * so the search box finds articles without a request.
+ * <p>
+ * Text is split into lower case words of letters and digits. Every word of a query is
+ * matched as a prefix, so "pol ele" finds "Polish elections", and an article must match all
+ * of them. The words are kept sorted, so the words starting with a prefix are one range of
+ * the map, and every word has the ids of its articles in the order they were added.
+ * <p>
+ * Articles are added as they are decoded. An article that is received again with the same
+ * contents is skipped; one whose title, section or author changed replaces the old entry,
+ * which stays in the postings but is never returned. The index is bounded: once its
+ * entries, replaced ones included, are half as many again as {@code maxArticles}, it is
+ * built again from the newest {@code maxArticles}. Safe for use from several threads.
+ */
+final class SearchIndex {
+
+    /**
+     * As many articles as the store keeps of ten feeds.
+     */
+    static final int DEFAULT_MAX_ARTICLES = 5000;
+
+    /**
+     * Stored articles added to the index under the lock at once, so a search typed during
+     * the seed waits for one batch only.
+     */
+    private static final int SEED_BATCH = 200;
+
+    private static SearchIndex sDefault;
+
+    /**
+     * Compares by publication date, oldest first.
+     */
+    private static final Comparator <Article> BY_DATE = new Comparator <Article> () {
+        @Override
+        public int compare(Article first, Article second) {
+            long a = first.getPublishedMillis ();
+            long b = second.getPublishedMillis ();
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    };
+
+    /**
+     * The articles by document id, in the order they were added.
+     */
+    private final List <Article> mArticles = new ArrayList <> ();
+
+    private final Map <String, Integer> mDocsByUrl = new HashMap <> ();
+
+    /**
+     * Documents replaced by a newer version of the same article.
+     */
+    private final BitSet mReplaced = new BitSet ();
+
+    private final TreeMap <String, Postings> mTerms = new TreeMap <> ();
+
+    private final StringBuilder mScratch = new StringBuilder ();
+
+    private final int mMaxArticles;
+
+    private boolean mSeeded;
+
+    /**
+     * The ids of the documents containing a word, ascending.
+     */
+    private static final class Postings {
+        private int[] mDocs = new int[2];
+        private int mSize;
+
+        void add(int doc) {
+            // The words of one document are added together, so a repeated word comes last
+            if (mSize > 0 && mDocs[mSize - 1] == doc) {
+                return;
+            }
+            if (mSize == mDocs.length) {
+                mDocs = Arrays.copyOf ( mDocs, mSize * 2 );
+            }
+            mDocs[mSize++] = doc;
+        }
+
+        void addTo(BitSet docs) {
+            for (int i = 0; i < mSize; i++) {
+                docs.set ( mDocs[i] );
+            }
+        }
+    }
+
+    SearchIndex() {
+        this ( DEFAULT_MAX_ARTICLES );
+    }
+
+    /**
+     * @param maxArticles how many articles can be found at most, the newest are kept
+     */
+    SearchIndex(int maxArticles) {
+        if (maxArticles <= 0) {
+            throw new IllegalArgumentException ( "maxArticles=" + maxArticles );
+        }
+        mMaxArticles = maxArticles;
+    }
+
+    /**
+     * Returns the index of the app, shared by the network code that fills it and the search box.
+     */
+    static synchronized SearchIndex getDefault() {
+        if (sDefault == null) {
+            sDefault = new SearchIndex ();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Replaces the index of the app, e.g. with an empty one in tests, and returns the index
+     * it replaced.
+     */
+    static synchronized SearchIndex setDefault(SearchIndex index) {
+        SearchIndex previous = sDefault;
+        sDefault = index;
+        return previous;
+    }
+
+    /**
+     * Adds the articles, or updates them if they are already indexed.
+     */
+    synchronized void addAll(List <Article> articles) {
+        for (int i = 0; i < articles.size (); i++) {
+            add ( articles.get ( i ), true );
+        }
+        trim ();
+    }
+
+    /**
+     * Adds the stored articles once, so articles received in earlier runs can be found too.
+     * The lock is taken for one batch at a time. A stored article never replaces one that was
+     * received since, which is at least as new. Must not be called on the main thread.
+     */
+    void seed(List <Article> stored) {
+        for (int start = 0; start < stored.size (); start += SEED_BATCH) {
+            List <Article> batch = stored.subList ( start, Math.min ( stored.size (), start + SEED_BATCH ) );
+            synchronized (this) {
+                for (int i = 0; i < batch.size (); i++) {
+                    add ( batch.get ( i ), false );
+                }
+                trim ();
+            }
+        }
+        synchronized (this) {
+            mSeeded = true;
+        }
+    }
+
+    synchronized boolean isSeeded() {
+        return mSeeded;
+    }
+
+    /**
+     * Returns the number of articles that can be found.
+     */
+    synchronized int size() {
+        return mArticles.size () - mReplaced.cardinality ();
+    }
+
+    /**
+     * Returns the newest articles matching every word of the query as a prefix, newest first.
+     * A query without words matches nothing.
+     */
+    synchronized List <Article> search(String query, int limit) {
+        List <String> words = new ArrayList <> ();
+        tokenize ( query, words );
+        if (words.isEmpty () || limit <= 0) {
+            return new ArrayList <> ();
+        }
+
+        BitSet matches = null;
+        for (String word : words) {
+            BitSet docs = new BitSet ( mArticles.size () );
+            for (Postings postings : mTerms.subMap ( word, true, word + Character.MAX_VALUE, true ).values ()) {
+                postings.addTo ( docs );
+            }
+            if (matches == null) {
+                matches = docs;
+            } else {
+                matches.and ( docs );
+            }
+            if (matches.isEmpty ()) {
+                return new ArrayList <> ();
+            }
+        }
+        matches.andNot ( mReplaced );
+
+        // Keep the newest matches, the oldest of them at the head
+        PriorityQueue <Article> newest = new PriorityQueue <> ( limit + 1, BY_DATE );
+        for (int doc = matches.nextSetBit ( 0 ); doc >= 0; doc = matches.nextSetBit ( doc + 1 )) {
+            Article article = mArticles.get ( doc );
+            if (newest.size () < limit) {
+                newest.add ( article );
+            } else if (BY_DATE.compare ( article, newest.peek () ) > 0) {
+                newest.poll ();
+                newest.add ( article );
+            }
+        }
+        List <Article> result = new ArrayList <> ( newest.size () );
+        while (!newest.isEmpty ()) {
+            result.add ( newest.poll () );
+        }
+        Collections.reverse ( result );
+        return result;
+    }
+
+    /**
+     * @param replace whether an article that is already indexed is updated, or kept as it is
+     */
+    private void add(Article article, boolean replace) {
+        String url = article.getmUrl ();
+        Integer previous = mDocsByUrl.get ( url );
+        if (previous != null) {
+            if (!replace || mArticles.get ( previous ).hasSameContents ( article )) {
+                return;
+            }
+            mReplaced.set ( previous );
+        }
+        int doc = mArticles.size ();
+        mArticles.add ( article );
+        mDocsByUrl.put ( url, doc );
+
+        List <String> words = new ArrayList <> ();
+        tokenize ( article.getTitleOfArticle (), words );
+        tokenize ( article.getSection (), words );
+        if (!ArticleJsonDecoder.AUTHOR_UNAVAILABLE.equals ( article.getAuthor () )) {
+            tokenize ( article.getAuthor (), words );
+        }
+        for (String word : words) {
+            Postings postings = mTerms.get ( word );
+            if (postings == null) {
+                postings = new Postings ();
+                mTerms.put ( word, postings );
+            }
+            postings.add ( doc );
+        }
+    }
+
+    /**
+     * Builds the index again from the newest articles that can be found, once the entries
+     * are half as many again as the limit.
+     */
+    private void trim() {
+        if (mArticles.size () <= mMaxArticles + mMaxArticles / 2) {
+            return;
+        }
+        List <Article> live = new ArrayList <> ( mArticles.size () - mReplaced.cardinality () );
+        for (int doc = mReplaced.nextClearBit ( 0 ); doc < mArticles.size (); doc = mReplaced.nextClearBit ( doc + 1 )) {
+            live.add ( mArticles.get ( doc ) );
+        }
+        if (live.size () > mMaxArticles) {
+            Collections.sort ( live, BY_DATE );
+            live = live.subList ( live.size () - mMaxArticles, live.size () );
+        }
+        mArticles.clear ();
+        mDocsByUrl.clear ();
+        mReplaced.clear ();
+        mTerms.clear ();
+        for (int i = 0; i < live.size (); i++) {
+            add ( live.get ( i ), true );
+        }
+    }
+
+    /**
+     * Adds the lower case words of letters and digits of the text.
+     */
+    private void tokenize(String text, List <String> words) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder word = mScratch;
+        word.setLength ( 0 );
+        for (int i = 0; i <= text.length (); i++) {
+            char c = i < text.length () ? text.charAt ( i ) : ' ';
+            if (Character.isLetterOrDigit ( c )) {
+                word.append ( Character.toLowerCase ( c ) );
+            } else if (word.length () > 0) {
+                words.add ( word.toString () );
+                word.setLength ( 0 );
+            }
+        }
+    }
+}
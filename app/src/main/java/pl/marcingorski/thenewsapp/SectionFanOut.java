@@ -0,0 +1,296 @@
+package pl.marcingorski.thenewsapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches one request per section at the same time and merges the results by publication date.
+ * <p>
+ * Each section list is already sorted newest first, so the lists are combined with a k-way
+ * merge instead of sorting the whole feed again. The merged list of the sections received so
+ * far is reported after every section, so the first section to arrive can be shown at once.
+ * The requests may also be the queries of different {@link FeedProvider}s, each with its own
+ * timeout after which the feed is shown without it.
+ */
+final class SectionFanOut {
+
+    private static final String LOG_TAG = SectionFanOut.class.getSimpleName ();
+
+    /**
+     * Fetches the articles of one request. Returns null if the request failed.
+     */
+    interface Fetcher {
+        List <Article> fetch(String url);
+    }
+
+    /**
+     * Receives the merged articles of the sections received so far.
+     * Called on the thread that called {@link #fetchAll(List, Fetcher, ProgressListener)}.
+     */
+    interface ProgressListener {
+        void onProgress(List <Article> merged, int completed, int total);
+    }
+
+    /**
+     * How many section requests run at the same time.
+     */
+    private static final int MAX_PARALLEL_REQUESTS = 3;
+
+    /**
+     * How many section requests may wait for a thread, enough for a feed and a page load
+     * of every section.
+     */
+    private static final int MAX_QUEUED_REQUESTS = 16;
+
+    /**
+     * Newest first, by publication date.
+     */
+    static final Comparator <Article> NEWEST_FIRST = new Comparator <Article> () {
+        @Override
+        public int compare(Article a, Article b) {
+            return PublicationDates.compareNewestFirst ( a.getPublishedMillis (), b.getPublishedMillis () );
+        }
+    };
+
+    /**
+     * Counts the requests that were left out because they ran out of time
+     */
+    static final String TIMEOUTS_COUNTER = "fan_out_timeouts";
+    private static final PipelineMetrics.Counter TIMEOUTS = PipelineMetrics.getDefault ().counter ( TIMEOUTS_COUNTER );
+
+    private static SectionFanOut sDefault;
+
+    private final ExecutorService mExecutor;
+
+    SectionFanOut(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the app wide instance with a bounded pool of request threads.
+     */
+    static synchronized SectionFanOut getDefault() {
+        if (sDefault == null) {
+            sDefault = new SectionFanOut ( FetchEngine.newPool ( "section", MAX_PARALLEL_REQUESTS, MAX_QUEUED_REQUESTS ) );
+        }
+        return sDefault;
+    }
+
+    /**
+     * Runs the requests in parallel and blocks until all of them finished.
+     * Returns the merged articles, or null if every request failed.
+     *
+     * @param listener may be null
+     */
+    List <Article> fetchAll(List <String> urls, Fetcher fetcher, ProgressListener listener) {
+        return fetchAll ( urls, fetcher, listener, null );
+    }
+
+    /**
+     * Runs the requests in parallel and blocks until each of them finished or ran out of time.
+     * A request that takes longer than its timeout is cancelled and counts as failed, so the
+     * listener and the result never wait for a slow source longer than that. So does a request
+     * that threw or found no thread to run on.
+     * Returns the merged articles, or null if every request failed.
+     *
+     * @param listener       may be null
+     * @param timeoutsMillis the timeout of every request in the order of the URLs, 0 for none;
+     *                       null if no request has one
+     */
+    List <Article> fetchAll(List <String> urls, final Fetcher fetcher, ProgressListener listener,
+                            long[] timeoutsMillis) {
+        CompletionService <List <Article>> completion = new ExecutorCompletionService <> ( mExecutor );
+        List <Future <List <Article>>> futures = new ArrayList <> ( urls.size () );
+        // The requests are as important as the load they belong to
+        final RequestScheduler.Lane lane = RequestScheduler.currentLane ();
+        // Requests that finished, were rejected or ran out of time
+        boolean[] over = new boolean[urls.size ()];
+        int completed = 0;
+        for (int i = 0; i < urls.size (); i++) {
+            final String url = urls.get ( i );
+            try {
+                futures.add ( completion.submit ( new Callable <List <Article>> () {
+                    @Override
+                    public List <Article> call() {
+                        RequestScheduler.Lane previous = RequestScheduler.enterLane ( lane );
+                        try {
+                            return fetcher.fetch ( url );
+                        } finally {
+                            RequestScheduler.enterLane ( previous );
+                        }
+                    }
+                } ) );
+            } catch (RejectedExecutionException e) {
+                Log.w ( LOG_TAG, "Request rejected: " + url );
+                futures.add ( null );
+                over[i] = true;
+                completed++;
+            }
+        }
+
+        long start = System.nanoTime ();
+        long[] deadlines = new long[urls.size ()];
+        for (int i = 0; i < deadlines.length; i++) {
+            long timeout = timeoutsMillis == null ? 0 : timeoutsMillis[i];
+            deadlines[i] = timeout > 0 ? start + TimeUnit.MILLISECONDS.toNanos ( timeout ) : Long.MAX_VALUE;
+        }
+
+        List <List <Article>> received = new ArrayList <> ( urls.size () );
+        List <Article> merged = null;
+        try {
+            while (completed < urls.size ()) {
+                Future <List <Article>> next = nextCompleted ( completion, deadlines, over );
+                if (next == null) {
+                    // Out of time, the ones still running are left out
+                    completed += expire ( futures, deadlines, over );
+                    if (merged != null && listener != null) {
+                        listener.onProgress ( merged, completed, urls.size () );
+                    }
+                    continue;
+                }
+                int index = futures.indexOf ( next );
+                if (over[index]) {
+                    // Cancelled when it ran out of time, already counted
+                    continue;
+                }
+                over[index] = true;
+                completed++;
+                List <Article> section = result ( next, urls.get ( index ) );
+                if (section == null) {
+                    continue;
+                }
+                received.add ( section );
+                merged = merge ( received );
+                if (listener != null) {
+                    listener.onProgress ( merged, completed, urls.size () );
+                }
+            }
+        } catch (InterruptedException e) {
+            // The load was cancelled, stop the requests that are still running
+            Thread.currentThread ().interrupt ();
+            cancelAll ( futures );
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the result of a completed request, or null if it failed or threw.
+     */
+    private static List <Article> result(Future <List <Article>> future, String url) throws InterruptedException {
+        try {
+            return future.get ();
+        } catch (ExecutionException e) {
+            // Fetchers report failures with null, a bug in one is a failed request, not a failed load
+            Log.e ( LOG_TAG, "Request failed: " + url, e.getCause () );
+            return null;
+        }
+    }
+
+    /**
+     * Waits for the next request to complete, but not past the earliest deadline of the
+     * requests still running. Returns null if that deadline passed first.
+     */
+    private static Future <List <Article>> nextCompleted(CompletionService <List <Article>> completion,
+                                                         long[] deadlines, boolean[] over)
+            throws InterruptedException {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < deadlines.length; i++) {
+            if (!over[i]) {
+                earliest = Math.min ( earliest, deadlines[i] );
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return completion.take ();
+        }
+        long waitNanos = earliest - System.nanoTime ();
+        return waitNanos <= 0 ? completion.poll () : completion.poll ( waitNanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Cancels the running requests whose deadline passed and returns how many there were.
+     */
+    private static int expire(List <Future <List <Article>>> futures, long[] deadlines, boolean[] over) {
+        long now = System.nanoTime ();
+        int expired = 0;
+        for (int i = 0; i < deadlines.length; i++) {
+            if (!over[i] && deadlines[i] - now <= 0) {
+                over[i] = true;
+                futures.get ( i ).cancel ( true );
+                TIMEOUTS.increment ();
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private static void cancelAll(List <Future <List <Article>>> futures) {
+        for (Future <List <Article>> future : futures) {
+            if (future != null) {
+                future.cancel ( true );
+            }
+        }
+    }
+
+    /**
+     * K-way merge of lists that are each sorted newest first.
+     */
+    static List <Article> merge(List <List <Article>> sortedLists) {
+        int total = 0;
+        PriorityQueue <Cursor> heads = new PriorityQueue <> ( Math.max ( 1, sortedLists.size () ) );
+        for (List <Article> list : sortedLists) {
+            total += list.size ();
+            if (!list.isEmpty ()) {
+                heads.add ( new Cursor ( list ) );
+            }
+        }
+
+        List <Article> merged = new ArrayList <> ( total );
+        while (!heads.isEmpty ()) {
+            Cursor head = heads.poll ();
+            merged.add ( head.current () );
+            if (head.advance ()) {
+                heads.add ( head );
+            }
+        }
+        return Collections.unmodifiableList ( merged );
+    }
+
+    /**
+     * Position in one of the lists being merged.
+     */
+    private static final class Cursor implements Comparable <Cursor> {
+
+        private final List <Article> mList;
+        private int mIndex;
+
+        Cursor(List <Article> list) {
+            mList = list;
+        }
+
+        Article current() {
+            return mList.get ( mIndex );
+        }
+
+        boolean advance() {
+            return ++mIndex < mList.size ();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return NEWEST_FIRST.compare ( current (), other.current () );
+        }
+    }
+}
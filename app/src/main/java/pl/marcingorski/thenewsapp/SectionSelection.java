@@ -0,0 +1,128 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The sections chosen in the settings. None chosen means the feed of every section.
+ * <p>
+ * When the choice changes, the feed on screen is not reloaded: the articles of the sections
+ * that were dropped are removed from it, and only the sections that were {@link #added added}
+ * are requested and merged in. That only works between two choices of sections; going from
+ * or to every section needs a whole new feed, see {@link #isIncrementalFrom}.
+ */
+final class SectionSelection {
+
+    /**
+     * The sections that can be chosen, by API id. Also the keys of their preferences.
+     */
+    static final List <String> SECTIONS = Collections.unmodifiableList ( Arrays.asList (
+            "business", "fashion", "lifeandstyle", "science", "technology" ) );
+
+    /**
+     * Told when the chosen sections changed.
+     */
+    interface Listener {
+        void onSectionsChanged(SectionSelection previous, SectionSelection current);
+    }
+
+    private final Set <String> mSections;
+
+    SectionSelection(Collection <String> sections) {
+        mSections = Collections.unmodifiableSet ( new TreeSet <> ( sections ) );
+    }
+
+    /**
+     * Returns the chosen sections in alphabetical order, empty for every section.
+     */
+    Set <String> getSections() {
+        return mSections;
+    }
+
+    boolean isEverySection() {
+        return mSections.isEmpty ();
+    }
+
+    /**
+     * Returns the sections chosen now but not in the previous selection.
+     */
+    Set <String> added(SectionSelection previous) {
+        Set <String> added = new TreeSet <> ( mSections );
+        added.removeAll ( previous.mSections );
+        return added;
+    }
+
+    /**
+     * Returns the sections of the previous selection that are not chosen any more.
+     */
+    Set <String> removed(SectionSelection previous) {
+        return previous.added ( this );
+    }
+
+    /**
+     * Returns true if the feed of the previous selection can be turned into this one by
+     * dropping and adding sections.
+     */
+    boolean isIncrementalFrom(SectionSelection previous) {
+        return !isEverySection () && !previous.isEverySection ();
+    }
+
+    /**
+     * Returns true if the article belongs to a chosen section, by the section id it was
+     * received with. An article without one is only in every section.
+     */
+    boolean includes(Article article) {
+        if (isEverySection ()) {
+            return true;
+        }
+        String sectionId = article.getSectionId ();
+        return sectionId != null && mSections.contains ( sectionId );
+    }
+
+    /**
+     * Returns the articles of the list that belong to a chosen section, in the same order.
+     */
+    List <Article> filter(List <Article> articles) {
+        List <Article> kept = new ArrayList <> ( articles.size () );
+        for (Article article : articles) {
+            if (includes ( article )) {
+                kept.add ( article );
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the "section" query parameter, the ids joined by "|", or "" for every section.
+     */
+    String toQueryParameter() {
+        StringBuilder parameter = new StringBuilder ();
+        for (String section : mSections) {
+            if (parameter.length () > 0) {
+                parameter.append ( '|' );
+            }
+            parameter.append ( section );
+        }
+        return parameter.toString ();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SectionSelection && mSections.equals ( ((SectionSelection) other).mSections );
+    }
+
+    @Override
+    public int hashCode() {
+        return mSections.hashCode ();
+    }
+
+    @Override
+    public String toString() {
+        return isEverySection () ? "every section" : mSections.toString ();
+    }
+}
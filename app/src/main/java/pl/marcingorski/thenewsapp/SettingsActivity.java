@@ -1,11 +1,13 @@
 package pl.marcingorski.thenewsapp;
 
-import android.content.Intent;
 import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.support.v7.app.AppCompatActivity;
 
+/**
+ * The settings. Going back returns to the list, which applies the changed sections itself.
+ */
 public class SettingsActivity extends AppCompatActivity {
 
     @Override
@@ -14,14 +16,8 @@ public class SettingsActivity extends AppCompatActivity {
         setContentView ( R.layout.settings_activity );
     }
 
-    @Override
-    public void onBackPressed() {
-        super.onBackPressed ();
-        Intent mainIntent = new Intent ( SettingsActivity.this, MainActivity.class );
-        startActivity ( mainIntent );
-    }
-
-    public static class NewsappPreferenceFragment extends PreferenceFragment implements Preference.OnPreferenceChangeListener {
+    public static class NewsappPreferenceFragment extends PreferenceFragment
+            implements Preference.OnPreferenceChangeListener {
 
         @Override
         public void onCreate(Bundle savedInstanceState) {
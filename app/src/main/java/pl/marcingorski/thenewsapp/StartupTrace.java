@@ -0,0 +1,76 @@
+package pl.marcingorski.thenewsapp;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures how long it takes until the first row of the feed is drawn.
+ * <p>
+ * Two times are kept: from the start of the process to the first row it draws, and from
+ * the creation of the last {@link MainActivity} to its first row. From Android 7.0 the start
+ * of the process is known; on older versions the first activity creation is used instead,
+ * which leaves out the process and application start up.
+ */
+final class StartupTrace {
+
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName ();
+
+    private static long sFirstActivityCreatedAt = -1;
+    private static long sActivityCreatedAt = -1;
+    private static volatile long sTimeToFirstRowMillis = -1;
+    private static volatile long sActivityToFirstRowMillis = -1;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Called at the start of {@link MainActivity#onCreate}.
+     */
+    static void onActivityCreated() {
+        sActivityCreatedAt = SystemClock.elapsedRealtime ();
+        sActivityToFirstRowMillis = -1;
+        if (sFirstActivityCreatedAt < 0) {
+            sFirstActivityCreatedAt = sActivityCreatedAt;
+        }
+    }
+
+    /**
+     * Called when the first row has been laid out and is about to be drawn.
+     * Only the first call after every activity creation is recorded.
+     *
+     * @param source where the rows came from, for the log
+     */
+    static void onFirstRow(String source) {
+        if (sActivityCreatedAt < 0 || sActivityToFirstRowMillis >= 0) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime ();
+        sActivityToFirstRowMillis = now - sActivityCreatedAt;
+        if (sTimeToFirstRowMillis < 0) {
+            long processStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                    ? Process.getStartElapsedRealtime ()
+                    : sFirstActivityCreatedAt;
+            sTimeToFirstRowMillis = now - processStart;
+            Log.i ( LOG_TAG, "Time to first row: " + sTimeToFirstRowMillis + " ms after process start, from " + source );
+        }
+        Log.i ( LOG_TAG, "First row " + sActivityToFirstRowMillis + " ms after activity creation, from " + source );
+    }
+
+    /**
+     * Returns the time from process start to the first row in milliseconds,
+     * or -1 if no row was drawn yet.
+     */
+    static long getTimeToFirstRowMillis() {
+        return sTimeToFirstRowMillis;
+    }
+
+    /**
+     * Returns the time from the creation of the last activity to its first row in
+     * milliseconds, or -1 if it has not drawn a row yet.
+     */
+    static long getActivityToFirstRowMillis() {
+        return sActivityToFirstRowMillis;
+    }
+}
@@ -0,0 +1,141 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.Arrays;
+
+/**
+ * Assigns small int ids to strings that repeat across many articles, like section names,
+ * so every distinct string is kept only once.
+ * <p>
+ * Lookups take a {@link CharSequence}, so a string that is already known can be found
+ * straight from the JSON reader's buffer without creating a String for it. Strings are never
+ * removed. A dictionary of strings without a bound, like authors, is given a maximum size,
+ * and {@link #intern} stops keeping new strings once it is full; the API has a few dozen
+ * sections, so their dictionary has none.
+ * Safe for use from several threads.
+ */
+final class StringDictionary {
+
+    /**
+     * The id of null.
+     */
+    static final int NULL_ID = -1;
+
+    private final int mMaxSize;
+
+    private String[] mStrings = new String[16];
+    private int mSize;
+
+    /**
+     * Open addressing hash table of id + 1, 0 marks a free slot.
+     */
+    private int[] mTable = new int[32];
+
+    StringDictionary() {
+        this ( Integer.MAX_VALUE );
+    }
+
+    /**
+     * @param maxSize how many strings are kept at most
+     */
+    StringDictionary(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the id of the text, adding it if it is new.
+     *
+     * @throws IllegalStateException if the text is new and the dictionary is full
+     */
+    synchronized int idOf(CharSequence text) {
+        if (text == null) {
+            return NULL_ID;
+        }
+        int slot = slotOf ( text );
+        if (mTable[slot] != 0) {
+            return mTable[slot] - 1;
+        }
+        if (mSize == mMaxSize) {
+            throw new IllegalStateException ( "Dictionary of " + mMaxSize + " strings is full" );
+        }
+        return add ( slot, text );
+    }
+
+    /**
+     * Returns the kept string equal to the text, keeping the text if it is new and there is
+     * room. Once the dictionary is full, a new text is returned as a String of its own.
+     */
+    synchronized String intern(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        int slot = slotOf ( text );
+        if (mTable[slot] != 0) {
+            return mStrings[mTable[slot] - 1];
+        }
+        if (mSize == mMaxSize) {
+            return text.toString ();
+        }
+        int id = add ( slot, text );
+        return mStrings[id];
+    }
+
+    /**
+     * Returns the slot of the text in the table, or the free slot it would go into.
+     */
+    private int slotOf(CharSequence text) {
+        int mask = mTable.length - 1;
+        int slot = hash ( text ) & mask;
+        while (mTable[slot] != 0 && !mStrings[mTable[slot] - 1].contentEquals ( text )) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int add(int slot, CharSequence text) {
+        int id = mSize++;
+        if (id == mStrings.length) {
+            mStrings = Arrays.copyOf ( mStrings, id * 2 );
+        }
+        mStrings[id] = text.toString ();
+        mTable[slot] = id + 1;
+        if (mSize * 2 > mTable.length) {
+            rehash ();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the string with the given id.
+     */
+    synchronized String get(int id) {
+        return id == NULL_ID ? null : mStrings[id];
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    private void rehash() {
+        int[] table = new int[mTable.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < mSize; id++) {
+            int slot = hash ( mStrings[id] ) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        mTable = table;
+    }
+
+    /**
+     * Same as {@link String#hashCode()}, spread so the low bits used for the slot vary.
+     */
+    private static int hash(CharSequence text) {
+        int hash = 0;
+        for (int i = 0; i < text.length (); i++) {
+            hash = 31 * hash + text.charAt ( i );
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,43 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.Random;
+
+/**
+ * Delays between retries of a failed background sync.
+ * <p>
+ * The delay doubles with every failure up to a maximum. Half of it is fixed and the other
+ * half is random, so devices that failed at the same moment, e.g. because the server was
+ * down, do not all come back at the same moment.
+ */
+final class SyncBackoff {
+
+    private final long mBaseMillis;
+    private final long mMaxMillis;
+    private final Random mRandom;
+
+    /**
+     * @param baseMillis delay after the first failure, before jitter
+     * @param maxMillis  longest delay, before jitter
+     */
+    SyncBackoff(long baseMillis, long maxMillis, Random random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException ( "baseMillis=" + baseMillis + " maxMillis=" + maxMillis );
+        }
+        mBaseMillis = baseMillis;
+        mMaxMillis = maxMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Returns the delay before the next attempt after the given number of failures in a row.
+     */
+    long delayMillis(int failures) {
+        long ceiling = mBaseMillis;
+        for (int i = 1; i < failures && ceiling < mMaxMillis; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min ( ceiling, mMaxMillis );
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble () * (ceiling - half));
+    }
+}
@@ -0,0 +1,119 @@
+package pl.marcingorski.thenewsapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Refreshes the feed in the background, scheduled by {@link SyncScheduler}.
+ * <p>
+ * All chosen sections are fetched in one run by the {@link FeedUpdater}, so the next start
+ * of the app shows the current feed without a request of its own. The bodies of the newest
+ * articles are downloaded afterwards, so they can be read offline.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class SyncJobService extends JobService {
+
+    private static final String LOG_TAG = SyncJobService.class.getSimpleName ();
+
+    /**
+     * Bodies downloaded for the reader after every sync: at most this many,
+     * and no more bytes than this
+     */
+    private static final int PREFETCH_BODIES = 20;
+    private static final long PREFETCH_BODY_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * The running syncs by job id
+     */
+    private final Map <Integer, Future <?>> mTasks = new HashMap <> ();
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext ();
+        try {
+            // Not on the engine of the app, so a sync never holds up a load the user waits for
+            Future <?> task = FetchEngine.getBackground ().submit ( new Runnable () {
+                @Override
+                public void run() {
+                    boolean success = false;
+                    boolean crashed = true;
+                    try {
+                        success = sync ( context );
+                        crashed = false;
+                    } catch (RuntimeException e) {
+                        Log.e ( LOG_TAG, "Sync failed", e );
+                    } finally {
+                        synchronized (mTasks) {
+                            mTasks.remove ( params.getJobId () );
+                        }
+                        // Unless stopped by the system, which has been told what to do in onStopJob
+                        if (!Thread.currentThread ().isInterrupted ()) {
+                            if (crashed) {
+                                // Always release the job, the system retries it with its own backoff
+                                jobFinished ( params, true );
+                            } else {
+                                SyncScheduler.onSyncFinished ( context, success );
+                                jobFinished ( params, false );
+                            }
+                        }
+                    }
+                }
+            } );
+            synchronized (mTasks) {
+                mTasks.put ( params.getJobId (), task );
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Other background work is queued up
+            SyncScheduler.onSyncFinished ( context, false );
+            return false;
+        }
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Future <?> task;
+        synchronized (mTasks) {
+            task = mTasks.remove ( params.getJobId () );
+        }
+        if (task != null) {
+            task.cancel ( true );
+        }
+        // The conditions are no longer met, the next periodic run picks it up
+        return false;
+    }
+
+    /**
+     * Updates the stored feed of the chosen sections, then downloads the bodies of its newest
+     * articles for reading offline. Returns false if the request for the feed failed or only
+     * the last good responses were served.
+     * Called on a background thread.
+     */
+    static boolean sync(Context context) {
+        // Behind the loads of the app if it is open
+        RequestScheduler.Lane previousLane = RequestScheduler.enterLane ( RequestScheduler.Lane.BACKGROUND );
+        try {
+            FeedUpdater.Result update = FeedUpdater.update ( context, FeedSettings.createFeedFetcher ( context ), null );
+            if (update == null || update.stale) {
+                // Only the last good responses, the network is as good as down
+                return false;
+            }
+            BodyPrefetcher.Result result = FeedSettings.createBodyPrefetcher ( context ).prefetch (
+                    Collections. <Article>emptyList (), update.articles, PREFETCH_BODIES, PREFETCH_BODY_BYTES );
+            Log.d ( LOG_TAG, "Prefetched " + result );
+            return true;
+        } finally {
+            RequestScheduler.enterLane ( previousLane );
+        }
+    }
+}
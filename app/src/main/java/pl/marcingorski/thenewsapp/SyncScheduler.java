@@ -0,0 +1,149 @@
+package pl.marcingorski.thenewsapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Schedules the background sync of the feed with the {@link JobScheduler}.
+ * <p>
+ * A periodic job refreshes all chosen sections in one wake-up, on the interval and under
+ * the network and charging conditions chosen in the settings. After a failed sync a one-off
+ * retry job is scheduled with exponential backoff and jitter, see {@link SyncBackoff}.
+ * The JobScheduler is only available from Android 5.0, older versions have no background sync.
+ */
+final class SyncScheduler {
+
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName ();
+
+    static final int PERIODIC_JOB_ID = 1;
+    static final int RETRY_JOB_ID = 2;
+
+    /**
+     * Settings keys, the interval is in minutes and "0" turns the sync off.
+     */
+    static final String KEY_INTERVAL_MINUTES = "sync_interval";
+    static final String KEY_UNMETERED_ONLY = "sync_unmetered_only";
+    static final String KEY_CHARGING_ONLY = "sync_charging_only";
+    static final List <String> KEYS = Arrays.asList ( KEY_INTERVAL_MINUTES, KEY_UNMETERED_ONLY, KEY_CHARGING_ONLY );
+
+    private static final String DEFAULT_INTERVAL_MINUTES = "60";
+
+    /**
+     * The settings the periodic job was scheduled with, and the failures in a row.
+     */
+    private static final String KEY_SCHEDULED_CONFIG = "sync_scheduled_config";
+    private static final String KEY_FAILURES = "sync_failures";
+
+    private static final long RETRY_BASE_MILLIS = 30 * 1000;
+    private static final long RETRY_MAX_MILLIS = 60 * 60 * 1000;
+
+    private static final SyncBackoff BACKOFF = new SyncBackoff ( RETRY_BASE_MILLIS, RETRY_MAX_MILLIS, new Random () );
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Schedules, replaces or cancels the periodic sync to match the settings. Does nothing
+     * if the job is already scheduled with the current settings, because scheduling it again
+     * would restart its interval.
+     */
+    static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences ( context );
+        long intervalMinutes = intervalMinutes ( preferences );
+        String config = intervalMinutes + "/" + preferences.getBoolean ( KEY_UNMETERED_ONLY, true )
+                + "/" + preferences.getBoolean ( KEY_CHARGING_ONLY, false );
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService ( Context.JOB_SCHEDULER_SERVICE );
+        if (config.equals ( preferences.getString ( KEY_SCHEDULED_CONFIG, null ) )
+                && isPending ( scheduler, PERIODIC_JOB_ID ) == (intervalMinutes > 0)) {
+            return;
+        }
+
+        if (intervalMinutes <= 0) {
+            scheduler.cancel ( PERIODIC_JOB_ID );
+            scheduler.cancel ( RETRY_JOB_ID );
+            Log.d ( LOG_TAG, "Background sync off" );
+        } else {
+            JobInfo job = newJob ( context, PERIODIC_JOB_ID, preferences )
+                    .setPeriodic ( intervalMinutes * 60 * 1000 )
+                    .setPersisted ( true )
+                    .build ();
+            scheduler.schedule ( job );
+            Log.d ( LOG_TAG, "Background sync scheduled: " + config );
+        }
+        preferences.edit ().putString ( KEY_SCHEDULED_CONFIG, config ).apply ();
+    }
+
+    /**
+     * Called by {@link SyncJobService} after every sync. Resets the backoff after a success
+     * and schedules a retry after a failure.
+     */
+    static void onSyncFinished(Context context, boolean success) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences ( context );
+        JobScheduler scheduler = (JobScheduler) context.getSystemService ( Context.JOB_SCHEDULER_SERVICE );
+        if (success) {
+            preferences.edit ().putInt ( KEY_FAILURES, 0 ).apply ();
+            scheduler.cancel ( RETRY_JOB_ID );
+            return;
+        }
+        if (intervalMinutes ( preferences ) <= 0) {
+            // Turned off while the sync was running
+            return;
+        }
+
+        int failures = preferences.getInt ( KEY_FAILURES, 0 ) + 1;
+        preferences.edit ().putInt ( KEY_FAILURES, failures ).apply ();
+        long delayMillis = BACKOFF.delayMillis ( failures );
+        scheduler.schedule ( newJob ( context, RETRY_JOB_ID, preferences )
+                .setMinimumLatency ( delayMillis )
+                .build () );
+        Log.d ( LOG_TAG, "Sync failed " + failures + " times in a row, retrying in " + delayMillis / 1000 + " s" );
+    }
+
+    private static long intervalMinutes(SharedPreferences preferences) {
+        try {
+            return Long.parseLong ( preferences.getString ( KEY_INTERVAL_MINUTES, DEFAULT_INTERVAL_MINUTES ) );
+        } catch (NumberFormatException e) {
+            return Long.parseLong ( DEFAULT_INTERVAL_MINUTES );
+        }
+    }
+
+    /**
+     * A job for the sync service with the network and charging conditions of the settings.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static JobInfo.Builder newJob(Context context, int jobId, SharedPreferences preferences) {
+        boolean unmeteredOnly = preferences.getBoolean ( KEY_UNMETERED_ONLY, true );
+        boolean chargingOnly = preferences.getBoolean ( KEY_CHARGING_ONLY, false );
+        return new JobInfo.Builder ( jobId, new ComponentName ( context, SyncJobService.class ) )
+                .setRequiredNetworkType ( unmeteredOnly ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY )
+                .setRequiresCharging ( chargingOnly );
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isPending(JobScheduler scheduler, int jobId) {
+        for (JobInfo job : scheduler.getAllPendingJobs ()) {
+            if (job.getId () == jobId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
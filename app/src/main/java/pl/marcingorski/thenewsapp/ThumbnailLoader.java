@@ -0,0 +1,316 @@
+package pl.marcingorski.thenewsapp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Loads the thumbnails of the list rows.
+ * <p>
+ * A thumbnail is looked up in a memory cache of decoded bitmaps, then in a disk cache of
+ * the downloaded images, and only then downloaded. Images are decoded on a small pool of
+ * background threads, scaled down to the size of the view while decoding and without an
+ * alpha channel, so the memory cache holds many rows within its byte budget.
+ * <p>
+ * The request of a view is kept in its tag. Binding the view to another image or recycling
+ * it cancels the request, so rows that were flung past do not hold up the ones on screen.
+ * All methods taking a view must be called on the main thread.
+ */
+final class ThumbnailLoader {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName ();
+
+    /**
+     * Budget of the decoded bitmaps in memory, at most an eighth of the heap
+     */
+    private static final int MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Location and budget of the downloaded images
+     */
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    private static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+
+    private static final int MAX_PARALLEL_LOADS = 2;
+    private static final int MAX_QUEUED_LOADS = 32;
+
+    /**
+     * Counter and histogram names, see {@link PipelineMetrics}
+     */
+    static final String MEMORY_HITS = "thumbnail_memory_hits";
+    static final String DISK_HITS = "thumbnail_disk_hits";
+    static final String DOWNLOADS = "thumbnail_downloads";
+    static final String CANCELLED = "thumbnail_cancelled";
+    static final String LOAD = "thumbnail_load";
+
+    private static ThumbnailLoader sInstance;
+
+    private final File mDiskCacheDir;
+    private DiskResponseCache mDiskCache;
+    private final LruCache <String, Bitmap> mMemoryCache;
+    private final HttpTransport mTransport = new HttpTransport ( new ByteBufferPool ( 8 * 1024, MAX_PARALLEL_LOADS ) );
+    private final FetchEngine mEngine = new FetchEngine ( "thumbnail", MAX_PARALLEL_LOADS, MAX_QUEUED_LOADS );
+    private final Handler mMainHandler = new Handler ( Looper.getMainLooper () );
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+
+    private final PipelineMetrics.Counter mMemoryHits;
+    private final PipelineMetrics.Counter mDiskHits;
+    private final PipelineMetrics.Counter mDownloads;
+    private final PipelineMetrics.Counter mCancelled;
+    private final PipelineMetrics.Histogram mLoadTime;
+
+    /**
+     * A thumbnail being loaded for a view.
+     */
+    private final class Request implements Runnable {
+
+        final String url;
+        final ImageView view;
+        Future <?> future;
+
+        Request(String url, ImageView view) {
+            this.url = url;
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime ();
+            final Bitmap bitmap = loadInBackground ( url );
+            if (bitmap == null) {
+                return;
+            }
+            mLoadTime.recordSince ( start );
+            mMainHandler.post ( new Runnable () {
+                @Override
+                public void run() {
+                    // Only if the view still shows this article
+                    if (view.getTag () == Request.this) {
+                        view.setTag ( null );
+                        view.setImageBitmap ( bitmap );
+                    }
+                }
+            } );
+        }
+
+        void cancel() {
+            if (future != null && future.cancel ( true )) {
+                mCancelled.increment ();
+            }
+        }
+    }
+
+    private ThumbnailLoader(Context context) {
+        Resources resources = context.getResources ();
+        mTargetWidth = resources.getDimensionPixelSize ( R.dimen.thumbnail_width );
+        mTargetHeight = resources.getDimensionPixelSize ( R.dimen.thumbnail_height );
+        mDiskCacheDir = new File ( context.getCacheDir (), DISK_CACHE_DIR );
+
+        int maxBytes = (int) Math.min ( MAX_MEMORY_BYTES, Runtime.getRuntime ().maxMemory () / 8 );
+        mMemoryCache = new LruCache <String, Bitmap> ( maxBytes ) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return bitmap.getByteCount ();
+            }
+        };
+
+        PipelineMetrics metrics = PipelineMetrics.getDefault ();
+        mMemoryHits = metrics.counter ( MEMORY_HITS );
+        mDiskHits = metrics.counter ( DISK_HITS );
+        mDownloads = metrics.counter ( DOWNLOADS );
+        mCancelled = metrics.counter ( CANCELLED );
+        mLoadTime = metrics.histogram ( LOAD );
+    }
+
+    static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader ( context.getApplicationContext () );
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the thumbnail in the view, right away if it is in memory, otherwise once it is
+     * loaded. Cancels the load of the image the view was bound to before.
+     */
+    void load(String url, ImageView view) {
+        Request previous = (Request) view.getTag ();
+        if (previous != null) {
+            if (previous.url.equals ( url )) {
+                // Bound to the same article again, the load is still running
+                return;
+            }
+            previous.cancel ();
+            view.setTag ( null );
+        }
+
+        Bitmap bitmap = mMemoryCache.get ( url );
+        if (bitmap != null) {
+            mMemoryHits.increment ();
+            view.setImageBitmap ( bitmap );
+            return;
+        }
+
+        view.setImageDrawable ( null );
+        Request request = new Request ( url, view );
+        try {
+            request.future = submit ( request );
+            view.setTag ( request );
+        } catch (RejectedExecutionException e) {
+            // Flung faster than the images load, the row retries when it is bound again
+            Log.d ( LOG_TAG, "Thumbnail load rejected" );
+        }
+    }
+
+    /**
+     * Cancels the load for the view, e.g. when its row was scrolled off screen.
+     */
+    void cancel(ImageView view) {
+        Request request = (Request) view.getTag ();
+        if (request != null) {
+            request.cancel ();
+            view.setTag ( null );
+        }
+    }
+
+    private Future <?> submit(Request request) {
+        try {
+            return mEngine.submit ( request );
+        } catch (RejectedExecutionException e) {
+            // The queue may be full of rows that were cancelled
+            mEngine.purge ();
+            return mEngine.submit ( request );
+        }
+    }
+
+    /**
+     * Returns the decoded thumbnail, or null if it could not be loaded or the load was cancelled.
+     * Called on a loader thread.
+     */
+    private Bitmap loadInBackground(String url) {
+        try {
+            byte[] image = readImage ( url );
+            if (image == null || Thread.currentThread ().isInterrupted ()) {
+                return null;
+            }
+            Bitmap bitmap = decode ( image );
+            if (bitmap != null) {
+                mMemoryCache.put ( url, bitmap );
+            }
+            return bitmap;
+        } catch (InterruptedIOException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w ( LOG_TAG, "Could not load thumbnail " + url, e );
+            return null;
+        }
+    }
+
+    /**
+     * Returns the image from the disk cache, or downloads it into the cache.
+     */
+    private byte[] readImage(String url) throws IOException {
+        DiskResponseCache cache = getDiskCache ();
+        DiskResponseCache.Entry entry = cache.get ( url );
+        if (entry != null) {
+            InputStream body = cache.openBody ( entry );
+            try {
+                byte[] image = readFully ( body );
+                mDiskHits.increment ();
+                return image;
+            } catch (IOException e) {
+                // Evicted while it was read, download it again
+            } finally {
+                body.close ();
+            }
+        }
+
+        mDownloads.increment ();
+        HttpTransport.Response response = mTransport.get ( new URL ( url ) );
+        try {
+            if (response.getResponseCode () != 200) {
+                Log.w ( LOG_TAG, "Thumbnail response " + response.getResponseCode () + " for " + url );
+                return null;
+            }
+            // Images at a URL never change, so they are kept without validators
+            DiskResponseCache.Recorder recorder = cache.recordImmutable ( url, response.body () );
+            if (recorder == null) {
+                return readFully ( response.body () );
+            }
+            try {
+                byte[] image = readFully ( recorder );
+                recorder.commit ();
+                return image;
+            } catch (IOException e) {
+                recorder.abort ();
+                throw e;
+            }
+        } finally {
+            response.close ();
+        }
+    }
+
+    /**
+     * Decodes the image scaled down to cover the view, see {@link Downsampler}.
+     */
+    private Bitmap decode(byte[] image) {
+        BitmapFactory.Options options = new BitmapFactory.Options ();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray ( image, 0, image.length, options );
+
+        int sampleSize = Downsampler.sampleSize ( options.outWidth, options.outHeight, mTargetWidth, mTargetHeight );
+        int sampledWidth = options.outWidth / sampleSize;
+        int sampledHeight = options.outHeight / sampleSize;
+        float scale = Downsampler.scale ( sampledWidth, sampledHeight, mTargetWidth, mTargetHeight );
+
+        options = new BitmapFactory.Options ();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        if (scale < 1f) {
+            // Lets the decoder scale the rest of the way instead of a second bitmap
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = Math.round ( sampledWidth * scale );
+        }
+        return BitmapFactory.decodeByteArray ( image, 0, image.length, options );
+    }
+
+    /**
+     * The disk cache reads its index from disk, so it is created on a loader thread.
+     */
+    private synchronized DiskResponseCache getDiskCache() {
+        if (mDiskCache == null) {
+            mDiskCache = new DiskResponseCache ( mDiskCacheDir, DISK_CACHE_BYTES );
+        }
+        return mDiskCache;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream ( 32 * 1024 );
+        byte[] buffer = new byte[8 * 1024];
+        int count;
+        while ((count = in.read ( buffer )) != -1) {
+            if (Thread.currentThread ().isInterrupted ()) {
+                throw new InterruptedIOException ( "Cancelled" );
+            }
+            out.write ( buffer, 0, count );
+        }
+        return out.toByteArray ();
+    }
+}
@@ -0,0 +1,84 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes a recorded Guardian search response with {@link ArticleJsonDecoder}.
+ */
+public class ArticleJsonDecoderTest {
+
+    private static List <Article> decodeRecordedPayload() throws IOException {
+        InputStream inputStream = ArticleJsonDecoderTest.class.getResourceAsStream ( "/guardian_search.json" );
+        try {
+            return ArticleJsonDecoder.decode ( inputStream );
+        } finally {
+            inputStream.close ();
+        }
+    }
+
+    @Test
+    public void decode_readsFieldsOfEveryResult() throws IOException {
+        List <Article> articles = decodeRecordedPayload ();
+
+        // The last result has no title and is dropped
+        assertEquals ( 3, articles.size () );
+
+        Article first = articles.get ( 0 );
+        assertEquals ( "Juncker: EU won’t ‘meddle’ in Italy’s affairs", first.getTitleOfArticle () );
+        assertEquals ( "Business", first.getSection () );
+        assertEquals ( "business", first.getSectionId () );
+        assertEquals ( "Larry Elliott", first.getAuthor () );
+        // 2018-06-02T19:25:26Z
+        assertEquals ( 1527967526000L, first.getPublishedMillis () );
+        assertEquals ( "https://www.theguardian.com/business/2018/jun/02/juncker-eu-italy", first.getmUrl () );
+    }
+
+    @Test
+    public void decode_onlyShowsSingleContributor() throws IOException {
+        List <Article> articles = decodeRecordedPayload ();
+
+        assertEquals ( "Rover finds \"building blocks\" of life on Mars!", articles.get ( 1 ).getTitleOfArticle () );
+        assertEquals ( ArticleJsonDecoder.AUTHOR_UNAVAILABLE, articles.get ( 1 ).getAuthor () );
+        assertEquals ( ArticleJsonDecoder.AUTHOR_UNAVAILABLE, articles.get ( 2 ).getAuthor () );
+    }
+
+    @Test
+    public void decode_readsTheThumbnailOfTheRequestedFields() throws IOException {
+        String json = "{\"response\":{\"results\":["
+                + "{\"webTitle\":\"a\",\"webUrl\":\"https://host/a\","
+                + "\"fields\":{\"headline\":\"A\",\"thumbnail\":\"https://media.guim.co.uk/a/500.jpg\"}},"
+                + "{\"webTitle\":\"b\",\"webUrl\":\"https://host/b\",\"fields\":{}}]}}";
+        List <Article> articles = ArticleJsonDecoder.decode (
+                new ByteArrayInputStream ( json.getBytes ( Charset.forName ( "UTF-8" ) ) ) );
+
+        assertEquals ( "https://media.guim.co.uk/a/500.jpg", articles.get ( 0 ).getThumbnailUrl () );
+        assertNull ( articles.get ( 1 ).getThumbnailUrl () );
+    }
+
+    @Test
+    public void decodeBody_readsTheBodyOfASingleItem() throws IOException {
+        String json = "{\"response\":{\"status\":\"ok\",\"total\":1,"
+                + "\"content\":{\"id\":\"world/a\",\"tags\":[{\"body\":\"tag\"}],"
+                + "\"fields\":{\"headline\":\"A\",\"body\":\"<p>First</p><p>Second</p>\"}}}}";
+        assertEquals ( "<p>First</p><p>Second</p>", ArticleJsonDecoder.decodeBody (
+                new ByteArrayInputStream ( json.getBytes ( Charset.forName ( "UTF-8" ) ) ) ) );
+
+        String withoutBody = "{\"response\":{\"content\":{\"fields\":{\"headline\":\"A\"}}}}";
+        assertNull ( ArticleJsonDecoder.decodeBody (
+                new ByteArrayInputStream ( withoutBody.getBytes ( Charset.forName ( "UTF-8" ) ) ) ) );
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_truncatedResponseThrows() throws IOException {
+        byte[] truncated = "{\"response\":{\"results\":[{\"webTitle\":\"a".getBytes ( Charset.forName ( "UTF-8" ) );
+        ArticleJsonDecoder.decode ( new ByteArrayInputStream ( truncated ) );
+    }
+}
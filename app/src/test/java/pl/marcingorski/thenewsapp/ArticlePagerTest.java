@@ -0,0 +1,174 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ArticlePagerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final Executor DIRECT = new Executor () {
+        @Override
+        public void execute(Runnable command) {
+            command.run ();
+        }
+    };
+
+    private final List <Integer> requestedPages = new ArrayList <> ();
+    private List <Article> window;
+    private ArticlePager pager;
+
+    @Before
+    public void setUp() {
+        pager = new ArticlePager ( PAGE_SIZE, 3, 2,
+                new ArticlePager.PageFetcher () {
+                    @Override
+                    public List <Article> fetchPage(int page) {
+                        requestedPages.add ( page );
+                        // Three pages in total, the last one is short
+                        return page ( page, page == 3 ? 4 : PAGE_SIZE );
+                    }
+                }, DIRECT, DIRECT, new ArticlePager.Listener () {
+                    @Override
+                    public void onWindowChanged(List <Article> articles) {
+                        window = articles;
+                    }
+                } );
+    }
+
+    @Test
+    public void nextPageIsPrefetchedNearTheEnd() {
+        pager.reset ( page ( 1, PAGE_SIZE ) );
+
+        pager.onScroll ( 0, 5, 10 );
+        assertTrue ( requestedPages.isEmpty () );
+
+        pager.onScroll ( 2, 5, 10 );
+        assertEquals ( 1, requestedPages.size () );
+        assertEquals ( 20, window.size () );
+        assertEquals ( "p2-0", window.get ( 10 ).getmUrl () );
+    }
+
+    @Test
+    public void windowDropsPagesBehindAndRefetchesThem() {
+        pager.reset ( page ( 1, PAGE_SIZE ) );
+        pager.onScroll ( 5, 5, 10 );
+        pager.onScroll ( 15, 5, 20 );
+
+        // Only two pages are kept, page 1 was dropped from the start
+        assertEquals ( 14, window.size () );
+        assertEquals ( "p2-0", window.get ( 0 ).getmUrl () );
+        assertEquals ( 3, pager.getLastPage () );
+
+        // The last page was short, so there is nothing after it
+        pager.onScroll ( 10, 4, 14 );
+        assertEquals ( 2, requestedPages.size () );
+
+        // Scrolling back up fetches page 1 again and drops page 3
+        pager.onScroll ( 1, 5, 14 );
+        assertEquals ( 1, pager.getFirstPage () );
+        assertEquals ( 2, pager.getLastPage () );
+    }
+
+    @Test
+    public void resultsFromBeforeResetAreIgnored() {
+        final List <Runnable> pending = new ArrayList <> ();
+        ArticlePager deferred = new ArticlePager ( PAGE_SIZE, 3, 2,
+                new ArticlePager.PageFetcher () {
+                    @Override
+                    public List <Article> fetchPage(int page) {
+                        return page ( 2, PAGE_SIZE );
+                    }
+                }, new Executor () {
+                    @Override
+                    public void execute(Runnable command) {
+                        pending.add ( command );
+                    }
+                }, DIRECT, new ArticlePager.Listener () {
+                    @Override
+                    public void onWindowChanged(List <Article> articles) {
+                        window = articles;
+                    }
+                } );
+        deferred.reset ( page ( 1, PAGE_SIZE ) );
+        deferred.onScroll ( 5, 5, 10 );
+        deferred.reset ( page ( 1, PAGE_SIZE ) );
+        pending.get ( 0 ).run ();
+
+        assertEquals ( 10, window.size () );
+    }
+
+    @Test
+    public void rejectedLoadIsTriedAgainOnTheNextScroll() {
+        final boolean[] busy = {true};
+        ArticlePager rejecting = new ArticlePager ( PAGE_SIZE, 3, 2,
+                new ArticlePager.PageFetcher () {
+                    @Override
+                    public List <Article> fetchPage(int page) {
+                        return page ( page, PAGE_SIZE );
+                    }
+                }, new Executor () {
+                    @Override
+                    public void execute(Runnable command) {
+                        if (busy[0]) {
+                            throw new RejectedExecutionException ();
+                        }
+                        command.run ();
+                    }
+                }, DIRECT, new ArticlePager.Listener () {
+                    @Override
+                    public void onWindowChanged(List <Article> articles) {
+                        window = articles;
+                    }
+                } );
+        rejecting.reset ( page ( 1, PAGE_SIZE ) );
+        rejecting.onScroll ( 5, 5, 10 );
+        assertFalse ( rejecting.isLoading () );
+
+        busy[0] = false;
+        rejecting.onScroll ( 5, 5, 10 );
+        assertEquals ( 20, window.size () );
+    }
+
+    @Test
+    public void articlesThatMovedToTheNextPageAreShownOnce() {
+        ArticlePager overlapping = new ArticlePager ( PAGE_SIZE, 3, 2,
+                new ArticlePager.PageFetcher () {
+                    @Override
+                    public List <Article> fetchPage(int page) {
+                        // Two new articles pushed the last two of page 1 onto page 2
+                        List <Article> articles = page ( 2, PAGE_SIZE );
+                        List <Article> first = page ( 1, PAGE_SIZE );
+                        articles.set ( 0, first.get ( 8 ) );
+                        articles.set ( 1, first.get ( 9 ) );
+                        return articles;
+                    }
+                }, DIRECT, DIRECT, new ArticlePager.Listener () {
+                    @Override
+                    public void onWindowChanged(List <Article> articles) {
+                        window = articles;
+                    }
+                } );
+        overlapping.reset ( page ( 1, PAGE_SIZE ) );
+        overlapping.onScroll ( 5, 5, 10 );
+
+        assertEquals ( 18, window.size () );
+        assertEquals ( "p1-9", window.get ( 9 ).getmUrl () );
+        assertEquals ( "p2-2", window.get ( 10 ).getmUrl () );
+    }
+
+    private static List <Article> page(int page, int size) {
+        List <Article> articles = new ArrayList <> ();
+        for (int i = 0; i < size; i++) {
+            articles.add ( new Article ( "Title " + i, "Section", "Author", "p" + page + "-" + i, PublicationDates.UNKNOWN ) );
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,65 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the compact {@link Article}. Its allocation per article is measured by
+ * {@code ArticleBenchmark} in the benchmarks module, and the heap of a feed of 10k articles
+ * is compared with the plain model by {@code ArticleFootprintBenchmark}.
+ */
+public class ArticleTest {
+
+    @Test
+    public void getters_returnWhatWasPassedIn() {
+        String url = "https://www.theguardian.com/world/2018/jun/01/some-article";
+        Article article = new Article ( "Title", "World news", "Jane Doe", url, 0 );
+
+        assertEquals ( "Title", article.getTitleOfArticle () );
+        assertEquals ( "World news", article.getSection () );
+        assertEquals ( "Jane Doe", article.getAuthor () );
+        assertEquals ( url, article.getmUrl () );
+        assertEquals ( "no-slash", new Article ( "T", "S", "A", "no-slash", 0 ).getmUrl () );
+    }
+
+    @Test
+    public void hasSameUrlAndContents() {
+        Article article = new Article ( "Title", "Sport", "Jane Doe", "https://host/sport/a", 1000 );
+        Article same = new Article ( new String ( "Title" ), "Sport", "Jane Doe", new String ( "https://host/sport/a" ), 1000 );
+        Article edited = new Article ( "New title", "Sport", "Jane Doe", "https://host/sport/a", 1000 );
+        Article other = new Article ( "Title", "Sport", "Jane Doe", "https://host/sport/b", 1000 );
+
+        assertTrue ( article.hasSameUrl ( same ) );
+        assertTrue ( article.hasSameContents ( same ) );
+        assertTrue ( article.hasSameUrl ( edited ) );
+        assertFalse ( article.hasSameContents ( edited ) );
+        assertFalse ( article.hasSameUrl ( other ) );
+    }
+
+    @Test
+    public void sectionsAndAuthorsAreSharedBetweenArticles() {
+        // Every article gets its own copies, as the decoder would create them
+        Article first = new Article ( "First", copy ( "Culture" ), copy ( "Jane Doe" ), "https://host/culture/a", 0 );
+        Article second = new Article ( "Second", copy ( "Culture" ), copy ( "Jane Doe" ), "https://host/culture/b", 0 );
+
+        assertSame ( first.getSection (), second.getSection () );
+        assertSame ( first.getAuthor (), second.getAuthor () );
+        assertTrue ( first.hasSameContents ( new Article ( "First", copy ( "Culture" ), copy ( "Jane Doe" ),
+                "https://host/culture/a", 0 ) ) );
+        assertFalse ( first.hasSameContents ( new Article ( "First", "Culture", "John Doe",
+                "https://host/culture/a", 0 ) ) );
+        assertFalse ( first.hasSameContents ( new Article ( "First", "Culture", null, "https://host/culture/a", 0 ) ) );
+    }
+
+    @Test
+    public void getmUrl_doesNotCreateAStringOnEveryCall() {
+        Article article = new Article ( "Title", "Sport", "Jane Doe", "https://host/sport/a", 0 );
+
+        assertSame ( article.getmUrl (), article.getmUrl () );
+    }
+
+    private static String copy(String text) {
+        return new String ( text.toCharArray () );
+    }
+}
@@ -0,0 +1,132 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BodyPrefetcherTest {
+
+    private File directory;
+    private BodyStore store;
+    private final List <String> fetched = new ArrayList <> ();
+    private final Set <String> failing = new HashSet <> ();
+
+    private final BodyPrefetcher.BodySource source = new BodyPrefetcher.BodySource () {
+        @Override
+        public BodyPrefetcher.Download fetch(String articleUrl) {
+            fetched.add ( articleUrl );
+            if (failing.contains ( articleUrl )) {
+                return null;
+            }
+            return new BodyPrefetcher.Download ( "<p>" + articleUrl + "</p>", 100 );
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile ( "bodies", "" );
+        directory.delete ();
+        store = new BodyStore ( directory, 1024 * 1024 );
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles ();
+        if (files != null) {
+            for (File file : files) {
+                file.delete ();
+            }
+        }
+        directory.delete ();
+    }
+
+    @Test
+    public void visibleArticlesComeFirstThenNewest() {
+        List <Article> visible = Arrays.asList ( article ( "v-old", 1 ), article ( "v-new", 2 ) );
+        List <Article> recent = Arrays.asList ( article ( "old", 10 ), article ( "new", 30 ), article ( "mid", 20 ) );
+
+        BodyPrefetcher.Result result = new BodyPrefetcher ( store, source ).prefetch ( visible, recent, 10, 10000 );
+
+        assertEquals ( Arrays.asList ( "v-new", "v-old", "new", "mid", "old" ), fetched );
+        assertEquals ( 5, result.downloaded );
+        assertEquals ( 500, result.bytes );
+        assertEquals ( "<p>mid</p>", store.get ( "mid" ) );
+    }
+
+    @Test
+    public void storedBodiesAndDuplicatesAreSkipped() throws IOException {
+        store.put ( "a", "<p>a</p>" );
+        List <Article> visible = Collections.singletonList ( article ( "b", 1 ) );
+        List <Article> recent = Arrays.asList ( article ( "a", 3 ), article ( "b", 1 ), article ( "c", 2 ) );
+
+        BodyPrefetcher.Result result = new BodyPrefetcher ( store, source ).prefetch ( visible, recent, 10, 10000 );
+
+        assertEquals ( Arrays.asList ( "b", "c" ), fetched );
+        assertEquals ( 2, result.downloaded );
+    }
+
+    @Test
+    public void stopsAtTheArticleLimitAndTheByteBudget() {
+        List <Article> recent = new ArrayList <> ();
+        for (int i = 0; i < 10; i++) {
+            recent.add ( article ( "a" + i, 100 - i ) );
+        }
+
+        assertEquals ( 3, new BodyPrefetcher ( store, source ).prefetch (
+                Collections. <Article>emptyList (), recent, 3, 10000 ).downloaded );
+        // The download crossing the budget is kept, none is started after it
+        BodyPrefetcher.Result result = new BodyPrefetcher ( store, source ).prefetch (
+                Collections. <Article>emptyList (), recent, 10, 250 );
+        assertEquals ( 3, result.downloaded );
+        assertEquals ( 300, result.bytes );
+        assertEquals ( Arrays.asList ( "a0", "a1", "a2", "a3", "a4", "a5" ), fetched );
+    }
+
+    @Test
+    public void failuresAreCountedAndSkipped() {
+        failing.add ( "a" );
+        List <Article> recent = Arrays.asList ( article ( "a", 2 ), article ( "b", 1 ) );
+
+        BodyPrefetcher.Result result = new BodyPrefetcher ( store, source ).prefetch (
+                Collections. <Article>emptyList (), recent, 10, 10000 );
+
+        assertEquals ( 1, result.downloaded );
+        assertEquals ( 1, result.failed );
+        assertFalse ( store.contains ( "a" ) );
+        assertTrue ( store.contains ( "b" ) );
+    }
+
+    @Test
+    public void stopsAfterSeveralFailuresInARow() {
+        List <Article> recent = new ArrayList <> ();
+        for (int i = 0; i < 10; i++) {
+            recent.add ( article ( "a" + i, 100 - i ) );
+            if (i != 1) {
+                failing.add ( "a" + i );
+            }
+        }
+
+        BodyPrefetcher.Result result = new BodyPrefetcher ( store, source ).prefetch (
+                Collections. <Article>emptyList (), recent, 10, 10000 );
+
+        // The download of a1 starts the count again
+        assertEquals ( 1, result.downloaded );
+        assertEquals ( 1 + BodyPrefetcher.MAX_FAILURES_IN_A_ROW, result.failed );
+        assertEquals ( 2 + BodyPrefetcher.MAX_FAILURES_IN_A_ROW, fetched.size () );
+    }
+
+    private static Article article(String url, long publishedMillis) {
+        return new Article ( "Title " + url, "Section", "Author", url, publishedMillis );
+    }
+}
@@ -0,0 +1,99 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BodyStoreTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile ( "bodies", "" );
+        directory.delete ();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles ();
+        if (files != null) {
+            for (File file : files) {
+                file.delete ();
+            }
+        }
+        directory.delete ();
+    }
+
+    @Test
+    public void storedBodyIsReadBackCompressed() throws IOException {
+        BodyStore store = new BodyStore ( directory, 1024 * 1024 );
+        StringBuilder body = new StringBuilder ();
+        for (int i = 0; i < 200; i++) {
+            body.append ( "<p>Paragraph ").append ( i ).append ( " of the article, with ünïcödé</p>" );
+        }
+
+        assertFalse ( store.contains ( "https://host/a" ) );
+        long compressed = store.put ( "https://host/a", body.toString () );
+
+        assertTrue ( store.contains ( "https://host/a" ) );
+        assertEquals ( body.toString (), store.get ( "https://host/a" ) );
+        assertTrue ( compressed < body.length () / 4 );
+        assertEquals ( compressed, store.size () );
+        assertNull ( store.get ( "https://host/b" ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedBodiesAreDeletedOverBudget() throws IOException {
+        BodyStore store = new BodyStore ( directory, 2500 );
+        store.put ( "a", randomBody ( 1 ) );
+        store.put ( "b", randomBody ( 2 ) );
+        // Reading "a" makes "b" the least recently used
+        backdate ( "a", 2000 );
+        backdate ( "b", 1000 );
+        assertNotNull ( store.get ( "a" ) );
+
+        store.put ( "c", randomBody ( 3 ) );
+
+        assertTrue ( store.contains ( "a" ) );
+        assertFalse ( store.contains ( "b" ) );
+        assertTrue ( store.contains ( "c" ) );
+        assertTrue ( store.size () <= 2500 );
+    }
+
+    @Test
+    public void damagedBodyIsDropped() throws IOException {
+        BodyStore store = new BodyStore ( directory, 1024 );
+        store.put ( "a", "<p>body</p>" );
+        FileOutputStream out = new FileOutputStream ( directory.listFiles ()[0] );
+        out.write ( "not gzip".getBytes ( "UTF-8" ) );
+        out.close ();
+
+        assertNull ( store.get ( "a" ) );
+        assertFalse ( store.contains ( "a" ) );
+    }
+
+    /**
+     * About 1000 bytes that do not compress.
+     */
+    private static String randomBody(long seed) {
+        Random random = new Random ( seed );
+        StringBuilder body = new StringBuilder ();
+        for (int i = 0; i < 1000; i++) {
+            body.append ( (char) ('!' + random.nextInt ( 90 )) );
+        }
+        return body.toString ();
+    }
+
+    private void backdate(String url, long millis) {
+        File file = new File ( directory, DiskResponseCache.fileName ( url ) + ".html.gz" );
+        assertTrue ( file.setLastModified ( System.currentTimeMillis () - 60000 - millis ) );
+    }
+}
@@ -0,0 +1,129 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link CoalescingFetcher} sends identical requests once and reuses recent results.
+ */
+public class CoalescingFetcherTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?section=science&page=1";
+
+    private final PipelineMetrics mMetrics = new PipelineMetrics ();
+    private final AtomicInteger mRequests = new AtomicInteger ();
+
+    @Test
+    public void fetch_sharesOneRequestBetweenConcurrentCallers() throws Exception {
+        final CountDownLatch release = new CountDownLatch ( 1 );
+        final CoalescingFetcher fetcher = new CoalescingFetcher ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                mRequests.incrementAndGet ();
+                try {
+                    release.await ();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                return articles ( url );
+            }
+        }, 10000, 8, mMetrics );
+
+        ExecutorService callers = Executors.newFixedThreadPool ( 4 );
+        List <Future <List <Article>>> results = new ArrayList <> ();
+        for (int i = 0; i < 4; i++) {
+            // The same query with its parameters in another order
+            final String url = i % 2 == 0 ? URL : "https://content.guardianapis.com/search?page=1&section=science";
+            results.add ( callers.submit ( new Callable <List <Article>> () {
+                @Override
+                public List <Article> call() {
+                    return fetcher.fetch ( url );
+                }
+            } ) );
+        }
+        // Wait until the others have joined the first request
+        while (mMetrics.counter ( CoalescingFetcher.JOINED ).get () < 3) {
+            Thread.sleep ( 5 );
+        }
+        release.countDown ();
+
+        List <Article> first = results.get ( 0 ).get ( 5, TimeUnit.SECONDS );
+        for (Future <List <Article>> result : results) {
+            assertSame ( first, result.get ( 5, TimeUnit.SECONDS ) );
+        }
+        callers.shutdown ();
+        assertEquals ( 1, mRequests.get () );
+        assertEquals ( 1, mMetrics.counter ( CoalescingFetcher.FETCHES ).get () );
+    }
+
+    @Test
+    public void fetch_reusesResultsUntilTheyExpire() throws Exception {
+        CoalescingFetcher fetcher = new CoalescingFetcher ( countingFetcher (), 100, 8, mMetrics );
+
+        List <Article> first = fetcher.fetch ( URL );
+        assertSame ( first, fetcher.fetch ( URL ) );
+        assertEquals ( 1, mRequests.get () );
+        assertEquals ( 1, mMetrics.counter ( CoalescingFetcher.MEMO_HITS ).get () );
+
+        Thread.sleep ( 150 );
+        assertNotSame ( first, fetcher.fetch ( URL ) );
+        assertEquals ( 2, mRequests.get () );
+    }
+
+    @Test
+    public void fetch_doesNotKeepFailures() {
+        CoalescingFetcher fetcher = new CoalescingFetcher ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                return mRequests.incrementAndGet () == 1 ? null : articles ( url );
+            }
+        }, 10000, 8, mMetrics );
+
+        assertNull ( fetcher.fetch ( URL ) );
+        assertNotNull ( fetcher.fetch ( URL ) );
+        assertEquals ( 2, mRequests.get () );
+    }
+
+    @Test
+    public void fetch_keepsOnlyTheMostRecentlyUsedResults() {
+        CoalescingFetcher fetcher = new CoalescingFetcher ( countingFetcher (), 10000, 2, mMetrics );
+
+        fetcher.fetch ( URL + "1" );
+        fetcher.fetch ( URL + "2" );
+        fetcher.fetch ( URL + "1" );
+        fetcher.fetch ( URL + "3" );
+        assertEquals ( 3, mRequests.get () );
+
+        // 2 was the least recently used one
+        fetcher.fetch ( URL + "1" );
+        fetcher.fetch ( URL + "2" );
+        assertEquals ( 4, mRequests.get () );
+    }
+
+    private SectionFanOut.Fetcher countingFetcher() {
+        return new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                mRequests.incrementAndGet ();
+                return articles ( url );
+            }
+        };
+    }
+
+    private static List <Article> articles(String url) {
+        return new ArrayList <> ( Collections.singletonList (
+                new Article ( "Title", "Science", "Jane Doe", url, 1000 ) ) );
+    }
+}
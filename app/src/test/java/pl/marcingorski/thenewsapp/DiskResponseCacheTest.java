@@ -0,0 +1,127 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DiskResponseCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile ( "responses", "" );
+        directory.delete ();
+        directory.mkdirs ();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles ();
+        if (files != null) {
+            for (File file : files) {
+                file.delete ();
+            }
+        }
+        directory.delete ();
+    }
+
+    @Test
+    public void normalize_sortsQueryParameters() {
+        assertEquals ( DiskResponseCache.normalize ( "https://host/search?b=2&a=1" ),
+                DiskResponseCache.normalize ( "https://host/search?a=1&b=2" ) );
+        assertEquals ( "https://host/search", DiskResponseCache.normalize ( "https://host/search?" ) );
+    }
+
+    @Test
+    public void committedEntryIsRevalidatedWithItsValidators() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache ( directory, 1024 );
+        store ( cache, "a", "\"v1\"", "Sat, 02 Jun 2018 19:25:26 GMT", 100 );
+
+        DiskResponseCache.Entry entry = cache.get ( "a" );
+        assertNotNull ( entry );
+        Map <String, String> headers = DiskResponseCache.validatorHeaders ( entry );
+        assertEquals ( "\"v1\"", headers.get ( "If-None-Match" ) );
+        assertEquals ( "Sat, 02 Jun 2018 19:25:26 GMT", headers.get ( "If-Modified-Since" ) );
+
+        assertNull ( cache.onNotModified ( entry ) );
+        assertEquals ( 1, cache.getRevalidationCount () );
+        assertEquals ( 1, cache.getHitCount () );
+        assertEquals ( 100, readFully ( cache.openBody ( entry ) ) );
+    }
+
+    @Test
+    public void responseWithoutValidatorsIsNotStored() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache ( directory, 1024 );
+        assertNull ( cache.record ( "a", null, null, new ByteArrayInputStream ( new byte[10] ) ) );
+    }
+
+    @Test
+    public void immutableResponseIsStoredWithoutValidators() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache ( directory, 1024 );
+        byte[] image = new byte[300];
+        image[299] = 42;
+        DiskResponseCache.Recorder recorder = cache.recordImmutable ( "image", new ByteArrayInputStream ( image ) );
+        assertEquals ( 300, readFully ( recorder ) );
+        recorder.commit ();
+
+        DiskResponseCache.Entry entry = cache.get ( "image" );
+        assertNull ( entry.etag );
+        assertNull ( entry.lastModified );
+        assertEquals ( 300, readFully ( cache.openBody ( entry ) ) );
+        assertEquals ( 300, new DiskResponseCache ( directory, 1024 ).size () );
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvictedOverBudget() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache ( directory, 250 );
+        store ( cache, "a", "1", null, 100 );
+        store ( cache, "b", "2", null, 100 );
+        cache.get ( "a" );
+        store ( cache, "c", "3", null, 100 );
+
+        assertNotNull ( cache.get ( "a" ) );
+        assertNull ( cache.get ( "b" ) );
+        assertNotNull ( cache.get ( "c" ) );
+        assertEquals ( 200, cache.size () );
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        store ( new DiskResponseCache ( directory, 1024 ), "a", "1", null, 100 );
+
+        DiskResponseCache reopened = new DiskResponseCache ( directory, 1024 );
+        assertNotNull ( reopened.get ( "a" ) );
+        assertEquals ( 100, reopened.size () );
+    }
+
+    private static void store(DiskResponseCache cache, String key, String etag, String lastModified, int length)
+            throws IOException {
+        DiskResponseCache.Recorder recorder = cache.record ( key, etag, lastModified,
+                new ByteArrayInputStream ( new byte[length] ) );
+        readFully ( recorder );
+        recorder.commit ();
+    }
+
+    private static int readFully(InputStream in) throws IOException {
+        try {
+            int total = 0;
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read ( buffer )) != -1) {
+                total += read;
+            }
+            return total;
+        } finally {
+            in.close ();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how far {@link Downsampler} scales thumbnails down.
+ */
+public class DownsamplerTest {
+
+    @Test
+    public void sampleSize_keepsTheImageAtLeastAsLargeAsTheTarget() {
+        // A 500 x 300 Guardian thumbnail into a 100 x 60 dp view
+        assertEquals ( 4, Downsampler.sampleSize ( 500, 300, 100, 60 ) );
+        assertEquals ( 1, Downsampler.sampleSize ( 500, 300, 300, 180 ) );
+        assertEquals ( 2, Downsampler.sampleSize ( 500, 300, 200, 120 ) );
+        // The smaller ratio decides
+        assertEquals ( 2, Downsampler.sampleSize ( 1000, 300, 100, 120 ) );
+    }
+
+    @Test
+    public void sampleSize_neverEnlarges() {
+        assertEquals ( 1, Downsampler.sampleSize ( 50, 30, 100, 60 ) );
+        assertEquals ( 1, Downsampler.sampleSize ( 0, 0, 100, 60 ) );
+        assertEquals ( 1, Downsampler.sampleSize ( 500, 300, 0, 0 ) );
+    }
+
+    @Test
+    public void scale_coversTheTarget() {
+        // 500 x 300 sampled once for 300 x 180: 250 x 150 is too small, so it is not sampled
+        assertEquals ( 0.6f, Downsampler.scale ( 500, 300, 300, 180 ), 0.001f );
+        // A wider image is scaled to the target height and cropped at the sides
+        assertEquals ( 0.5f, Downsampler.scale ( 400, 120, 100, 60 ), 0.001f );
+        assertEquals ( 1f, Downsampler.scale ( 100, 60, 100, 60 ), 0.001f );
+        assertEquals ( 1f, Downsampler.scale ( 50, 30, 100, 60 ), 0.001f );
+    }
+}
@@ -0,0 +1,113 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link DuplicateFilter} drops repeated URLs and near identical titles, and
+ * forgets the articles that left its window.
+ */
+public class DuplicateFilterTest {
+
+    private static final long T0 = PublicationDates.parse ( "2018-06-02T10:00:00Z" );
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Test
+    public void add_dropsTheSameUrlInAnotherSection() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, false );
+        Article business = article ( "Tesla shares fall after recall", "https://www.theguardian.com/business/2018/jun/02/tesla", T0 );
+        Article technology = new Article ( "Tesla shares fall after recall", "Technology", "Author",
+                "http://www.theguardian.com/business/2018/jun/02/tesla", T0 );
+
+        assertTrue ( filter.add ( business ) );
+        assertFalse ( filter.add ( technology ) );
+    }
+
+    @Test
+    public void filter_keepsTheFirstOfEveryStoryInOrder() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, false );
+        Article a = article ( "A", "https://www.theguardian.com/science/a", T0 );
+        Article b = article ( "B", "https://www.theguardian.com/science/b", T0 );
+
+        List <Article> kept = filter.filter ( Arrays.asList ( a, b, a, b ) );
+
+        assertEquals ( Arrays.asList ( a, b ), kept );
+    }
+
+    @Test
+    public void add_dropsNearDuplicateTitlesPublishedTogether() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, true );
+        assertTrue ( filter.add ( article ( "Nasa finds ancient organic matter on the surface of Mars",
+                "https://www.theguardian.com/science/2018/jun/07/mars", T0 ) ) );
+
+        assertFalse ( filter.add ( article ( "Nasa finds ancient organic matter on the surface of Mars!",
+                "https://www.theguardian.com/science/2018/jun/07/mars-organic", T0 + HOUR ) ) );
+        assertFalse ( filter.add ( article ( "NASA finds ancient organic matter on surface of Mars",
+                "https://www.theguardian.com/science/2018/jun/07/mars-curiosity", T0 + HOUR ) ) );
+    }
+
+    @Test
+    public void add_keepsSimilarHeadlinesOfDifferentStories() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, true );
+        assertTrue ( filter.add ( article ( "Arsenal v Chelsea: Premier League – live",
+                "https://www.theguardian.com/football/live/1", T0 ) ) );
+        assertTrue ( filter.add ( article ( "Everton v Burnley: Premier League – live",
+                "https://www.theguardian.com/football/live/2", T0 ) ) );
+        // Too short to tell apart from a recurring column
+        assertTrue ( filter.add ( article ( "Corrections and clarifications",
+                "https://www.theguardian.com/news/1", T0 ) ) );
+        assertTrue ( filter.add ( article ( "Corrections and clarifications",
+                "https://www.theguardian.com/news/2", T0 ) ) );
+        // The same headline a week later
+        assertTrue ( filter.add ( article ( "The week in wildlife – in pictures today",
+                "https://www.theguardian.com/environment/1", T0 ) ) );
+        assertTrue ( filter.add ( article ( "The week in wildlife – in pictures today",
+                "https://www.theguardian.com/environment/2", T0 + 7 * 24 * HOUR ) ) );
+    }
+
+    @Test
+    public void add_forgetsArticlesThatLeftTheWindow() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, true );
+        for (int i = 0; i < 10000; i++) {
+            assertTrue ( filter.add ( numbered ( i ) ) );
+        }
+        // The last 16 are remembered, everything before them was forgotten
+        for (int i = 10000 - 16; i < 10000; i++) {
+            assertFalse ( filter.add ( numbered ( i ) ) );
+        }
+        assertTrue ( filter.add ( numbered ( 10000 - 17 ) ) );
+    }
+
+    @Test
+    public void clear_forgetsEverything() {
+        DuplicateFilter filter = new DuplicateFilter ( 16, true );
+        filter.add ( numbered ( 1 ) );
+
+        filter.clear ();
+
+        assertTrue ( filter.add ( numbered ( 1 ) ) );
+    }
+
+    @Test
+    public void similarity_isTheShareOfCommonWordPairs() {
+        long[] a = DuplicateFilter.wordPairs ( "one two three four" );
+        long[] b = DuplicateFilter.wordPairs ( "One, two three five" );
+
+        assertEquals ( 3, a.length );
+        assertEquals ( 0.5, DuplicateFilter.similarity ( a, b ), 1e-9 );
+        assertEquals ( 1.0, DuplicateFilter.similarity ( a, a ), 1e-9 );
+    }
+
+    private static Article numbered(int i) {
+        return article ( "Story number " + i + " of the day in words " + (i * 7919),
+                "https://www.theguardian.com/world/" + i, T0 + i * HOUR );
+    }
+
+    private static Article article(String title, String url, long publishedMillis) {
+        return new Article ( title, "Section", "Author", url, publishedMillis );
+    }
+}
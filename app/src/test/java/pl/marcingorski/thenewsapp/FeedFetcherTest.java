@@ -0,0 +1,422 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the delta refresh of {@link FeedFetcher} against a fake fetcher that answers
+ * "from-date" the way the API does, including articles published at that very second.
+ */
+public class FeedFetcherTest {
+
+    private static final long T0 = PublicationDates.parse ( "2018-06-02T10:00:00Z" );
+    private static final long MINUTE = 60 * 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool ( 3 );
+    private final List <String> requestedUrls = Collections.synchronizedList ( new ArrayList <String> () );
+    private final Map <String, List <Article>> sections = new HashMap <> ();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow ();
+    }
+
+    @Test
+    public void refresh_withoutMarksFetchesTheFirstPageAndReturnsTheNewestDate() {
+        sections.put ( "science", articles ( "science", 3 ) );
+        FeedFetcher fetcher = feedFetcher ( "science" );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( null, null );
+
+        assertFalse ( refresh.delta );
+        assertEquals ( 3, refresh.articles.size () );
+        assertFalse ( requestedUrls.get ( 0 ).contains ( "from-date" ) );
+        assertEquals ( Long.valueOf ( T0 + 2 * MINUTE ), refresh.highWaterMarks.get ( key ( "science" ) ) );
+    }
+
+    @Test
+    public void refresh_withMarksOnlyReturnsNewerArticles() {
+        sections.put ( "science", articles ( "science", 5 ) );
+        FeedFetcher fetcher = feedFetcher ( "science" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + 2 * MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertTrue ( refresh.delta );
+        assertTrue ( requestedUrls.get ( 0 ).endsWith ( "&from-date=2018-06-02T10:02:00Z" ) );
+        assertEquals ( 2, refresh.articles.size () );
+        assertEquals ( T0 + 4 * MINUTE, refresh.articles.get ( 0 ).getPublishedMillis () );
+        assertEquals ( Long.valueOf ( T0 + 4 * MINUTE ), refresh.highWaterMarks.get ( key ( "science" ) ) );
+    }
+
+    @Test
+    public void refresh_withNothingNewKeepsTheMark() {
+        sections.put ( "science", articles ( "science", 3 ) );
+        FeedFetcher fetcher = feedFetcher ( "science" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + 2 * MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertTrue ( refresh.articles.isEmpty () );
+        assertEquals ( Long.valueOf ( T0 + 2 * MINUTE ), refresh.highWaterMarks.get ( key ( "science" ) ) );
+    }
+
+    @Test
+    public void refresh_inFanOutModeKeepsAMarkPerSection() {
+        sections.put ( "science", articles ( "science", 4 ) );
+        sections.put ( "business", articles ( "business", 2 ) );
+        FeedFetcher fetcher = feedFetcher ( "science", "business", "technology" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + MINUTE );
+        marks.mMarks.put ( key ( "business" ), T0 );
+        marks.mMarks.put ( key ( "technology" ), T0 );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        // Two newer science articles and one business article, technology failed
+        assertTrue ( refresh.delta );
+        assertEquals ( 3, refresh.articles.size () );
+        assertEquals ( Long.valueOf ( T0 + 3 * MINUTE ), refresh.highWaterMarks.get ( key ( "science" ) ) );
+        assertEquals ( Long.valueOf ( T0 + MINUTE ), refresh.highWaterMarks.get ( key ( "business" ) ) );
+        assertFalse ( refresh.highWaterMarks.containsKey ( key ( "technology" ) ) );
+    }
+
+    @Test
+    public void refresh_withoutTheMarkOfEveryQueryIsAFullOne() {
+        sections.put ( "science", articles ( "science", 4 ) );
+        sections.put ( "business", articles ( "business", 2 ) );
+        FeedFetcher fetcher = feedFetcher ( "science", "business" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertFalse ( refresh.delta );
+        assertEquals ( 6, refresh.articles.size () );
+        for (String url : requestedUrls) {
+            assertFalse ( url.contains ( "from-date" ) );
+        }
+    }
+
+    @Test
+    public void refresh_pagesUntilItReachesTheMark() {
+        // 50 articles newer than the mark, more than two pages of 20
+        sections.put ( "science", articles ( "science", 60 ) );
+        FeedFetcher fetcher = feedFetcher ( "science" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + 9 * MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertTrue ( refresh.delta );
+        assertEquals ( 3, requestedUrls.size () );
+        assertEquals ( 50, refresh.articles.size () );
+        assertEquals ( T0 + 10 * MINUTE, refresh.articles.get ( 49 ).getPublishedMillis () );
+        assertEquals ( Long.valueOf ( T0 + 59 * MINUTE ), refresh.highWaterMarks.get ( key ( "science" ) ) );
+    }
+
+    @Test
+    public void refresh_fallsBackToAFullOneWhenTheMarkIsTooFarBack() {
+        sections.put ( "science", articles ( "science", 20 * FeedFetcher.MAX_DELTA_PAGES + 10 ) );
+        FeedFetcher fetcher = feedFetcher ( "science" );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertFalse ( refresh.delta );
+        assertEquals ( FeedFetcher.MAX_DELTA_PAGES + 1, requestedUrls.size () );
+        assertFalse ( requestedUrls.get ( FeedFetcher.MAX_DELTA_PAGES ).contains ( "from-date" ) );
+        assertEquals ( 20, refresh.articles.size () );
+    }
+
+    @Test
+    public void refresh_mergesProvidersAndLeavesOutTheOneThatTimesOut() {
+        final List <Article> fast = articles ( "fast", 3 );
+        FakeProvider fastProvider = new FakeProvider ( "https://fast/", 1000 );
+        FakeProvider slowProvider = new FakeProvider ( "https://slow/", 100 );
+        FakeProvider otherProvider = new FakeProvider ( "https://other/", 1000 );
+        final List <Article> other = articles ( "other", 2 );
+        FeedFetcher fetcher = new FeedFetcher ( Arrays.asList ( "https://fast/news", "https://slow/news", "https://other/news" ),
+                Arrays. <FeedProvider>asList ( fastProvider, slowProvider, otherProvider ), 20,
+                new SectionFanOut ( executor ), new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                requestedUrls.add ( url );
+                if (url.startsWith ( "https://slow/" )) {
+                    try {
+                        Thread.sleep ( 5000 );
+                    } catch (InterruptedException e) {
+                        return null;
+                    }
+                }
+                return url.startsWith ( "https://fast/" ) ? fast : other;
+            }
+        } );
+        final List <Integer> progress = Collections.synchronizedList ( new ArrayList <Integer> () );
+
+        long start = System.nanoTime ();
+        FeedFetcher.Refresh refresh = fetcher.refresh ( null, new SectionFanOut.ProgressListener () {
+            @Override
+            public void onProgress(List <Article> merged, int completed, int total) {
+                progress.add ( merged.size () );
+            }
+        } );
+
+        assertTrue ( (System.nanoTime () - start) / 1000000 < 2000 );
+        assertEquals ( 5, refresh.articles.size () );
+        // Newest first across the providers
+        assertEquals ( T0 + 2 * MINUTE, refresh.articles.get ( 0 ).getPublishedMillis () );
+        assertTrue ( requestedUrls.contains ( "https://fast/news?page=1&size=20" ) );
+        assertEquals ( Integer.valueOf ( 5 ), progress.get ( progress.size () - 1 ) );
+    }
+
+    @Test
+    public void refresh_dropsKnownArticlesOfProvidersWithoutDateFilter() {
+        final List <Article> fast = articles ( "fast", 4 );
+        FeedFetcher fetcher = new FeedFetcher ( Collections.singletonList ( "https://fast/news" ),
+                Collections. <FeedProvider>singletonList ( new FakeProvider ( "https://fast/", 1000 ) ), 20,
+                new SectionFanOut ( executor ), new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                requestedUrls.add ( url );
+                return fast;
+            }
+        } );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( FeedFetcher.queryKey ( "https://fast/news" ), T0 + MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertTrue ( refresh.delta );
+        assertEquals ( Collections.singletonList ( "https://fast/news?page=1&size=20" ), requestedUrls );
+        assertEquals ( 2, refresh.articles.size () );
+    }
+
+    @Test
+    public void refresh_withTheLastGoodResponseIsStaleAndKeepsTheMarks() {
+        final List <Article> cached = articles ( "science", 5 );
+        FetchPolicy offline = new FetchPolicy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                return null;
+            }
+        }, null, new FetchPolicy.StaleSource () {
+            @Override
+            public List <Article> stale(String url) {
+                return cached;
+            }
+        }, executor, 100, 5, 50, new SyncBackoff ( 10, 20, new Random ( 1 ) ), new PipelineMetrics () );
+        FeedFetcher fetcher = new FeedFetcher ( Collections.singletonList ( queryUrl ( "science" ) ), 20,
+                new SectionFanOut ( executor ), offline );
+        Marks marks = new Marks ();
+        marks.mMarks.put ( key ( "science" ), T0 + 2 * MINUTE );
+
+        FeedFetcher.Refresh refresh = fetcher.refresh ( marks, null );
+
+        assertTrue ( refresh.stale );
+        assertEquals ( 2, refresh.articles.size () );
+        assertTrue ( refresh.highWaterMarks.isEmpty () );
+        assertFalse ( feedFetcher ( "science" ).refresh ( marks, null ).stale );
+    }
+
+    @Test
+    public void aSingleQueryFailsWhenItTakesLongerThanTheTimeout() {
+        FeedFetcher fetcher = new FeedFetcher ( Collections.singletonList ( "https://slow/news" ),
+                Collections. <FeedProvider>singletonList ( new FakeProvider ( "https://slow/", 100 ) ), 20,
+                new SectionFanOut ( executor ), new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                try {
+                    Thread.sleep ( 5000 );
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                return articles ( "slow", 3 );
+            }
+        } );
+
+        long start = System.nanoTime ();
+        assertNull ( fetcher.refresh ( null, null ).articles );
+        assertNull ( fetcher.fetchPage ( 2, null ) );
+        assertTrue ( (System.nanoTime () - start) / 1000000 < 2000 );
+    }
+
+    @Test
+    public void aSlowQueryIsServedStaleBeforeItsProviderTimesOut() {
+        List <FeedProvider> providers =
+                Collections. <FeedProvider>singletonList ( new FakeProvider ( "https://slow/", 1500 ) );
+        final List <Article> stale = articles ( "slow", 3 );
+        ExecutorService attempts = Executors.newFixedThreadPool ( 2 );
+        try {
+            FetchPolicy policy = new FetchPolicy ( new SectionFanOut.Fetcher () {
+                @Override
+                public List <Article> fetch(String url) {
+                    try {
+                        Thread.sleep ( 5000 );
+                    } catch (InterruptedException e) {
+                        return null;
+                    }
+                    return articles ( "slow", 5 );
+                }
+            }, null, new FetchPolicy.StaleSource () {
+                @Override
+                public List <Article> stale(String url) {
+                    return stale;
+                }
+            }, attempts, FeedSettings.getFetchDeadlineMillis ( providers ), 5000, 5000,
+                    new SyncBackoff ( 10, 20, new Random ( 1 ) ), new PipelineMetrics () );
+            FeedFetcher fetcher = new FeedFetcher ( Collections.singletonList ( "https://slow/news" ), providers, 20,
+                    new SectionFanOut ( executor ), policy );
+
+            FeedFetcher.Refresh refresh = fetcher.refresh ( null, null );
+
+            // The policy gives up on the network while the fan-out still waits for it
+            assertTrue ( refresh.stale );
+            assertEquals ( stale, refresh.articles );
+        } finally {
+            attempts.shutdownNow ();
+        }
+    }
+
+    @Test
+    public void firstPage_keepsOnePageOfEveryQuery() {
+        FeedFetcher fetcher = feedFetcher ( "science", "technology" );
+        List <Article> stored = articles ( "science", 50 );
+
+        assertEquals ( 40, fetcher.getRowsPerPage () );
+        assertEquals ( stored.subList ( 0, 40 ), fetcher.firstPage ( stored ) );
+        assertEquals ( 10, fetcher.firstPage ( stored.subList ( 0, 10 ) ).size () );
+    }
+
+    private FeedFetcher feedFetcher(String... sectionNames) {
+        List <String> queryUrls = new ArrayList <> ();
+        for (String section : sectionNames) {
+            queryUrls.add ( queryUrl ( section ) );
+        }
+        return new FeedFetcher ( queryUrls, 20, new SectionFanOut ( executor ), new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                requestedUrls.add ( url );
+                String section = url.replaceAll ( ".*section=([^&]*).*", "$1" );
+                List <Article> all = sections.get ( section );
+                if (all == null) {
+                    return null;
+                }
+                long fromDate = url.contains ( "from-date=" )
+                        ? PublicationDates.parse ( url.replaceAll ( ".*from-date=([^&]*).*", "$1" ) )
+                        : Long.MIN_VALUE;
+                List <Article> result = new ArrayList <> ();
+                for (Article article : all) {
+                    if (article.getPublishedMillis () >= fromDate) {
+                        result.add ( article );
+                    }
+                }
+                int page = Integer.parseInt ( url.replaceAll ( ".*[?&]page=([0-9]+).*", "$1" ) );
+                int pageSize = Integer.parseInt ( url.replaceAll ( ".*page-size=([0-9]+).*", "$1" ) );
+                int from = Math.min ( result.size (), (page - 1) * pageSize );
+                return new ArrayList <> ( result.subList ( from, Math.min ( result.size (), from + pageSize ) ) );
+            }
+        } );
+    }
+
+    private static String queryUrl(String section) {
+        return "https://content.guardianapis.com/search?section=" + section + "&order-by=newest";
+    }
+
+    private static String key(String section) {
+        return FeedFetcher.queryKey ( queryUrl ( section ) );
+    }
+
+    /**
+     * Articles published a minute apart from T0 on, newest first.
+     */
+    private static List <Article> articles(String section, int count) {
+        Article[] articles = new Article[count];
+        for (int i = 0; i < count; i++) {
+            articles[count - 1 - i] = new Article ( section + " " + i, section, "Author",
+                    "https://www.theguardian.com/" + section + "/" + i, T0 + i * MINUTE );
+        }
+        return Arrays.asList ( articles );
+    }
+
+    /**
+     * A local provider with its own paging and no date filter.
+     */
+    private static final class FakeProvider implements FeedProvider {
+
+        private final String mPrefix;
+        private final long mTimeoutMillis;
+
+        FakeProvider(String prefix, long timeoutMillis) {
+            mPrefix = prefix;
+            mTimeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public String getName() {
+            return mPrefix;
+        }
+
+        @Override
+        public boolean handles(String url) {
+            return url.startsWith ( mPrefix );
+        }
+
+        @Override
+        public List <String> queryUrls(SectionSelection sections, boolean perSection) {
+            return Collections.singletonList ( mPrefix + "news" );
+        }
+
+        @Override
+        public String pageUrl(String queryUrl, int page, int pageSize) {
+            return queryUrl + "?page=" + page + "&size=" + pageSize;
+        }
+
+        @Override
+        public String sinceUrl(String pageUrl, long sinceMillis) {
+            return null;
+        }
+
+        @Override
+        public long getTimeoutMillis() {
+            return mTimeoutMillis;
+        }
+
+        @Override
+        public List <Article> decode(InputStream in) {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    private static final class Marks implements FeedFetcher.HighWaterMarks {
+
+        final Map <String, Long> mMarks = new HashMap <> ();
+
+        @Override
+        public long get(String queryKey) {
+            Long mark = mMarks.get ( queryKey );
+            return mark == null ? PublicationDates.UNKNOWN : mark;
+        }
+
+        @Override
+        public void putAll(Map <String, Long> marks) {
+            mMarks.putAll ( marks );
+        }
+    }
+}
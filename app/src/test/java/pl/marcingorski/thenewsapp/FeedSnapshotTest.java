@@ -0,0 +1,118 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes and reads back {@link FeedSnapshot} files.
+ */
+public class FeedSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile ( "feed", ".snapshot" );
+        assertTrue ( file.delete () );
+    }
+
+    @After
+    public void tearDown() {
+        file.delete ();
+    }
+
+    @Test
+    public void read_returnsTheWrittenArticlesOfTheSameFeed() throws IOException {
+        FeedSnapshot snapshot = new FeedSnapshot ( file );
+        assertNull ( snapshot.read ( "feed" ) );
+
+        List <Article> articles = articles ( 3 );
+        snapshot.write ( "feed", articles );
+
+        List <Article> read = new FeedSnapshot ( file ).read ( "feed" );
+        assertEquals ( 3, read.size () );
+        for (int i = 0; i < articles.size (); i++) {
+            assertEquals ( articles.get ( i ).getmUrl (), read.get ( i ).getmUrl () );
+            assertEquals ( articles.get ( i ).getTitleOfArticle (), read.get ( i ).getTitleOfArticle () );
+            assertEquals ( articles.get ( i ).getSection (), read.get ( i ).getSection () );
+            assertEquals ( articles.get ( i ).getSectionId (), read.get ( i ).getSectionId () );
+            assertEquals ( articles.get ( i ).getAuthor (), read.get ( i ).getAuthor () );
+            assertEquals ( articles.get ( i ).getPublishedMillis (), read.get ( i ).getPublishedMillis () );
+            assertEquals ( articles.get ( i ).getThumbnailUrl (), read.get ( i ).getThumbnailUrl () );
+        }
+        // A snapshot of other sections is not shown
+        assertNull ( snapshot.read ( "other feed" ) );
+    }
+
+    @Test
+    public void write_keepsOnlyTheFirstRows() throws IOException {
+        FeedSnapshot snapshot = new FeedSnapshot ( file );
+        snapshot.write ( "feed", articles ( FeedSnapshot.MAX_ARTICLES + 10 ) );
+        assertEquals ( FeedSnapshot.MAX_ARTICLES, snapshot.read ( "feed" ).size () );
+    }
+
+    @Test
+    public void write_keepsArticlesWithoutSectionOrAuthor() throws IOException {
+        FeedSnapshot snapshot = new FeedSnapshot ( file );
+        snapshot.write ( "feed", Collections.singletonList ( new Article ( "Title", null, null,
+                "https://www.theguardian.com/science/1", 1527967526000L ) ) );
+
+        List <Article> read = snapshot.read ( "feed" );
+
+        assertEquals ( 1, read.size () );
+        assertNull ( read.get ( 0 ).getSection () );
+        assertNull ( read.get ( 0 ).getSectionId () );
+        assertNull ( read.get ( 0 ).getAuthor () );
+        assertNull ( read.get ( 0 ).getThumbnailUrl () );
+    }
+
+    @Test
+    public void read_treatsADamagedFileAsMissing() throws IOException {
+        FeedSnapshot snapshot = new FeedSnapshot ( file );
+        snapshot.write ( "feed", articles ( 5 ) );
+        long length = file.length ();
+
+        FileOutputStream out = new FileOutputStream ( file, true );
+        out.getChannel ().truncate ( length / 2 );
+        out.close ();
+
+        assertNull ( snapshot.read ( "feed" ) );
+    }
+
+    @Test
+    public void read_isFastEnoughForTheFirstFrame() throws IOException {
+        FeedSnapshot snapshot = new FeedSnapshot ( file );
+        snapshot.write ( "feed", articles ( 20 ) );
+        // Warm up, the file is in the page cache as it would be on a warm start
+        for (int i = 0; i < 50; i++) {
+            snapshot.read ( "feed" );
+        }
+
+        long start = System.nanoTime ();
+        List <Article> read = snapshot.read ( "feed" );
+        long micros = (System.nanoTime () - start) / 1000;
+
+        assertEquals ( 20, read.size () );
+        assertTrue ( micros < 50000 );
+    }
+
+    private static List <Article> articles(int count) {
+        List <Article> articles = new ArrayList <> ();
+        for (int i = 0; i < count; i++) {
+            articles.add ( new Article ( "Title " + i + " – ünïcode", "Science", "science", "Author " + i,
+                    "https://www.theguardian.com/science/" + i, 1527967526000L - i * 60000L,
+                    i % 2 == 0 ? "https://media.guim.co.uk/" + i + "/500.jpg" : null ) );
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,91 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the concurrency limit, the bounded queue and cancellation of {@link FetchEngine}.
+ */
+public class FetchEngineTest {
+
+    private final FetchEngine engine = new FetchEngine ( "test", 2, 2 );
+
+    @After
+    public void tearDown() {
+        engine.shutdownNow ();
+    }
+
+    @Test
+    public void submit_runsAtMostConcurrencyLoadsAndRejectsBeyondTheQueue() throws Exception {
+        final CountDownLatch release = new CountDownLatch ( 1 );
+        final CountDownLatch started = new CountDownLatch ( 2 );
+        final AtomicInteger running = new AtomicInteger ();
+        final AtomicInteger maxRunning = new AtomicInteger ();
+        Runnable load = new Runnable () {
+            @Override
+            public void run() {
+                int now = running.incrementAndGet ();
+                synchronized (maxRunning) {
+                    maxRunning.set ( Math.max ( maxRunning.get (), now ) );
+                }
+                started.countDown ();
+                try {
+                    release.await ();
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+                running.decrementAndGet ();
+            }
+        };
+
+        Future <?>[] futures = new Future <?>[4];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = engine.submit ( load );
+        }
+        try {
+            engine.submit ( load );
+            fail ( "Expected the full queue to reject the load" );
+        } catch (RejectedExecutionException expected) {
+            // Two running, two queued
+        }
+        assertEquals ( 2, engine.getQueuedCount () );
+
+        // Both threads have to be running before they are released
+        assertTrue ( started.await ( 5, TimeUnit.SECONDS ) );
+        release.countDown ();
+        for (Future <?> future : futures) {
+            future.get ( 5, TimeUnit.SECONDS );
+        }
+        assertEquals ( 2, maxRunning.get () );
+    }
+
+    @Test
+    public void cancel_interruptsTheRunningLoad() throws Exception {
+        final CountDownLatch started = new CountDownLatch ( 1 );
+        final CountDownLatch interrupted = new CountDownLatch ( 1 );
+        Future <?> future = engine.submit ( new Runnable () {
+            @Override
+            public void run() {
+                started.countDown ();
+                try {
+                    Thread.sleep ( 10000 );
+                } catch (InterruptedException e) {
+                    interrupted.countDown ();
+                }
+            }
+        } );
+
+        assertTrue ( started.await ( 5, TimeUnit.SECONDS ) );
+        future.cancel ( true );
+        assertTrue ( interrupted.await ( 5, TimeUnit.SECONDS ) );
+        assertTrue ( future.isCancelled () );
+    }
+}
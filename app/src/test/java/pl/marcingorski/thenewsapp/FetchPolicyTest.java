@@ -0,0 +1,220 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FetchPolicy} hedges slow attempts, retries failed ones and serves the
+ * last good response when the deadline passes.
+ */
+public class FetchPolicyTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?section=science&page=1";
+
+    private static final List <Article> FRESH = Collections.singletonList (
+            new Article ( "Fresh", "Science", "Author", "https://www.theguardian.com/science/fresh", 0 ) );
+    private static final List <Article> STALE = Collections.singletonList (
+            new Article ( "Stale", "Science", "Author", "https://www.theguardian.com/science/stale", 0 ) );
+
+    private final PipelineMetrics mMetrics = new PipelineMetrics ();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool ( 4 );
+    private final AtomicInteger mAttempts = new AtomicInteger ();
+
+    /**
+     * What the fetchers of a test tell about their attempts
+     */
+    private volatile boolean mRetryable = true;
+    private volatile long mSentAtNanos;
+    private volatile boolean mQueued;
+
+    private final FetchPolicy.Network mNetwork = new FetchPolicy.Network () {
+        @Override
+        public boolean isRetryable() {
+            return mRetryable;
+        }
+
+        @Override
+        public long getSentAtNanos() {
+            return mSentAtNanos;
+        }
+
+        @Override
+        public boolean isQueued() {
+            return mQueued;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow ();
+    }
+
+    @Test
+    public void fetch_hedgesASlowAttemptAndTakesTheFirstAnswer() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                // The first attempt hangs, the hedge answers at once
+                return mAttempts.incrementAndGet () == 1 ? sleep ( 5000 ) : FRESH;
+            }
+        }, 10000 );
+
+        long start = System.nanoTime ();
+        List <Article> articles = policy.fetch ( URL );
+
+        assertSame ( FRESH, articles );
+        assertFalse ( FetchPolicy.isStale ( articles ) );
+        assertTrue ( (System.nanoTime () - start) / 1000000 < 2000 );
+        assertEquals ( 1, mMetrics.counter ( FetchPolicy.HEDGES ).get () );
+        assertEquals ( 1, mMetrics.counter ( FetchPolicy.HEDGE_WINS ).get () );
+    }
+
+    @Test
+    public void fetch_doesNotHedgeInTheBackground() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                mAttempts.incrementAndGet ();
+                sleep ( 300 );
+                return FRESH;
+            }
+        }, 10000 );
+
+        RequestScheduler.Lane previous = RequestScheduler.enterLane ( RequestScheduler.Lane.BACKGROUND );
+        try {
+            assertSame ( FRESH, policy.fetch ( URL ) );
+        } finally {
+            RequestScheduler.enterLane ( previous );
+        }
+        assertEquals ( 1, mAttempts.get () );
+    }
+
+    @Test
+    public void fetch_retriesFailedAttempts() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                return mAttempts.incrementAndGet () < 3 ? null : FRESH;
+            }
+        }, 10000 );
+
+        assertSame ( FRESH, policy.fetch ( URL ) );
+        assertEquals ( 3, mAttempts.get () );
+        assertEquals ( 2, mMetrics.counter ( FetchPolicy.RETRIES ).get () );
+    }
+
+    @Test
+    public void fetch_doesNotRetryAFailureThatWouldHappenAgain() {
+        mRetryable = false;
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                // Like a 404
+                mAttempts.incrementAndGet ();
+                return null;
+            }
+        }, 10000 );
+
+        long start = System.nanoTime ();
+        assertTrue ( FetchPolicy.isStale ( policy.fetch ( URL ) ) );
+        assertTrue ( (System.nanoTime () - start) / 1000000 < 2000 );
+        assertEquals ( 1, mAttempts.get () );
+        assertEquals ( 0, mMetrics.counter ( FetchPolicy.RETRIES ).get () );
+    }
+
+    @Test
+    public void fetch_timesAttemptsFromWhenTheyGotTheirPermit() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                // Waits for a permit, then the response is there at once
+                sleep ( 300 );
+                mSentAtNanos = System.nanoTime ();
+                return FRESH;
+            }
+        }, 10000 );
+        mQueued = true;
+
+        assertSame ( FRESH, policy.fetch ( URL ) );
+        PipelineMetrics.Histogram attempts = mMetrics.histogram ( FetchPolicy.ATTEMPT_TIME );
+        assertEquals ( 1, attempts.getCount () );
+        assertTrue ( attempts.getQuantileMicros ( 1 ) < 100 * 1000 );
+        // Not hedged while waiting for the permit
+        assertEquals ( 0, mMetrics.counter ( FetchPolicy.HEDGES ).get () );
+    }
+
+    @Test
+    public void fetch_servesTheLastGoodResponseWhenTheDeadlinePasses() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                mAttempts.incrementAndGet ();
+                return sleep ( 5000 );
+            }
+        }, 300 );
+
+        long start = System.nanoTime ();
+        List <Article> articles = policy.fetch ( URL );
+
+        assertEquals ( STALE, articles );
+        assertTrue ( FetchPolicy.isStale ( articles ) );
+        assertTrue ( (System.nanoTime () - start) / 1000000 < 2000 );
+        assertEquals ( 1, mMetrics.counter ( FetchPolicy.DEADLINES ).get () );
+        assertEquals ( 1, mMetrics.counter ( FetchPolicy.STALE ).get () );
+    }
+
+    @Test
+    public void hedgeDelay_followsThe95thPercentileOfTheAttempts() {
+        FetchPolicy policy = policy ( new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                return FRESH;
+            }
+        }, 10000 );
+        assertEquals ( 100, policy.getHedgeDelayMillis () );
+
+        PipelineMetrics.Histogram attempts = mMetrics.histogram ( FetchPolicy.ATTEMPT_TIME );
+        for (int i = 0; i < 19; i++) {
+            attempts.record ( 10 * 1000 * 1000 );
+        }
+        attempts.record ( 900 * 1000 * 1000 );
+        // Bucket bound of 10 ms, the one slow attempt is above the percentile
+        assertEquals ( 16, policy.getHedgeDelayMillis () );
+
+        // Mostly fast attempts, but never hedged before the minimum
+        for (int i = 0; i < 400; i++) {
+            attempts.record ( 1000 );
+        }
+        assertEquals ( 5, policy.getHedgeDelayMillis () );
+    }
+
+    private FetchPolicy policy(SectionFanOut.Fetcher fetcher, long deadlineMillis) {
+        return new FetchPolicy ( fetcher, mNetwork, new FetchPolicy.StaleSource () {
+            @Override
+            public List <Article> stale(String url) {
+                return STALE;
+            }
+        }, mExecutor, deadlineMillis, 5, 100, new SyncBackoff ( 10, 20, new Random ( 1 ) ), mMetrics );
+    }
+
+    /**
+     * Sleeps like a hanging request and returns null, or returns early when cancelled.
+     */
+    private static List <Article> sleep(long millis) {
+        try {
+            Thread.sleep ( millis );
+        } catch (InterruptedException e) {
+            // Cancelled
+        }
+        return null;
+    }
+}
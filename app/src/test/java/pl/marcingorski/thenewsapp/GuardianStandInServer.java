@@ -0,0 +1,268 @@
+package pl.marcingorski.thenewsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the Guardian "search" endpoint, so the fetch and parse pipeline can be
+ * measured without a network.
+ * <p>
+ * Every page of every section is a synthetic response with the fields the app reads: one
+ * contributor tag, a thumbnail, and a trail text padded to the configured size. Responses
+ * depend only on the query and the {@link Behavior}, so each one has a stable ETag and a
+ * conditional request for it is answered with a 304. The latency, jitter, stalls, 503
+ * responses and dropped connections are drawn from a seeded random, and responses are
+ * gzipped for clients that accept it.
+ */
+final class GuardianStandInServer {
+
+    /**
+     * How the server answers, read by every request, so it may be changed between runs.
+     */
+    static final class Behavior {
+        /**
+         * Results of every section, pages past them are short or empty
+         */
+        volatile int results = 500;
+        /**
+         * Bytes of trail text per result
+         */
+        volatile int paddingBytes = 200;
+        volatile long latencyMillis;
+        /**
+         * Up to this much is added to the latency, uniformly distributed
+         */
+        volatile long jitterMillis;
+        /**
+         * Share of the requests, 0 to 1, that stall for this much longer, the tail of the network
+         */
+        volatile double stallRate;
+        volatile long stallMillis;
+        /**
+         * Share of the requests answered with a 503, 0 to 1
+         */
+        volatile double errorRate;
+        /**
+         * Share of the requests, 0 to 1, whose connection is dropped halfway through the body
+         */
+        volatile double dropRate;
+        volatile boolean gzip = true;
+        volatile boolean etags = true;
+    }
+
+    private static final Charset UTF_8 = Charset.forName ( "UTF-8" );
+    private static final long NEWEST_MILLIS = PublicationDates.parse ( "2018-06-02T12:00:00Z" );
+    private static final long MINUTE = 60 * 1000;
+
+    private final Behavior mBehavior;
+    private final Random mRandom;
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool ();
+
+    /**
+     * Bodies by query and behavior, so generating them does not count against the latency
+     */
+    private final Map <String, byte[]> mBodies = new ConcurrentHashMap <> ();
+
+    private final AtomicInteger mRequests = new AtomicInteger ();
+    private final AtomicInteger mNotModified = new AtomicInteger ();
+    private final AtomicInteger mErrors = new AtomicInteger ();
+    private final AtomicInteger mDropped = new AtomicInteger ();
+    private final AtomicInteger mGzipped = new AtomicInteger ();
+    private final AtomicLong mBytesSent = new AtomicLong ();
+
+    GuardianStandInServer(Behavior behavior, long seed) throws IOException {
+        mBehavior = behavior;
+        mRandom = new Random ( seed );
+        mServer = HttpServer.create ( new InetSocketAddress ( "127.0.0.1", 0 ), 0 );
+        mServer.setExecutor ( mExecutor );
+        mServer.createContext ( "/search", new HttpHandler () {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond ( exchange );
+                } finally {
+                    exchange.close ();
+                }
+            }
+        } );
+        mServer.start ();
+    }
+
+    /**
+     * Returns the URL of a page of a section, numbered from 1.
+     */
+    String searchUrl(String section, int page, int pageSize) {
+        return "http://127.0.0.1:" + mServer.getAddress ().getPort () + "/search?section=" + section
+                + "&order-by=newest&page=" + page + "&page-size=" + pageSize;
+    }
+
+    int getRequestCount() {
+        return mRequests.get ();
+    }
+
+    int getNotModifiedCount() {
+        return mNotModified.get ();
+    }
+
+    int getErrorCount() {
+        return mErrors.get ();
+    }
+
+    int getDroppedCount() {
+        return mDropped.get ();
+    }
+
+    int getGzippedCount() {
+        return mGzipped.get ();
+    }
+
+    long getBytesSent() {
+        return mBytesSent.get ();
+    }
+
+    void stop() {
+        mServer.stop ( 0 );
+        mExecutor.shutdownNow ();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet ();
+        long delay;
+        boolean fail;
+        boolean drop;
+        synchronized (mRandom) {
+            delay = mBehavior.latencyMillis + (long) (mRandom.nextDouble () * mBehavior.jitterMillis);
+            if (mRandom.nextDouble () < mBehavior.stallRate) {
+                delay += mBehavior.stallMillis;
+            }
+            fail = mRandom.nextDouble () < mBehavior.errorRate;
+            drop = mRandom.nextDouble () < mBehavior.dropRate;
+        }
+        try {
+            Thread.sleep ( delay );
+        } catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return;
+        }
+        if (fail) {
+            mErrors.incrementAndGet ();
+            exchange.sendResponseHeaders ( 503, -1 );
+            return;
+        }
+
+        Map <String, String> query = parseQuery ( exchange.getRequestURI ().getRawQuery () );
+        byte[] body = body ( query );
+        if (mBehavior.etags) {
+            String etag = "\"" + Integer.toHexString ( Arrays.hashCode ( body ) ) + "\"";
+            exchange.getResponseHeaders ().add ( "ETag", etag );
+            if (etag.equals ( exchange.getRequestHeaders ().getFirst ( "If-None-Match" ) )) {
+                mNotModified.incrementAndGet ();
+                exchange.sendResponseHeaders ( 304, -1 );
+                return;
+            }
+        }
+        String acceptEncoding = exchange.getRequestHeaders ().getFirst ( "Accept-Encoding" );
+        if (mBehavior.gzip && acceptEncoding != null && acceptEncoding.contains ( "gzip" )) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream ();
+            GZIPOutputStream gzip = new GZIPOutputStream ( compressed );
+            gzip.write ( body );
+            gzip.close ();
+            body = compressed.toByteArray ();
+            exchange.getResponseHeaders ().add ( "Content-Encoding", "gzip" );
+            mGzipped.incrementAndGet ();
+        }
+        exchange.getResponseHeaders ().add ( "Content-Type", "application/json" );
+        exchange.sendResponseHeaders ( 200, body.length );
+        OutputStream out = exchange.getResponseBody ();
+        if (drop) {
+            out.write ( body, 0, body.length / 2 );
+            out.flush ();
+            mDropped.incrementAndGet ();
+            // Failing the exchange makes the server close the connection
+            throw new IOException ( "Dropped the connection" );
+        }
+        out.write ( body );
+        out.close ();
+        mBytesSent.addAndGet ( body.length );
+    }
+
+    private byte[] body(Map <String, String> query) {
+        String section = query.containsKey ( "section" ) ? query.get ( "section" ).split ( "\\|" )[0] : "news";
+        int page = query.containsKey ( "page" ) ? Integer.parseInt ( query.get ( "page" ) ) : 1;
+        int pageSize = query.containsKey ( "page-size" ) ? Integer.parseInt ( query.get ( "page-size" ) ) : 10;
+        int results = mBehavior.results;
+        int paddingBytes = mBehavior.paddingBytes;
+        String key = section + '/' + page + '/' + pageSize + '/' + results + '/' + paddingBytes;
+        byte[] body = mBodies.get ( key );
+        if (body == null) {
+            body = searchResponse ( section, page, pageSize, results, paddingBytes ).getBytes ( UTF_8 );
+            mBodies.put ( key, body );
+        }
+        return body;
+    }
+
+    private static String searchResponse(String section, int page, int pageSize, int results, int paddingBytes) {
+        int first = Math.min ( results, (page - 1) * pageSize );
+        int last = Math.min ( results, page * pageSize );
+        char[] padding = new char[paddingBytes];
+        Arrays.fill ( padding, 'x' );
+
+        StringBuilder json = new StringBuilder ();
+        json.append ( "{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":" ).append ( results )
+                .append ( ",\"startIndex\":" ).append ( first + 1 ).append ( ",\"pageSize\":" ).append ( pageSize )
+                .append ( ",\"currentPage\":" ).append ( page ).append ( ",\"orderBy\":\"newest\",\"results\":[" );
+        for (int i = first; i < last; i++) {
+            if (i > first) {
+                json.append ( ',' );
+            }
+            String id = section + "/2018/jun/02/story-" + i;
+            json.append ( "{\"id\":\"" ).append ( id )
+                    .append ( "\",\"type\":\"article\",\"sectionId\":\"" ).append ( section )
+                    .append ( "\",\"sectionName\":\"" ).append ( section )
+                    .append ( "\",\"webPublicationDate\":\"" )
+                    .append ( PublicationDates.toIso ( NEWEST_MILLIS - i * MINUTE ) )
+                    .append ( "\",\"webTitle\":\"Story " ).append ( i ).append ( " of " ).append ( section )
+                    .append ( "\",\"webUrl\":\"https://www.theguardian.com/" ).append ( id )
+                    .append ( "\",\"apiUrl\":\"https://content.guardianapis.com/" ).append ( id )
+                    .append ( "\",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/" ).append ( i )
+                    .append ( "/500.jpg\",\"trailText\":\"" ).append ( padding )
+                    .append ( "\"},\"tags\":[{\"id\":\"profile/writer\",\"type\":\"contributor\",\"webTitle\":\"Writer " )
+                    .append ( i % 50 ).append ( "\"}]}" );
+        }
+        return json.append ( "]}}" ).toString ();
+    }
+
+    private static Map <String, String> parseQuery(String rawQuery) throws IOException {
+        Map <String, String> query = new HashMap <> ();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split ( "&" )) {
+            int equals = parameter.indexOf ( '=' );
+            if (equals > 0) {
+                query.put ( URLDecoder.decode ( parameter.substring ( 0, equals ), "UTF-8" ),
+                        URLDecoder.decode ( parameter.substring ( equals + 1 ), "UTF-8" ) );
+            }
+        }
+        return query;
+    }
+}
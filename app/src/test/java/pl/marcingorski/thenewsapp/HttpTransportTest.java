@@ -0,0 +1,121 @@
+package pl.marcingorski.thenewsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link HttpTransport} against a local server that gzips the recorded Guardian payload.
+ */
+public class HttpTransportTest {
+
+    private HttpServer server;
+    private byte[] payload;
+    private String acceptEncoding;
+    private final List <Integer> clientPorts = new ArrayList <> ();
+
+    @Before
+    public void setUp() throws IOException {
+        payload = readResource ( "/guardian_search.json" );
+        server = HttpServer.create ( new InetSocketAddress ( "127.0.0.1", 0 ), 0 );
+        server.createContext ( "/search", new HttpHandler () {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                acceptEncoding = exchange.getRequestHeaders ().getFirst ( "Accept-Encoding" );
+                synchronized (clientPorts) {
+                    clientPorts.add ( exchange.getRemoteAddress ().getPort () );
+                }
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream ();
+                GZIPOutputStream gzip = new GZIPOutputStream ( compressed );
+                gzip.write ( payload );
+                gzip.close ();
+                exchange.getResponseHeaders ().add ( "Content-Encoding", "gzip" );
+                exchange.sendResponseHeaders ( 200, compressed.size () );
+                OutputStream body = exchange.getResponseBody ();
+                body.write ( compressed.toByteArray () );
+                body.close ();
+            }
+        } );
+        server.start ();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop ( 0 );
+    }
+
+    @Test
+    public void get_decodesGzipBodyAndCountsBytes() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool ( 1024, 2 );
+        HttpTransport transport = new HttpTransport ( pool );
+        URL url = new URL ( "http://127.0.0.1:" + server.getAddress ().getPort () + "/search" );
+
+        HttpTransport.Response response = transport.get ( url );
+        List <Article> articles;
+        try {
+            assertEquals ( 200, response.getResponseCode () );
+            articles = ArticleJsonDecoder.decode ( response.body () );
+        } finally {
+            response.close ();
+        }
+
+        assertEquals ( "gzip", acceptEncoding );
+        assertEquals ( 3, articles.size () );
+        assertEquals ( payload.length, transport.getTotalDecodedBytes () );
+        assertTrue ( transport.getTotalWireBytes () > 0 );
+        assertTrue ( transport.getTotalWireBytes () < transport.getTotalDecodedBytes () );
+        // The body buffer went back to the pool
+        assertEquals ( 1, pool.pooledCount () );
+    }
+
+    @Test
+    public void close_keepsTheConnectionForTheNextRequest() throws IOException {
+        HttpTransport transport = new HttpTransport ( new ByteBufferPool ( 1024, 2 ) );
+        URL url = new URL ( "http://127.0.0.1:" + server.getAddress ().getPort () + "/search" );
+
+        int requests = 5;
+        for (int i = 0; i < requests; i++) {
+            HttpTransport.Response response = transport.get ( url );
+            // The body is left unread, closing reads the rest so the connection can be reused
+            response.close ();
+        }
+
+        assertEquals ( requests, transport.getRequestCount () );
+        // Every request went over the socket of the first one
+        assertEquals ( requests, clientPorts.size () );
+        for (int port : clientPorts) {
+            assertEquals ( clientPorts.get ( 0 ), Integer.valueOf ( port ) );
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = HttpTransportTest.class.getResourceAsStream ( name );
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream ();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read ( buffer )) != -1) {
+                out.write ( buffer, 0, read );
+            }
+            return out.toByteArray ();
+        } finally {
+            in.close ();
+        }
+    }
+}
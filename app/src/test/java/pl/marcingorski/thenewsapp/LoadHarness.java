@@ -0,0 +1,106 @@
+package pl.marcingorski.thenewsapp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a number of requests through a {@link SectionFanOut.Fetcher} from a number of threads
+ * at once, and reports the throughput and the latency percentiles.
+ * <p>
+ * Every thread takes the next request as soon as its previous one is done, so the
+ * concurrency is the number of requests in flight. The URLs are used in turn.
+ */
+final class LoadHarness {
+
+    /**
+     * The outcome of a run.
+     */
+    static final class Report {
+        final String name;
+        final int concurrency;
+        final int failures;
+        final long elapsedNanos;
+
+        /**
+         * The time of every request, ascending
+         */
+        private final long[] mLatenciesNanos;
+
+        Report(String name, int concurrency, int failures, long elapsedNanos, long[] latenciesNanos) {
+            this.name = name;
+            this.concurrency = concurrency;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            mLatenciesNanos = latenciesNanos.clone ();
+            Arrays.sort ( mLatenciesNanos );
+        }
+
+        int getRequestCount() {
+            return mLatenciesNanos.length;
+        }
+
+        double getRequestsPerSecond() {
+            return mLatenciesNanos.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the latency below which the given share (0 to 1) of the requests finished,
+         * by nearest rank, in milliseconds.
+         */
+        double getPercentileMillis(double quantile) {
+            int rank = (int) Math.ceil ( quantile * mLatenciesNanos.length );
+            return mLatenciesNanos[Math.max ( 0, rank - 1 )] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format ( Locale.US,
+                    "%-8s concurrency %2d: %4d requests, %3d failed, %7.1f req/s, p50 %6.1f ms, p90 %6.1f ms, "
+                            + "p99 %6.1f ms, max %6.1f ms",
+                    name, concurrency, getRequestCount (), failures, getRequestsPerSecond (),
+                    getPercentileMillis ( 0.5 ), getPercentileMillis ( 0.9 ), getPercentileMillis ( 0.99 ),
+                    getPercentileMillis ( 1 ) );
+        }
+    }
+
+    private LoadHarness() {
+    }
+
+    /**
+     * Sends the requests and blocks until all of them finished. A null result counts as a failure.
+     */
+    static Report run(String name, final SectionFanOut.Fetcher fetcher, final List <String> urls,
+                      int concurrency, int requests) throws InterruptedException {
+        final long[] latencies = new long[requests];
+        final AtomicInteger next = new AtomicInteger ();
+        final AtomicInteger failures = new AtomicInteger ();
+        final CountDownLatch done = new CountDownLatch ( concurrency );
+
+        long start = System.nanoTime ();
+        for (int t = 0; t < concurrency; t++) {
+            Thread thread = new Thread ( new Runnable () {
+                @Override
+                public void run() {
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement ()) < latencies.length) {
+                            long requestStart = System.nanoTime ();
+                            if (fetcher.fetch ( urls.get ( i % urls.size () ) ) == null) {
+                                failures.incrementAndGet ();
+                            }
+                            latencies[i] = System.nanoTime () - requestStart;
+                        }
+                    } finally {
+                        done.countDown ();
+                    }
+                }
+            }, "load-" + t );
+            thread.start ();
+        }
+        done.await ();
+        return new Report ( name, concurrency, failures.get (), System.nanoTime () - start, latencies );
+    }
+}
@@ -0,0 +1,138 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the fetch and parse pipeline of {@link QueryUtils} against a
+ * {@link GuardianStandInServer} at several concurrency levels, so performance changes can be
+ * compared on a machine without a network. It takes a while and its latency checks depend on
+ * the machine, so it is skipped unless the "load" system property is set, e.g. with
+ * {@code ./gradlew :app:testDebugUnitTest -Pload --tests '*PipelineLoadTest'}.
+ * <p>
+ * Requests go through the response cache like in the app, so after the first round most
+ * of them are conditional and answered with a 304. The quota of the API key is lifted for
+ * the run.
+ */
+public class PipelineLoadTest {
+
+    private static final String[] SECTIONS = {"business", "fashion", "lifeandstyle", "science", "technology"};
+    private static final int PAGES = 4;
+    private static final int PAGE_SIZE = 50;
+    private static final int[] CONCURRENCY = {1, 4, 16};
+    private static final int REQUESTS = 200;
+
+    private final GuardianStandInServer.Behavior behavior = new GuardianStandInServer.Behavior ();
+    private GuardianStandInServer server;
+    private File directory;
+    private DiskResponseCache cache;
+    private RequestScheduler quota;
+    private final List <String> urls = new ArrayList <> ();
+
+    @BeforeClass
+    public static void onlyWhenAskedFor() {
+        Assume.assumeTrue ( Boolean.getBoolean ( "load" ) );
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new GuardianStandInServer ( behavior, 42 );
+        directory = File.createTempFile ( "responses", "" );
+        directory.delete ();
+        directory.mkdirs ();
+        cache = new DiskResponseCache ( directory, 16 * 1024 * 1024 );
+        quota = QueryUtils.setScheduler ( new RequestScheduler ( 1e6, 1000, new PipelineMetrics () ) );
+        for (String section : SECTIONS) {
+            for (int page = 1; page <= PAGES; page++) {
+                urls.add ( server.searchUrl ( section, page, PAGE_SIZE ) );
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setScheduler ( quota );
+        server.stop ();
+        File[] files = directory.listFiles ();
+        if (files != null) {
+            for (File file : files) {
+                file.delete ();
+            }
+        }
+        directory.delete ();
+    }
+
+    @Test
+    public void pipeline_reportsThroughputAndLatencyAtEachConcurrency() throws InterruptedException {
+        behavior.latencyMillis = 10;
+        behavior.jitterMillis = 20;
+        behavior.paddingBytes = 500;
+
+        for (int concurrency : CONCURRENCY) {
+            LoadHarness.Report report = LoadHarness.run ( "pipeline", pipeline (), urls, concurrency, REQUESTS );
+            assertEquals ( 0, report.failures );
+        }
+
+        // Only the first round downloads the pages, in gzip
+        assertEquals ( urls.size (), server.getGzippedCount () );
+        assertEquals ( CONCURRENCY.length * REQUESTS - urls.size (), server.getNotModifiedCount () );
+    }
+
+    @Test
+    public void fetchPolicy_keepsTheTailShortWithErrorsAndSlowResponses() throws InterruptedException {
+        behavior.latencyMillis = 5;
+        behavior.jitterMillis = 5;
+        behavior.etags = false;
+        // Warm up the connections and the response cache without errors
+        LoadHarness.run ( "warm-up", pipeline (), urls, 4, urls.size () );
+
+        behavior.errorRate = 0.1;
+        behavior.jitterMillis = 20;
+        behavior.stallRate = 0.05;
+        behavior.stallMillis = 1500;
+        LoadHarness.Report plain = LoadHarness.run ( "plain", pipeline (), urls, 8, REQUESTS );
+        ExecutorService attempts = Executors.newFixedThreadPool ( 16 );
+        LoadHarness.Report policy;
+        try {
+            policy = LoadHarness.run ( "policy", new FetchPolicy ( pipeline (), QueryUtils.NETWORK, new FetchPolicy.StaleSource () {
+                @Override
+                public List <Article> stale(String url) {
+                    return QueryUtils.readCachedNewsData ( url, cache, GuardianProvider.getDefault () );
+                }
+            }, attempts, 2000, 50, 100, new SyncBackoff ( 20, 100, new Random ( 7 ) ), new PipelineMetrics () ),
+                    urls, 8, REQUESTS );
+        } finally {
+            attempts.shutdownNow ();
+        }
+
+        assertTrue ( plain.failures > 0 );
+        assertEquals ( 0, policy.failures );
+        // The stalls set the tail of the plain requests, the hedges cut them short
+        assertTrue ( policy.getPercentileMillis ( 0.99 ) < plain.getPercentileMillis ( 0.99 ) );
+    }
+
+    /**
+     * The requests of the app: conditional, decoded while they are read, and cached.
+     */
+    private SectionFanOut.Fetcher pipeline() {
+        return new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                return QueryUtils.fetchNewsData ( url, cache );
+            }
+        };
+    }
+}
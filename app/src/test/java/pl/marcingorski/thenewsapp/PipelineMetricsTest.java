@@ -0,0 +1,107 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the histograms, counters and the dump of {@link PipelineMetrics}.
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void histogram_boundsQuantilesByPowersOfTwo() {
+        PipelineMetrics.Histogram histogram = new PipelineMetrics ().histogram ( PipelineMetrics.CONNECT );
+        assertEquals ( 0, histogram.getQuantileMicros ( 0.5 ) );
+
+        // 90 fast ones of 100 us and 10 slow ones of 50 ms
+        for (int i = 0; i < 90; i++) {
+            histogram.record ( 100 * 1000 );
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record ( 50 * 1000 * 1000 );
+        }
+
+        assertEquals ( 100, histogram.getCount () );
+        assertEquals ( 50 * 1000 * 1000, histogram.getMaxNanos () );
+        assertEquals ( 128, histogram.getQuantileMicros ( 0.5 ) );
+        assertEquals ( 128, histogram.getQuantileMicros ( 0.9 ) );
+        // The bucket of 50 ms ends at 65.5 ms, but nothing was slower than 50 ms
+        assertEquals ( 50001, histogram.getQuantileMicros ( 0.99 ) );
+    }
+
+    @Test
+    public void histogramAndCounter_areSharedByName() {
+        PipelineMetrics metrics = new PipelineMetrics ();
+        assertSame ( metrics.histogram ( PipelineMetrics.BIND ), metrics.histogram ( PipelineMetrics.BIND ) );
+
+        metrics.counter ( PipelineMetrics.ARTICLES ).add ( 20 );
+        metrics.counter ( PipelineMetrics.ARTICLES ).increment ();
+        metrics.countStatus ( 200 );
+        metrics.countStatus ( 200 );
+        metrics.countStatus ( 304 );
+
+        assertEquals ( 21, metrics.counter ( PipelineMetrics.ARTICLES ).get () );
+        assertEquals ( 2, metrics.counter ( "http_200" ).get () );
+        assertEquals ( 1, metrics.counter ( "http_304" ).get () );
+    }
+
+    @Test
+    public void gauge_keepsItsLevelOnReset() {
+        PipelineMetrics metrics = new PipelineMetrics ();
+        metrics.gauge ( "queued" ).add ( 3 );
+        metrics.gauge ( "queued" ).add ( -1 );
+        metrics.reset ();
+
+        assertEquals ( 2, metrics.gauge ( "queued" ).get () );
+        assertTrue ( metrics.dump ().contains ( "Gauges" ) );
+    }
+
+    @Test
+    public void record_countsEveryValueFromSeveralThreads() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics ();
+        final PipelineMetrics.Histogram histogram = metrics.histogram ( PipelineMetrics.REQUEST );
+        final PipelineMetrics.Counter counter = metrics.counter ( PipelineMetrics.REQUESTS );
+        final CountDownLatch done = new CountDownLatch ( 4 );
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            new Thread ( new Runnable () {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 10000; i++) {
+                        histogram.record ( thread * 10000 + i );
+                        counter.increment ();
+                    }
+                    done.countDown ();
+                }
+            } ).start ();
+        }
+        done.await ();
+
+        assertEquals ( 40000, histogram.getCount () );
+        assertEquals ( 40000, counter.get () );
+        assertEquals ( 40000, histogram.getMaxNanos () );
+        assertEquals ( 40000L * 40001 / 2, histogram.getTotalNanos () );
+    }
+
+    @Test
+    public void dump_listsEveryMetricAndResetClearsThem() {
+        PipelineMetrics metrics = new PipelineMetrics ();
+        PipelineMetrics.Histogram decode = metrics.histogram ( PipelineMetrics.READ_DECODE );
+        decode.record ( 3 * 1000 * 1000 );
+        metrics.counter ( PipelineMetrics.WIRE_BYTES ).add ( 4096 );
+
+        String dump = metrics.dump ();
+        assertTrue ( dump, dump.contains ( "read_decode        1     3.00" ) );
+        assertTrue ( dump, dump.contains ( "wire_bytes" ) && dump.contains ( "4096" ) );
+
+        metrics.reset ();
+        assertEquals ( 0, decode.getCount () );
+        assertEquals ( 0, metrics.counter ( PipelineMetrics.WIRE_BYTES ).get () );
+        // Still registered, so the stage keeps recording
+        decode.record ( 1000 );
+        assertEquals ( 1, metrics.histogram ( PipelineMetrics.READ_DECODE ).getCount () );
+    }
+}
@@ -0,0 +1,76 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class PublicationDatesTest {
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault ();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault ( defaultTimeZone );
+    }
+
+    @Test
+    public void parse_matchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat reference = new SimpleDateFormat ( "yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US );
+        reference.setTimeZone ( TimeZone.getTimeZone ( "UTC" ) );
+        String[] dates = {"1970-01-01T00:00:00Z", "2000-02-29T23:59:59Z", "2018-06-02T19:25:26Z",
+                "2018-12-31T00:00:01Z", "2100-03-01T12:00:00Z"};
+        for (String date : dates) {
+            assertEquals ( date, reference.parse ( date ).getTime (), PublicationDates.parse ( date ) );
+        }
+    }
+
+    @Test
+    public void parse_acceptsFractionalSeconds() {
+        assertEquals ( 1527967526123L, PublicationDates.parse ( "2018-06-02T19:25:26.123Z" ) );
+        assertEquals ( 1527967526500L, PublicationDates.parse ( "2018-06-02T19:25:26.5Z" ) );
+    }
+
+    @Test
+    public void parse_rejectsMalformedDates() {
+        String[] dates = {null, "", "2018-06-02", "2018-06-02T19:25:26", "2018-06-02 19:25:26Z",
+                "2018-13-02T19:25:26Z", "2018-02-29T19:25:26Z", "2018-06-02T24:00:00Z", "2018-06-02T19:25:26.Z",
+                "2018-06-02T19:25:26+01:00"};
+        for (String date : dates) {
+            assertEquals ( String.valueOf ( date ), PublicationDates.UNKNOWN, PublicationDates.parse ( date ) );
+        }
+    }
+
+    @Test
+    public void toIso_isTheInverseOfParse() {
+        String[] dates = {"1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "2000-02-29T23:59:59Z",
+                "2018-06-02T19:25:26Z", "2018-12-31T00:00:01Z", "2100-03-01T12:00:00Z"};
+        for (String date : dates) {
+            assertEquals ( date, PublicationDates.toIso ( PublicationDates.parse ( date ) ) );
+        }
+        assertEquals ( "2018-06-02T19:25:26Z", PublicationDates.toIso ( 1527967526999L ) );
+    }
+
+    @Test
+    public void format_usesTheDeviceTimeZone() {
+        long millis = PublicationDates.parse ( "2018-06-02T19:25:26Z" );
+
+        TimeZone.setDefault ( TimeZone.getTimeZone ( "UTC" ) );
+        assertEquals ( "19:25    02.06.2018", PublicationDates.format ( millis ) );
+
+        TimeZone.setDefault ( TimeZone.getTimeZone ( "Europe/Warsaw" ) );
+        assertEquals ( "21:25    02.06.2018", PublicationDates.format ( millis ) );
+
+        assertEquals ( "", PublicationDates.format ( PublicationDates.UNKNOWN ) );
+    }
+}
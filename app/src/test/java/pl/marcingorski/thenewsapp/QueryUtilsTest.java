@@ -0,0 +1,113 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link QueryUtils} against a {@link GuardianStandInServer} that drops connections
+ * partway through a body, which must fail the request rather than look like an empty feed.
+ */
+public class QueryUtilsTest {
+
+    private final GuardianStandInServer.Behavior behavior = new GuardianStandInServer.Behavior ();
+    private GuardianStandInServer server;
+    private File directory;
+    private DiskResponseCache cache;
+    private RequestScheduler quota;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new GuardianStandInServer ( behavior, 3 );
+        directory = File.createTempFile ( "responses", "" );
+        directory.delete ();
+        cache = new DiskResponseCache ( directory, 1024 * 1024 );
+        quota = QueryUtils.setScheduler ( new RequestScheduler ( 1e6, 1000, new PipelineMetrics () ) );
+        url = server.searchUrl ( "science", 1, 10 );
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setScheduler ( quota );
+        server.stop ();
+        File[] files = directory.listFiles ();
+        if (files != null) {
+            for (File file : files) {
+                file.delete ();
+            }
+        }
+        directory.delete ();
+    }
+
+    @Test
+    public void fetchNewsData_failsAndMayBeRetriedWhenTheConnectionDropsInAGzipBody() {
+        behavior.dropRate = 1;
+
+        assertNull ( QueryUtils.fetchNewsData ( url, cache ) );
+        assertTrue ( QueryUtils.NETWORK.isRetryable () );
+        assertEquals ( 1, server.getDroppedCount () );
+
+        // The half body was not cached, so the next request is not conditional
+        behavior.dropRate = 0;
+        assertEquals ( 10, QueryUtils.fetchNewsData ( url, cache ).size () );
+        assertEquals ( 0, server.getNotModifiedCount () );
+    }
+
+    @Test
+    public void fetchNewsData_failsAndMayBeRetriedWhenTheConnectionDropsInAPlainBody() {
+        behavior.gzip = false;
+        behavior.dropRate = 1;
+
+        assertNull ( QueryUtils.fetchNewsData ( url, cache ) );
+        assertTrue ( QueryUtils.NETWORK.isRetryable () );
+        assertNull ( QueryUtils.fetchNewsData ( url ) );
+        assertTrue ( QueryUtils.NETWORK.isRetryable () );
+        assertEquals ( 2, server.getDroppedCount () );
+    }
+
+    @Test
+    public void fetchPolicy_servesTheLastGoodResponseWhenTheConnectionKeepsDropping() {
+        List <Article> fresh = QueryUtils.fetchNewsData ( url, cache );
+        assertEquals ( 10, fresh.size () );
+
+        // Answer the conditional requests with the whole body, and drop it
+        behavior.etags = false;
+        behavior.dropRate = 1;
+        ExecutorService attempts = Executors.newFixedThreadPool ( 4 );
+        List <Article> articles;
+        try {
+            articles = new FetchPolicy ( new SectionFanOut.Fetcher () {
+                @Override
+                public List <Article> fetch(String url) {
+                    return QueryUtils.fetchNewsData ( url, cache );
+                }
+            }, QueryUtils.NETWORK, new FetchPolicy.StaleSource () {
+                @Override
+                public List <Article> stale(String url) {
+                    return QueryUtils.readCachedNewsData ( url, cache, GuardianProvider.getDefault () );
+                }
+            }, attempts, 500, 50, 100, new SyncBackoff ( 20, 50, new Random ( 5 ) ), new PipelineMetrics () )
+                    .fetch ( url );
+        } finally {
+            attempts.shutdownNow ();
+        }
+
+        assertTrue ( FetchPolicy.isStale ( articles ) );
+        assertEquals ( fresh.size (), articles.size () );
+        for (int i = 0; i < fresh.size (); i++) {
+            assertTrue ( fresh.get ( i ).hasSameContents ( articles.get ( i ) ) );
+        }
+        // Retried rather than taken as an empty feed
+        assertTrue ( server.getDroppedCount () > 1 );
+    }
+}
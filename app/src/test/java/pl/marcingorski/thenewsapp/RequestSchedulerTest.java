@@ -0,0 +1,125 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    private final PipelineMetrics metrics = new PipelineMetrics ();
+
+    @Test
+    public void burstPassesAtOnceThenTheRateApplies() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler ( 20, 3, metrics );
+        long start = System.nanoTime ();
+        for (int i = 0; i < 3; i++) {
+            scheduler.acquire ( RequestScheduler.Lane.INTERACTIVE );
+        }
+        assertTrue ( millisSince ( start ) < 40 );
+
+        // The fourth waits for a token, 50 ms at 20 per second
+        scheduler.acquire ( RequestScheduler.Lane.INTERACTIVE );
+        assertTrue ( millisSince ( start ) >= 40 );
+        assertEquals ( 4, metrics.histogram ( RequestScheduler.WAIT_PREFIX + "interactive" ).getCount () );
+    }
+
+    @Test
+    public void moreImportantLaneGoesFirst() throws InterruptedException {
+        final RequestScheduler scheduler = new RequestScheduler ( 100, 1, metrics );
+        // Hold every lane while both callers line up
+        scheduler.onRateLimited ( 300 );
+
+        final List <RequestScheduler.Lane> order = Collections.synchronizedList ( new ArrayList <RequestScheduler.Lane> () );
+        Thread prefetch = waiter ( scheduler, RequestScheduler.Lane.PREFETCH, order );
+        awaitQueueDepth ( scheduler, RequestScheduler.Lane.PREFETCH, 1 );
+        Thread background = waiter ( scheduler, RequestScheduler.Lane.BACKGROUND, order );
+        awaitQueueDepth ( scheduler, RequestScheduler.Lane.BACKGROUND, 1 );
+        Thread interactive = waiter ( scheduler, RequestScheduler.Lane.INTERACTIVE, order );
+        awaitQueueDepth ( scheduler, RequestScheduler.Lane.INTERACTIVE, 1 );
+        assertEquals ( 1, metrics.gauge ( RequestScheduler.QUEUED_PREFIX + "prefetch" ).get () );
+
+        prefetch.join ();
+        background.join ();
+        interactive.join ();
+        assertEquals ( Arrays.asList ( RequestScheduler.Lane.INTERACTIVE, RequestScheduler.Lane.BACKGROUND,
+                RequestScheduler.Lane.PREFETCH ), order );
+        assertEquals ( 0, metrics.gauge ( RequestScheduler.QUEUED_PREFIX + "prefetch" ).get () );
+    }
+
+    @Test
+    public void rateLimitHoldsRequestsAndEmptiesTheBucket() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler ( 1000, 10, metrics );
+        scheduler.onRateLimited ( 200 );
+
+        long start = System.nanoTime ();
+        scheduler.acquire ( RequestScheduler.Lane.INTERACTIVE );
+        assertTrue ( millisSince ( start ) >= 190 );
+        assertEquals ( 1, metrics.counter ( RequestScheduler.RATE_LIMITED ).get () );
+    }
+
+    @Test
+    public void interruptedCallerLeavesTheQueue() throws InterruptedException {
+        final RequestScheduler scheduler = new RequestScheduler ( 1, 1, metrics );
+        scheduler.onRateLimited ( 60 * 1000 );
+        final List <RequestScheduler.Lane> order = Collections.synchronizedList ( new ArrayList <RequestScheduler.Lane> () );
+        Thread waiting = waiter ( scheduler, RequestScheduler.Lane.BACKGROUND, order );
+        awaitQueueDepth ( scheduler, RequestScheduler.Lane.BACKGROUND, 1 );
+
+        waiting.interrupt ();
+        waiting.join ();
+        assertEquals ( 0, scheduler.getQueueDepth ( RequestScheduler.Lane.BACKGROUND ) );
+        assertTrue ( order.isEmpty () );
+    }
+
+    @Test
+    public void lanesFollowTheThread() {
+        assertEquals ( RequestScheduler.Lane.INTERACTIVE, RequestScheduler.currentLane () );
+        RequestScheduler.Lane previous = RequestScheduler.enterLane ( RequestScheduler.Lane.PREFETCH );
+        assertEquals ( RequestScheduler.Lane.PREFETCH, RequestScheduler.currentLane () );
+        RequestScheduler.enterLane ( previous );
+        assertEquals ( RequestScheduler.Lane.INTERACTIVE, RequestScheduler.currentLane () );
+    }
+
+    @Test
+    public void retryAfter_readsSecondsAndDates() {
+        long now = 1527967526000L - 10000;
+        assertEquals ( 120000, RequestScheduler.retryAfterMillis ( "120", now, 5000 ) );
+        assertEquals ( 10000, RequestScheduler.retryAfterMillis ( "Sat, 02 Jun 2018 19:25:26 GMT", now, 5000 ) );
+        assertEquals ( 0, RequestScheduler.retryAfterMillis ( "Sat, 02 Jun 2018 19:25:26 GMT", now + 60000, 5000 ) );
+        assertEquals ( 5000, RequestScheduler.retryAfterMillis ( "soon", now, 5000 ) );
+        assertEquals ( 5000, RequestScheduler.retryAfterMillis ( null, now, 5000 ) );
+    }
+
+    private static Thread waiter(final RequestScheduler scheduler, final RequestScheduler.Lane lane,
+                                 final List <RequestScheduler.Lane> order) {
+        Thread thread = new Thread ( new Runnable () {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire ( lane );
+                    order.add ( lane );
+                } catch (InterruptedException e) {
+                    // Left the queue
+                }
+            }
+        } );
+        thread.start ();
+        return thread;
+    }
+
+    private static void awaitQueueDepth(RequestScheduler scheduler, RequestScheduler.Lane lane, int depth)
+            throws InterruptedException {
+        while (scheduler.getQueueDepth ( lane ) != depth) {
+            Thread.sleep ( 1 );
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime () - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,188 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the matching, ordering and updates of the {@link SearchIndex}, and that a search
+ * over tens of thousands of articles takes a few milliseconds.
+ */
+public class SearchIndexTest {
+
+    private static final String[] WORDS = {"election", "elects", "economy", "energy", "europe", "football",
+            "final", "film", "fashion", "science", "space", "storm", "market", "music", "minister", "police",
+            "politics", "climate", "court", "health", "school", "trade", "travel", "world", "cup", "budget"};
+
+    private static final String[] SECTIONS = {"World news", "Sport", "Politics", "Business", "Culture"};
+
+    @Test
+    public void search_matchesEveryWordAsPrefixOfTitleSectionOrAuthor() {
+        SearchIndex index = new SearchIndex ();
+        index.addAll ( Arrays.asList (
+                article ( "Polish elections: turnout rises", "World news", "Jane Doe", 1, 3000 ),
+                article ( "Election night in Ohio", "Politics", "John Smith", 2, 2000 ),
+                article ( "Cup final preview", "Sport", ArticleJsonDecoder.AUTHOR_UNAVAILABLE, 3, 1000 ) ) );
+
+        assertEquals ( urls ( 1 ), urls ( index.search ( "polish ele", 10 ) ) );
+        assertEquals ( urls ( 1, 2 ), urls ( index.search ( "ELECTION", 10 ) ) );
+        assertEquals ( urls ( 2 ), urls ( index.search ( "smi", 10 ) ) );
+        assertEquals ( urls ( 3 ), urls ( index.search ( "sport", 10 ) ) );
+        assertTrue ( index.search ( "unavailable", 10 ).isEmpty () );
+        assertTrue ( index.search ( "cup tennis", 10 ).isEmpty () );
+        assertTrue ( index.search ( " ,. ", 10 ).isEmpty () );
+    }
+
+    @Test
+    public void search_returnsTheNewestFirstUpToTheLimit() {
+        SearchIndex index = new SearchIndex ();
+        List <Article> articles = new ArrayList <> ();
+        for (int i = 0; i < 50; i++) {
+            articles.add ( article ( "Market report " + i, "Business", "Jane Doe", i, (i * 37) % 50 ) );
+        }
+        index.addAll ( articles );
+
+        List <Article> found = index.search ( "market", 5 );
+        assertEquals ( 5, found.size () );
+        for (int i = 0; i < found.size (); i++) {
+            assertEquals ( 49 - i, found.get ( i ).getPublishedMillis () );
+        }
+    }
+
+    @Test
+    public void addAll_updatesArticlesReceivedAgain() {
+        SearchIndex index = new SearchIndex ();
+        index.addAll ( Arrays.asList ( article ( "Storm warning", "World news", "Jane Doe", 1, 1000 ) ) );
+        index.addAll ( Arrays.asList ( article ( "Storm warning", "World news", "Jane Doe", 1, 1000 ) ) );
+        assertEquals ( 1, index.size () );
+
+        index.addAll ( Arrays.asList ( article ( "Storm Ali hits the coast", "World news", "Jane Doe", 1, 1000 ) ) );
+        assertEquals ( 1, index.size () );
+        assertTrue ( index.search ( "warning", 10 ).isEmpty () );
+        assertEquals ( urls ( 1 ), urls ( index.search ( "storm ali", 10 ) ) );
+    }
+
+    @Test
+    public void addAll_keepsTheNewestArticlesUpToTheLimit() {
+        SearchIndex index = new SearchIndex ( 10 );
+        for (int i = 0; i < 100; i++) {
+            index.addAll ( Arrays.asList ( article ( "Market report " + i, "Business", "Jane Doe", i, i ) ) );
+            assertTrue ( index.size () <= 15 );
+        }
+
+        List <Article> found = index.search ( "market", 100 );
+        assertTrue ( found.size () >= 10 );
+        assertEquals ( 99, found.get ( 0 ).getPublishedMillis () );
+        assertTrue ( index.search ( "market 5", 100 ).isEmpty () );
+    }
+
+    @Test
+    public void seed_doesNotReplaceArticlesReceivedSince() {
+        SearchIndex index = new SearchIndex ();
+        index.addAll ( Arrays.asList ( article ( "Storm Ali hits the coast", "World news", "Jane Doe", 1, 1000 ) ) );
+        List <Article> stored = new ArrayList <> ();
+        stored.add ( article ( "Storm warning", "World news", "Jane Doe", 1, 1000 ) );
+        for (int i = 2; i < 1000; i++) {
+            stored.add ( article ( "Market report " + i, "Business", "Jane Doe", i, i ) );
+        }
+        index.seed ( stored );
+
+        assertTrue ( index.isSeeded () );
+        assertEquals ( 999, index.size () );
+        assertEquals ( urls ( 1 ), urls ( index.search ( "storm ali", 10 ) ) );
+        assertTrue ( index.search ( "warning", 10 ).isEmpty () );
+    }
+
+    @Test
+    public void decodedResponsesAreIndexedFromTheNetworkAndFromTheCache() throws IOException {
+        GuardianStandInServer server = new GuardianStandInServer ( new GuardianStandInServer.Behavior (), 1 );
+        File directory = File.createTempFile ( "responses", "" );
+        directory.delete ();
+        SearchIndex previous = SearchIndex.setDefault ( new SearchIndex () );
+        try {
+            String url = server.searchUrl ( "zoology", 1, 10 );
+            assertNotNull ( QueryUtils.fetchNewsData ( url, new DiskResponseCache ( directory, 1024 * 1024 ) ) );
+            assertEquals ( 10, SearchIndex.getDefault ().search ( "zoology", 100 ).size () );
+
+            // A new cache has no decoded copy, so the 304 is decoded from the cached body
+            SearchIndex.setDefault ( new SearchIndex () );
+            assertNotNull ( QueryUtils.fetchNewsData ( url, new DiskResponseCache ( directory, 1024 * 1024 ) ) );
+            assertEquals ( 1, server.getNotModifiedCount () );
+            assertEquals ( 10, SearchIndex.getDefault ().search ( "zoology", 100 ).size () );
+        } finally {
+            SearchIndex.setDefault ( previous );
+            server.stop ();
+            File[] files = directory.listFiles ();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete ();
+                }
+            }
+            directory.delete ();
+        }
+    }
+
+    @Test
+    public void search_takesMillisecondsOverTensOfThousandsOfArticles() {
+        SearchIndex index = new SearchIndex ();
+        Random random = new Random ( 1 );
+        List <Article> articles = new ArrayList <> ();
+        for (int i = 0; i < 50000; i++) {
+            String title = WORDS[random.nextInt ( WORDS.length )] + " " + WORDS[random.nextInt ( WORDS.length )]
+                    + " " + WORDS[random.nextInt ( WORDS.length )] + " story " + i;
+            articles.add ( article ( title, SECTIONS[i % SECTIONS.length], "Author " + (i % 500), i, i ) );
+            if (articles.size () == 20) {
+                // Added a page at a time, as the responses arrive
+                index.addAll ( articles );
+                articles.clear ();
+            }
+        }
+
+        String[] queries = {"e", "ele", "election", "pol min", "world cup final", "author 12", "sto", "s"};
+        for (int i = 0; i < 20; i++) {
+            for (String query : queries) {
+                index.search ( query, 100 );
+            }
+        }
+        int runs = 50;
+        long start = System.nanoTime ();
+        for (int i = 0; i < runs; i++) {
+            for (String query : queries) {
+                assertFalse ( query, index.search ( query, 100 ).isEmpty () );
+            }
+        }
+        double millis = (System.nanoTime () - start) / 1e6 / (runs * queries.length);
+        assertTrue ( millis < 10 );
+    }
+
+    private static Article article(String title, String section, String author, int id, long publishedMillis) {
+        return new Article ( title, section, author, url ( id ), publishedMillis );
+    }
+
+    private static String url(int id) {
+        return "https://www.theguardian.com/news/" + id;
+    }
+
+    private static List <String> urls(int... ids) {
+        List <String> urls = new ArrayList <> ();
+        for (int id : ids) {
+            urls.add ( url ( id ) );
+        }
+        return urls;
+    }
+
+    private static List <String> urls(List <Article> articles) {
+        List <String> urls = new ArrayList <> ();
+        for (Article article : articles) {
+            urls.add ( article.getmUrl () );
+        }
+        return urls;
+    }
+}
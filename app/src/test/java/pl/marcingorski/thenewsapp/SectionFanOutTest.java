@@ -0,0 +1,189 @@
+package pl.marcingorski.thenewsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the k-way merge and compares fan-out with a single query against a local server
+ * that answers every section after its own delay. A combined query is answered after the
+ * delay of its slowest section.
+ */
+public class SectionFanOutTest {
+
+    private static final Map <String, Integer> SECTION_DELAYS_MILLIS = new HashMap <> ();
+
+    static {
+        SECTION_DELAYS_MILLIS.put ( "business", 40 );
+        SECTION_DELAYS_MILLIS.put ( "science", 120 );
+        SECTION_DELAYS_MILLIS.put ( "technology", 300 );
+    }
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final HttpTransport transport = new HttpTransport ( new ByteBufferPool ( 4096, 4 ) );
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool ( 3 );
+        server = HttpServer.create ( new InetSocketAddress ( "127.0.0.1", 0 ), 0 );
+        server.setExecutor ( Executors.newCachedThreadPool () );
+        server.createContext ( "/search", new HttpHandler () {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = URLDecoder.decode ( exchange.getRequestURI ().getRawQuery (), "UTF-8" );
+                String[] sections = query.replaceAll ( ".*section=([^&]*).*", "$1" ).split ( "\\|" );
+                int delay = 0;
+                for (String section : sections) {
+                    delay = Math.max ( delay, SECTION_DELAYS_MILLIS.get ( section ) );
+                }
+                try {
+                    Thread.sleep ( delay );
+                } catch (InterruptedException e) {
+                    Thread.currentThread ().interrupt ();
+                }
+                byte[] body = searchResponse ( sections ).getBytes ( Charset.forName ( "UTF-8" ) );
+                exchange.sendResponseHeaders ( 200, body.length );
+                OutputStream out = exchange.getResponseBody ();
+                out.write ( body );
+                out.close ();
+            }
+        } );
+        server.start ();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop ( 0 );
+        executor.shutdownNow ();
+    }
+
+    @Test
+    public void merge_interleavesSortedListsNewestFirst() {
+        List <Article> merged = SectionFanOut.merge ( Arrays.asList (
+                Arrays.asList ( article ( "a", "2018-06-03T10:00:00Z" ), article ( "b", "2018-06-01T10:00:00Z" ) ),
+                new ArrayList <Article> (),
+                Arrays.asList ( article ( "c", "2018-06-02T10:00:00Z" ), article ( "d", "2018-05-30T10:00:00Z" ) ) ) );
+
+        assertEquals ( 4, merged.size () );
+        assertEquals ( "a", merged.get ( 0 ).getmUrl () );
+        assertEquals ( "c", merged.get ( 1 ).getmUrl () );
+        assertEquals ( "b", merged.get ( 2 ).getmUrl () );
+        assertEquals ( "d", merged.get ( 3 ).getmUrl () );
+    }
+
+    @Test
+    public void fetchAll_treatsARequestThatThrowsAsFailed() {
+        List <Article> merged = new SectionFanOut ( executor ).fetchAll ( Arrays.asList ( "a", "b" ),
+                new SectionFanOut.Fetcher () {
+                    @Override
+                    public List <Article> fetch(String url) {
+                        if (url.equals ( "a" )) {
+                            throw new IllegalStateException ( "Bug in the fetcher" );
+                        }
+                        return Collections.singletonList ( article ( url, "2018-06-01T10:00:00Z" ) );
+                    }
+                }, null );
+
+        assertEquals ( 1, merged.size () );
+        assertEquals ( "b", merged.get ( 0 ).getmUrl () );
+    }
+
+    @Test
+    public void fanOut_showsFirstSectionBeforeSingleQueryCompletes() {
+        SectionFanOut.Fetcher fetcher = new SectionFanOut.Fetcher () {
+            @Override
+            public List <Article> fetch(String url) {
+                try {
+                    HttpTransport.Response response = transport.get ( new URL ( url ) );
+                    try {
+                        return ArticleJsonDecoder.decode ( response.body () );
+                    } finally {
+                        response.close ();
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        };
+        String base = "http://127.0.0.1:" + server.getAddress ().getPort () + "/search?section=";
+
+        // Warm up the connection code first so it does not count against the single query
+        fetcher.fetch ( base + "business" );
+
+        long start = System.nanoTime ();
+        List <Article> single = fetcher.fetch ( base + "business%7Cscience%7Ctechnology" );
+        long singleMillis = (System.nanoTime () - start) / 1000000;
+
+        final long[] firstProgressMillis = new long[1];
+        final String[] firstSection = new String[1];
+        final long fanOutStart = System.nanoTime ();
+        List <Article> fanOut = new SectionFanOut ( executor ).fetchAll (
+                Arrays.asList ( base + "business", base + "science", base + "technology" ), fetcher,
+                new SectionFanOut.ProgressListener () {
+                    @Override
+                    public void onProgress(List <Article> merged, int completed, int total) {
+                        if (completed == 1) {
+                            firstProgressMillis[0] = (System.nanoTime () - fanOutStart) / 1000000;
+                            firstSection[0] = merged.get ( 0 ).getSection ();
+                        }
+                    }
+                } );
+
+        assertEquals ( "business", firstSection[0] );
+        assertEquals ( single.size (), fanOut.size () );
+        for (int i = 0; i < single.size (); i++) {
+            assertEquals ( single.get ( i ).getmUrl (), fanOut.get ( i ).getmUrl () );
+        }
+        assertTrue ( firstProgressMillis[0] < singleMillis );
+    }
+
+    private static Article article(String url, String webPublicationDate) {
+        return new Article ( url, "Section", "Author", url, PublicationDates.parse ( webPublicationDate ) );
+    }
+
+    /**
+     * Five articles per section, with the sections interleaved in time.
+     */
+    private static String searchResponse(String[] sections) {
+        List <String> all = Arrays.asList ( "business", "science", "technology" );
+        List <String> requested = Arrays.asList ( sections );
+        StringBuilder json = new StringBuilder ( "{\"response\":{\"status\":\"ok\",\"results\":[" );
+        boolean first = true;
+        for (int hour = 14; hour >= 0; hour--) {
+            String section = all.get ( hour % all.size () );
+            if (!requested.contains ( section )) {
+                continue;
+            }
+            json.append ( first ? "" : "," );
+            first = false;
+            json.append ( "{\"sectionName\":\"" ).append ( section )
+                    .append ( "\",\"webPublicationDate\":\"2018-06-02T" ).append ( hour < 10 ? "0" : "" ).append ( hour )
+                    .append ( ":00:00Z\",\"webTitle\":\"" ).append ( section ).append ( ' ' ).append ( hour )
+                    .append ( "\",\"webUrl\":\"https://www.theguardian.com/" ).append ( section ).append ( '/' )
+                    .append ( hour ).append ( "\",\"tags\":[]}" );
+        }
+        return json.append ( "]}}" ).toString ();
+    }
+}
@@ -0,0 +1,72 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SectionSelectionTest {
+
+    @Test
+    public void diffHoldsOnlyTheChangedSections() {
+        SectionSelection previous = selection ( "business", "science" );
+        SectionSelection current = selection ( "technology", "science" );
+
+        assertEquals ( Collections.singleton ( "technology" ), current.added ( previous ) );
+        assertEquals ( Collections.singleton ( "business" ), current.removed ( previous ) );
+        assertTrue ( current.isIncrementalFrom ( previous ) );
+        assertTrue ( current.added ( current ).isEmpty () );
+    }
+
+    @Test
+    public void everySectionIsNotIncremental() {
+        SectionSelection every = selection ();
+        SectionSelection science = selection ( "science" );
+
+        assertTrue ( every.isEverySection () );
+        assertFalse ( science.isIncrementalFrom ( every ) );
+        assertFalse ( every.isIncrementalFrom ( science ) );
+    }
+
+    @Test
+    public void filterKeepsTheArticlesOfChosenSectionsInOrder() {
+        List <Article> articles = Arrays.asList (
+                article ( "science", "https://www.theguardian.com/science/2018/jun/07/mars" ),
+                article ( "business", "https://www.theguardian.com/business/2018/jun/07/eu" ),
+                article ( "technology", "https://www.theguardian.com/technology/2018/jun/06/ai" ),
+                article ( "science", "https://www.theguardian.com/science/2018/jun/05/moon" ) );
+
+        List <Article> kept = selection ( "science", "technology" ).filter ( articles );
+
+        assertEquals ( Arrays.asList ( articles.get ( 0 ), articles.get ( 2 ), articles.get ( 3 ) ), kept );
+        assertEquals ( articles, selection ().filter ( articles ) );
+    }
+
+    @Test
+    public void filterGoesBySectionIdNotByUrl() {
+        Article fashion = article ( "fashion", "https://www.theguardian.com/lifeandstyle/2018/jun/07/shoes" );
+        Article unknown = article ( null, "https://www.theguardian.com/fashion/2018/jun/06/hats" );
+
+        assertEquals ( Collections.singletonList ( fashion ),
+                selection ( "fashion" ).filter ( Arrays.asList ( fashion, unknown ) ) );
+        assertTrue ( selection ( "lifeandstyle" ).filter ( Arrays.asList ( fashion, unknown ) ).isEmpty () );
+    }
+
+    @Test
+    public void queryParameterIsSortedAndEqualityIgnoresOrder() {
+        assertEquals ( "business|science", selection ( "science", "business" ).toQueryParameter () );
+        assertEquals ( "", selection ().toQueryParameter () );
+        assertEquals ( selection ( "science", "business" ), selection ( "business", "science" ) );
+    }
+
+    private static SectionSelection selection(String... sections) {
+        return new SectionSelection ( Arrays.asList ( sections ) );
+    }
+
+    private static Article article(String sectionId, String url) {
+        return new Article ( "Title", "Section", sectionId, "Author", url, PublicationDates.UNKNOWN, null );
+    }
+}
@@ -0,0 +1,77 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link StringDictionary} keeps every distinct string once.
+ */
+public class StringDictionaryTest {
+
+    @Test
+    public void idOf_returnsTheSameIdForEqualText() {
+        StringDictionary dictionary = new StringDictionary ();
+        int world = dictionary.idOf ( "World news" );
+        int sport = dictionary.idOf ( "Sport" );
+
+        assertNotEquals ( world, sport );
+        assertEquals ( world, dictionary.idOf ( new StringBuilder ( "World news" ) ) );
+        assertEquals ( sport, dictionary.idOf ( "Sport" ) );
+        assertEquals ( 2, dictionary.size () );
+    }
+
+    @Test
+    public void get_returnsTheFirstInstance() {
+        StringDictionary dictionary = new StringDictionary ();
+        String first = new String ( "Politics" );
+        int id = dictionary.idOf ( first );
+        dictionary.idOf ( new String ( "Politics" ) );
+
+        assertSame ( first, dictionary.get ( id ) );
+    }
+
+    @Test
+    public void idOf_keepsIdsWhenTheTableGrows() {
+        StringDictionary dictionary = new StringDictionary ();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals ( i, dictionary.idOf ( "Author " + i ) );
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals ( i, dictionary.idOf ( "Author " + i ) );
+            assertEquals ( "Author " + i, dictionary.get ( i ) );
+        }
+        assertEquals ( 1000, dictionary.size () );
+    }
+
+    @Test
+    public void intern_stopsKeepingNewStringsWhenFull() {
+        StringDictionary dictionary = new StringDictionary ( 2 );
+        String jane = dictionary.intern ( new StringBuilder ( "Jane Doe" ) );
+        String john = dictionary.intern ( "John Doe" );
+        String max = dictionary.intern ( "Max Mustermann" );
+
+        assertSame ( jane, dictionary.intern ( new String ( "Jane Doe" ) ) );
+        assertSame ( john, dictionary.intern ( new StringBuilder ( "John Doe" ) ) );
+        assertEquals ( "Max Mustermann", max );
+        assertNotSame ( max, dictionary.intern ( new String ( "Max Mustermann" ) ) );
+        assertEquals ( 2, dictionary.size () );
+        assertNull ( dictionary.intern ( null ) );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void idOf_failsForANewStringWhenFull() {
+        StringDictionary dictionary = new StringDictionary ( 1 );
+        dictionary.idOf ( "Sport" );
+        assertEquals ( 0, dictionary.idOf ( "Sport" ) );
+        dictionary.idOf ( "Culture" );
+    }
+
+    @Test
+    public void idOf_null() {
+        StringDictionary dictionary = new StringDictionary ();
+        assertEquals ( StringDictionary.NULL_ID, dictionary.idOf ( null ) );
+        assertNull ( dictionary.get ( StringDictionary.NULL_ID ) );
+        assertEquals ( 0, dictionary.size () );
+    }
+}
@@ -0,0 +1,46 @@
+package pl.marcingorski.thenewsapp;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the growth, the cap and the jitter of {@link SyncBackoff}.
+ */
+public class SyncBackoffTest {
+
+    @Test
+    public void delayMillis_doublesUpToTheMaximumWithJitter() {
+        SyncBackoff backoff = new SyncBackoff ( 1000, 8000, new Random ( 42 ) );
+        long[] ceilings = {1000, 2000, 4000, 8000, 8000, 8000};
+        for (int failures = 1; failures <= ceilings.length; failures++) {
+            long ceiling = ceilings[failures - 1];
+            for (int i = 0; i < 100; i++) {
+                long delay = backoff.delayMillis ( failures );
+                assertTrue ( "delay " + delay + " after " + failures + " failures",
+                        delay >= ceiling / 2 && delay <= ceiling );
+            }
+        }
+    }
+
+    @Test
+    public void delayMillis_spreadsRetriesOfTheSameAttempt() {
+        SyncBackoff backoff = new SyncBackoff ( 60000, 3600000, new Random ( 7 ) );
+        Set <Long> delays = new HashSet <> ();
+        for (int i = 0; i < 20; i++) {
+            delays.add ( backoff.delayMillis ( 3 ) );
+        }
+        assertTrue ( delays.size () > 15 );
+    }
+
+    @Test
+    public void delayMillis_doesNotOverflowAfterManyFailures() {
+        SyncBackoff backoff = new SyncBackoff ( 1000, 3600000, new Random ( 1 ) );
+        long delay = backoff.delayMillis ( 500 );
+        assertTrue ( delay >= 1800000 && delay <= 3600000 );
+    }
+}
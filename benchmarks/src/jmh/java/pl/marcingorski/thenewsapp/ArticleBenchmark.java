@@ -0,0 +1,48 @@
+package pl.marcingorski.thenewsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per article work outside of the JSON decoding: parsing the publication date,
+ * formatting it for display and constructing the {@link Article}.
+ * <p>
+ * One operation is one article, so the GC profiler's {@code gc.alloc.rate.norm}
+ * is the bytes allocated per article.
+ */
+@State(Scope.Thread)
+public class ArticleBenchmark {
+
+    // Not final, so the JIT can not fold the inputs into constants
+
+    private String mDate = "2018-06-02T19:25:26Z";
+    private String mTitle = "Juncker: EU won’t ‘meddle’ in Italy’s affairs";
+    private String mSection = "Business";
+    private String mAuthor = "Larry Elliott";
+    private String mUrl = "https://www.theguardian.com/business/2018/jun/02/juncker-eu-italy";
+    private long mPublishedMillis = PublicationDates.parse ( mDate );
+
+    @Benchmark
+    public long parseDate() {
+        return PublicationDates.parse ( mDate );
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return PublicationDates.format ( mPublishedMillis );
+    }
+
+    @Benchmark
+    public Article construct() {
+        return new Article ( mTitle, mSection, mAuthor, mUrl, mPublishedMillis );
+    }
+
+    /**
+     * What binding a row costs on top of decoding: the article and its display date.
+     */
+    @Benchmark
+    public String constructAndFormat() {
+        return new Article ( mTitle, mSection, mAuthor, mUrl, mPublishedMillis ).getDatePublished ();
+    }
+}
@@ -0,0 +1,98 @@
+package pl.marcingorski.thenewsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap taken by a feed of 10k articles in the compact {@link Article} and in the plain model
+ * it replaced, which kept five Strings per article.
+ * <p>
+ * One operation builds all 10k articles from their fields as the JSON reader hands them over
+ * and keeps them in a list, so the GC profiler's {@code gc.alloc.rate.norm} is the heap of the
+ * batch: the list, the articles and every String they do not share. The fields repeat like
+ * those of a feed, over 30 sections and 500 authors, and a fifth of the articles have no
+ * single author. The dictionaries are filled in the first operation, which is a warm-up.
+ */
+@State(Scope.Thread)
+public class ArticleFootprintBenchmark {
+
+    private static final int ARTICLES = 10000;
+    private static final int SECTIONS = 30;
+    private static final int AUTHORS = 500;
+    private static final long NEWEST_MILLIS = PublicationDates.parse ( "2018-06-02T12:00:00Z" );
+
+    /**
+     * The article model before the compact one.
+     */
+    static final class PlainArticle {
+        final String mUrl;
+        final String titleOfArticle;
+        final String section;
+        final String author;
+        final String datePublished;
+
+        PlainArticle(String titleOfArticle, String section, String author, String datePublished, String url) {
+            this.titleOfArticle = titleOfArticle;
+            this.section = section;
+            this.author = author;
+            this.datePublished = datePublished;
+            this.mUrl = url;
+        }
+    }
+
+    /**
+     * The fields of every article, as the reader's buffer holds them
+     */
+    private final CharSequence[] mTitles = new CharSequence[ARTICLES];
+    private final CharSequence[] mSections = new CharSequence[ARTICLES];
+    private final CharSequence[] mAuthors = new CharSequence[ARTICLES];
+    private final CharSequence[] mDates = new CharSequence[ARTICLES];
+    private final CharSequence[] mUrls = new CharSequence[ARTICLES];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < ARTICLES; i++) {
+            String section = "section" + (i % SECTIONS);
+            mTitles[i] = new StringBuilder ( "Story " + i + " of the " + section + " feed, with a headline" );
+            mSections[i] = new StringBuilder ( section );
+            mAuthors[i] = new StringBuilder ( i % 5 == 0 ? ArticleJsonDecoder.AUTHOR_UNAVAILABLE
+                    : "Writer " + (i % AUTHORS) );
+            mDates[i] = new StringBuilder ( PublicationDates.toIso ( NEWEST_MILLIS - i * 60 * 1000L ) );
+            mUrls[i] = new StringBuilder ( "https://www.theguardian.com/" + section + "/2018/jun/02/story-" + i );
+        }
+    }
+
+    /**
+     * Every field is a String of its own, like the decoder of the plain model made them.
+     */
+    @Benchmark
+    public List <PlainArticle> plain() {
+        List <PlainArticle> articles = new ArrayList <> ( ARTICLES );
+        for (int i = 0; i < ARTICLES; i++) {
+            articles.add ( new PlainArticle ( mTitles[i].toString (), mSections[i].toString (),
+                    mAuthors[i].toString (), mDates[i].toString (), mUrls[i].toString () ) );
+        }
+        return articles;
+    }
+
+    /**
+     * Sections and authors come from the dictionaries and the date is a long, like
+     * {@link ArticleJsonDecoder} makes them.
+     */
+    @Benchmark
+    public List <Article> compact() {
+        List <Article> articles = new ArrayList <> ( ARTICLES );
+        for (int i = 0; i < ARTICLES; i++) {
+            int section = Article.SECTIONS.idOf ( mSections[i] );
+            articles.add ( new Article ( mTitles[i].toString (), section, section,
+                    Article.AUTHORS.intern ( mAuthors[i] ), mUrls[i].toString (),
+                    PublicationDates.parse ( mDates[i] ), null ) );
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,50 @@
+package pl.marcingorski.thenewsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Decoding of whole responses, which is what {@code QueryUtils} does with every response body.
+ * <p>
+ * One operation is one result, so the throughput is results per second and the GC profiler's
+ * {@code gc.alloc.rate.norm} is the bytes allocated per result.
+ */
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+    private byte[] mSmall;
+    private byte[] mPage;
+    private byte[] mLarge;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSmall = GuardianPayloads.withResults ( 10 );
+        mPage = GuardianPayloads.withResults ( 200 );
+        mLarge = GuardianPayloads.withResults ( 2000 );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public List <Article> decode10() throws IOException {
+        return ArticleJsonDecoder.decode ( new ByteArrayInputStream ( mSmall ) );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(200)
+    public List <Article> decode200() throws IOException {
+        return ArticleJsonDecoder.decode ( new ByteArrayInputStream ( mPage ) );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2000)
+    public List <Article> decode2000() throws IOException {
+        return ArticleJsonDecoder.decode ( new ByteArrayInputStream ( mLarge ) );
+    }
+}
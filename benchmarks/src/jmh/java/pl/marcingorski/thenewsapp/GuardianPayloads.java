@@ -0,0 +1,100 @@
+package pl.marcingorski.thenewsapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Guardian "search" responses of a given size, made from the results of the recorded
+ * response the unit tests use. The recorded results are repeated in order until there
+ * are as many as asked for, so every payload has the same mix of fields, tags and nulls.
+ */
+final class GuardianPayloads {
+
+    private static final String RECORDED_RESPONSE = "/guardian_search.json";
+    private static final Charset UTF_8 = Charset.forName ( "UTF-8" );
+
+    private GuardianPayloads() {
+    }
+
+    /**
+     * Returns the UTF-8 body of a response with the given number of results.
+     */
+    static byte[] withResults(int count) throws IOException {
+        List <String> recorded = recordedResults ();
+        StringBuilder json = new StringBuilder ();
+        json.append ( "{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":" ).append ( count )
+                .append ( ",\"startIndex\":1,\"pageSize\":" ).append ( count )
+                .append ( ",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",\"results\":[" );
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append ( ',' );
+            }
+            json.append ( recorded.get ( i % recorded.size () ) );
+        }
+        json.append ( "]}}" );
+        return json.toString ().getBytes ( UTF_8 );
+    }
+
+    /**
+     * Splits the results array of the recorded response into the text of each result object.
+     */
+    private static List <String> recordedResults() throws IOException {
+        String json = new String ( readResource (), UTF_8 );
+        int start = json.indexOf ( "\"results\":[" );
+        if (start < 0) {
+            throw new IOException ( "No results in " + RECORDED_RESPONSE );
+        }
+
+        List <String> results = new ArrayList <> ();
+        int depth = 0;
+        int objectStart = -1;
+        boolean inString = false;
+        for (int i = json.indexOf ( '[', start ) + 1; i < json.length (); i++) {
+            char c = json.charAt ( i );
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                if (depth++ == 0) {
+                    objectStart = i;
+                }
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    // End of the results array
+                    break;
+                }
+                if (--depth == 0) {
+                    results.add ( json.substring ( objectStart, i + 1 ) );
+                }
+            }
+        }
+        return results;
+    }
+
+    private static byte[] readResource() throws IOException {
+        InputStream in = GuardianPayloads.class.getResourceAsStream ( RECORDED_RESPONSE );
+        if (in == null) {
+            throw new IOException ( RECORDED_RESPONSE + " not found" );
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream ();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read ( buffer )) != -1) {
+                out.write ( buffer, 0, read );
+            }
+            return out.toByteArray ();
+        } finally {
+            in.close ();
+        }
+    }
+}
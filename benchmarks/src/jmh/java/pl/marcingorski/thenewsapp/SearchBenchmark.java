@@ -0,0 +1,61 @@
+package pl.marcingorski.thenewsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a search box query over an index of many articles, from a short prefix that
+ * matches a large part of the index to a phrase that matches a few articles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private static final String[] WORDS = {"election", "elects", "economy", "energy", "europe", "football",
+            "final", "film", "fashion", "science", "space", "storm", "market", "music", "minister", "police",
+            "politics", "climate", "court", "health", "school", "trade", "travel", "world", "cup", "budget"};
+
+    private static final String[] SECTIONS = {"World news", "Sport", "Politics", "Business", "Culture"};
+
+    @Param({"10000", "50000"})
+    public int articles;
+
+    @Param({"e", "ele", "world cup final"})
+    public String query;
+
+    private SearchIndex mIndex;
+
+    @Setup
+    public void setUp() {
+        mIndex = new SearchIndex ();
+        Random random = new Random ( 1 );
+        List <Article> page = new ArrayList <> ();
+        for (int i = 0; i < articles; i++) {
+            String title = WORDS[random.nextInt ( WORDS.length )] + " " + WORDS[random.nextInt ( WORDS.length )]
+                    + " " + WORDS[random.nextInt ( WORDS.length )] + " story " + i;
+            page.add ( new Article ( title, SECTIONS[i % SECTIONS.length], "Author " + (i % 500),
+                    "https://www.theguardian.com/news/" + i, i ) );
+            if (page.size () == 20) {
+                mIndex.addAll ( page );
+                page.clear ();
+            }
+        }
+    }
+
+    @Benchmark
+    public List <Article> search() {
+        return mIndex.search ( query, 100 );
+    }
+}